@@ -0,0 +1,47 @@
+#!/bin/sh
+# Cria o arquivo AppCDS (Java 11 ou mais novo) com as classes carregadas até a primeira tabela: a JVM passa
+# a mapear essas classes já processadas em vez de lê-las e verificá-las dos jars a cada inicialização.
+#
+# Uso (a partir da pasta do projeto, depois de compilar em bin/):
+#   JAVAFX_LIB=/opt/javafx-sdk-11/lib MYSQL_JAR=/opt/mysql-connector-java-5.1.49.jar scripts/appcds.sh
+# Variáveis: JAVA (padrão java), CLASSES (padrão bin), MYSQL_JAR e H2_JAR (opcionais), OUT (padrão build/cds)
+#
+# O CDS só aceita jars no classpath (não pastas): as classes de bin/ são empacotadas em build/cds/app.jar,
+# que deve ser usado também para rodar a aplicação. O arquivo só vale para a mesma JVM e o mesmo classpath:
+# recriar depois de recompilar ou trocar de JDK.
+# O JavaFX vai no classpath, não no --module-path: no Java 11 as classes do module path não entram no
+# arquivo, e o JavaFX é a maior parte do que a aplicação carrega até a primeira tabela. Com o JavaFX no
+# classpath a classe principal é application.Launcher (o java recusa uma subclasse de Application).
+# Medido no JDK 17 com um teste sem interface (classes das telas e do JavaFX, leitura dos vendedores no H2;
+# mediana de 6 execuções, 1 CPU): 1666 ms sem CDS, 1457 ms com o CDS padrão do JDK, 1059 ms com este
+# arquivo; as 264 classes do JavaFX carregadas vieram do arquivo. A abertura da janela não foi medida
+# (ambiente sem display); use o StartupBenchmark abaixo.
+# As execuções de coleta usam o --startup-probe do StartupBenchmark e o banco configurado em db.properties.
+set -e
+
+: "${JAVAFX_LIB:?set JAVAFX_LIB to the lib directory of the JavaFX SDK}"
+JAVA="${JAVA:-java}"
+CLASSES="${CLASSES:-bin}"
+OUT="${OUT:-build/cds}"
+FX="$JAVAFX_LIB/javafx.base.jar:$JAVAFX_LIB/javafx.graphics.jar:$JAVAFX_LIB/javafx.controls.jar:$JAVAFX_LIB/javafx.fxml.jar"
+CP="$OUT/app.jar:$FX${MYSQL_JAR:+:$MYSQL_JAR}${H2_JAR:+:$H2_JAR}"
+OPTS="-cp $CP"
+
+mkdir -p "$OUT"
+jar cf "$OUT/app.jar" -C "$CLASSES" .
+
+# 1. Classes carregadas ao abrir cada lista, nos dois modos de inicialização
+for view in sellers departments; do
+	for fast in false true; do
+		"$JAVA" -XX:DumpLoadedClassList="$OUT/$view-$fast.classlist" $OPTS \
+			application.Launcher --startup-probe view=$view clickAfter=0 fast=$fast
+	done
+done
+awk '!seen[$0]++' "$OUT"/*-*.classlist > "$OUT/app.classlist"
+
+# 2. Arquivo compartilhado com essas classes
+"$JAVA" -Xshare:dump -XX:SharedClassListFile="$OUT/app.classlist" -XX:SharedArchiveFile="$OUT/app.jsa" $OPTS
+
+echo "Archive: $OUT/app.jsa"
+echo "Run:     $JAVA -XX:SharedArchiveFile=$OUT/app.jsa $OPTS application.Launcher"
+echo "Measure: $JAVA $OPTS application.tools.StartupBenchmark jvmArgs=-XX:SharedArchiveFile=$OUT/app.jsa"
@@ -0,0 +1,15 @@
+package application;
+
+import java.io.IOException;
+
+/*
+Classe principal para rodar com o JavaFX no classpath em vez do module path, como no arquivo AppCDS
+(scripts/appcds.sh): o launcher do Java recusa uma classe principal que estende Application quando os
+mdulos do JavaFX no esto no module path.
+*/
+public class Launcher {
+
+	public static void main(String[] args) throws IOException {
+		Main.main(args);
+	}
+}
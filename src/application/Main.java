@@ -1,12 +1,30 @@
 package application;
 
 import java.io.IOException;
+import java.util.List;
 
+import application.server.ApiServer;
+import application.tools.Migrate;
+import application.tools.StartupBenchmark;
+import db.DB;
+import db.DbException;
+import diagnostics.Log;
+import diagnostics.MetricsExporter;
+import gui.MainViewController;
+import gui.util.Alerts;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ScrollPane;
 import javafx.stage.Stage;
+import model.cache.ReferenceDataCache;
+import model.events.EventBus;
+import model.services.AuditLog;
+import model.services.DepartmentService;
+import model.services.SellerService;
+import model.services.SellerWriteQueue;
 
 public class Main extends Application {
 	
@@ -15,6 +33,30 @@ public class Main extends Application {
 	@Override
 	public void start(Stage primaryStage) {
 		try {
+			// --startup-probe: execuo medida pelo StartupBenchmark
+			List<String> args = getParameters().getRaw();
+			StartupBenchmark.Probe probe = StartupBenchmark.probe(args);
+			boolean fast = probe != null
+					? probe.isFast()
+					: Boolean.parseBoolean(DB.getProperties().getProperty("startup.fast", "false"));
+			// A medio da tabela lida do banco no carrega a cpia local
+			boolean localCache = probe == null || probe.usesLocalCache();
+			
+			// Carrega a cpia local dos dados de referncia para exibir as listas sem esperar o banco
+			// (na inicializao rpida, em segundo plano depois de a janela aparecer)
+			if (!fast && localCache) {
+				ReferenceDataCache.load();
+			}
+			
+			// Mtricas para o monitoramento (desligadas se metrics.port e metrics.file estiverem vazios)
+			MetricsExporter.start(DB.getProperties());
+			
+			// Os eventos destinados s telas so entregues na thread do JavaFX, agrupados por pulso
+			EventBus.setUiExecutor(Platform::runLater);
+			// Uma tela que falhar ao aplicar as alteraes avisa o usurio em vez de s registrar no console
+			EventBus.setErrorHandler((listener, e) -> Platform.runLater(() -> Alerts.showAlert("Error updating view",
+					null, e.getMessage(), AlertType.ERROR)));
+			
 			FXMLLoader loader = new FXMLLoader(getClass().getResource("/gui/MainView.fxml"));
 			ScrollPane scrollPane = loader.load();
 			
@@ -22,19 +64,79 @@ public class Main extends Application {
 			scrollPane.setFitToWidth(true);
 			
 			mainScene = new Scene(scrollPane);
+			// As buscas por id feitas durante um pulso (ex.: cliques em "edit") so enviadas juntas ao final dele
+			mainScene.addPostLayoutPulseListener(() -> {
+				SellerService.flushLoads();
+				DepartmentService.flushLoads();
+			});
 			primaryStage.setScene(mainScene);
 			primaryStage.setTitle("Sample JavaFX application");
 			primaryStage.show();
+			
+			MainViewController controller = loader.getController();
+			if (fast) {
+				warmUp(controller, localCache);
+			}
+			if (probe != null) {
+				probe.start(controller);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
+	@Override
+	public void stop() {
+		// Envia as gravaes adiadas antes de sair; o que no puder ser enviado fica no dirio
+		SellerWriteQueue writeQueue = SellerService.getWriteQueue();
+		if (writeQueue != null) {
+			writeQueue.shutdown();
+		}
+		// Grava as alteraes que ainda esto na fila da auditoria
+		AuditLog.shutdown();
+	}
+	
+	/* Inicializao rpida: o que o primeiro clique no menu pagaria (cpia local, driver JDBC, esquema,
+	   conexo e FXML das listas)  feito logo depois de a janela aparecer.
+	   Fora do modo servidor no h pool: as telas usam a conexo compartilhada de DB.getConnection, e 
+	   ela que  aberta aqui (com rplicas, a leitura abre a da rplica e a principal  aberta  parte) */
+	private static void warmUp(MainViewController controller, boolean localCache) {
+		Thread t = new Thread(() -> {
+			if (localCache) {
+				ReferenceDataCache.load();
+			}
+			// As listas so montadas na thread do JavaFX; as leituras delas seguem em segundo plano
+			Platform.runLater(controller::preloadViews);
+			try {
+				new DepartmentService().findAll();
+				if (DB.isJdbcBackend()) {
+					DB.getConnection();
+				}
+			}
+			catch (DbException e) {
+				// Banco fora do ar: as listas abrem com a cpia local, como no modo normal
+				Log.LOGGER.warning("Startup warm-up: " + e.getMessage());
+			}
+		}, "startup-warmup");
+		t.setDaemon(true);
+		t.start();
+	}
+	
 	public static Scene getMainScene() {
 		return mainScene;
 	}
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
+		// --server: sobe somente a API, sem interface grfica
+		if (args.length > 0 && args[0].equals("--server")) {
+			ApiServer.main(args);
+			return;
+		}
+		// --migrate: aplica as migraes do esquema no banco configurado e termina
+		if (args.length > 0 && args[0].equals("--migrate")) {
+			Migrate.main(args);
+			return;
+		}
 		launch(args);
 	}
 }
@@ -0,0 +1,494 @@
+package application.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import db.ConnectionPool;
+import db.DB;
+import db.DbConnectionException;
+import db.DbException;
+import db.DbIntegrityException;
+import db.DbUnavailableException;
+import diagnostics.MetricsExporter;
+import model.entities.Department;
+import model.entities.Seller;
+import model.exceptions.JsonException;
+import model.json.Json;
+import model.json.JsonMapper;
+import model.services.AuditLog;
+import model.services.DepartmentService;
+import model.services.SellerService;
+
+/*
+Modo servidor: expe as operaes de vendedores e departamentos em uma API HTTP/JSON local,
+para que os clientes (backend=remote) compartilhem um nico pool de conexes e um nico cache
+em vez de abrir cada um a sua prpria sesso no banco.
+Uso: ApiServer (ou Main --server); porta em server.port, threads em server.threads.
+Com server.apiKeys ("chave:usurio,...") toda requisio precisa de "Authorization: Bearer <chave>",
+e a auditoria das gravaes registra o usurio da chave; sem chaves, registra "api@<endereo do cliente>".
+
+Rotas (prefixo /api):
+  GET    /departments | /departments/stamp | /departments/{id}
+  POST   /departments | /departments/find {"ids": [...]} | /departments/exists {"name": s, "excludeId": n}
+  PUT    /departments/{id}
+  DELETE /departments/{id}
+  GET    /sellers[?departmentId=] | /sellers/rows[?departmentId=] | /sellers/stamp | /sellers/{id}
+         /sellers/stats (quantidade e soma dos salrios por departamento)
+  POST   /sellers | /sellers/batch [...] | /sellers/find {"ids": [...]} | /sellers/findRows {"ids": [...]}
+         /sellers/delete {"ids": [...]} | /sellers/move {"ids": [...], "departmentId": n}
+         /sellers/exists {"email": s, "excludeId": n} (true/false)
+  PUT    /sellers/{id} (somente os campos alterados)
+  DELETE /sellers/{id}
+  GET    /health
+*/
+public class ApiServer {
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ResponseCache cache;
+
+	// As rotas passam pelos servios: auditoria, eventos e caches valem tambm para as gravaes da API
+	private final SellerService sellerService;
+	private final DepartmentService departmentService;
+
+	// Chave -> usurio (server.apiKeys); vazio: sem autenticao
+	private final Map<String, String> apiKeys = new HashMap<>();
+
+	public ApiServer(Properties props) throws IOException {
+		if (!DB.isJdbcBackend() && !DB.getBackend().equals("memory")) {
+			throw new DbException("Server mode needs a local backend (mysql, h2 or memory), not " + DB.getBackend());
+		}
+		DB.usePool();
+		sellerService = new SellerService();
+		departmentService = new DepartmentService();
+		for (String pair : props.getProperty("server.apiKeys", "").split(",")) {
+			int colon = pair.indexOf(':');
+			if (colon > 0) {
+				apiKeys.put(pair.substring(0, colon).trim(), pair.substring(colon + 1).trim());
+			}
+		}
+		cache = new ResponseCache(Long.parseLong(props.getProperty("server.cacheMillis", "5000")));
+
+		// Java 11 no tem virtual threads: as requisies rodam em um pool fixo de threads,
+		// dimensionado acima do pool de conexes porque boa parte delas s espera o banco
+		AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(Integer.parseInt(props.getProperty("server.threads", "64")), r -> {
+			Thread t = new Thread(r, "api-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		int port = Integer.parseInt(props.getProperty("server.port", "8080"));
+		server = HttpServer.create(new InetSocketAddress(props.getProperty("server.host", "localhost"), port),
+				Integer.parseInt(props.getProperty("server.backlog", "256")));
+		server.createContext("/api", this::handle);
+		server.setExecutor(executor);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		AuditLog.shutdown();
+		ConnectionPool pool = DB.getPool();
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			Request req = new Request(exchange);
+			String caller = caller(exchange);
+			AuditLog.setCaller(caller);
+			// Depois de uma gravao, s as leituras deste chamador vo para o banco principal
+			DB.setCaller(caller);
+			if (req.method.equals("GET")) {
+				String key = exchange.getRequestURI().toString();
+				byte[] cached = cache.get(key);
+				if (cached != null) {
+					send(exchange, 200, cached);
+					return;
+				}
+				long generation = cache.generation();
+				byte[] body = toBytes(route(req));
+				if (body == null) {
+					throw new HttpError(404, "Not found");
+				}
+				cache.put(key, body, generation);
+				send(exchange, 200, body);
+			}
+			else {
+				try {
+					byte[] body = toBytes(route(req));
+					send(exchange, body == null ? 204 : req.method.equals("POST") ? 201 : 200, body);
+				}
+				finally {
+					// Qualquer gravao invalida as respostas guardadas; as consultas por POST (find, exists) no
+					if (!req.isQuery()) {
+						cache.invalidate();
+					}
+				}
+			}
+		}
+		catch (HttpError e) {
+			sendError(exchange, e.status, e.getMessage());
+		}
+		catch (JsonException | ClassCastException | NumberFormatException | NullPointerException e) {
+			sendError(exchange, 400, "Bad request: " + e.getMessage());
+		}
+		catch (DbIntegrityException e) {
+			sendError(exchange, 409, e.getMessage());
+		}
+		catch (DbUnavailableException | DbConnectionException e) {
+			sendError(exchange, 503, e.getMessage());
+		}
+		catch (DbException e) {
+			sendError(exchange, 500, e.getMessage());
+		}
+		finally {
+			AuditLog.setCaller(null);
+			DB.setCaller(null);
+			exchange.close();
+		}
+	}
+
+	// Usurio registrado na auditoria; quem no apresentar uma chave vlida recebe 401
+	private String caller(HttpExchange exchange) {
+		if (apiKeys.isEmpty()) {
+			return "api@" + exchange.getRemoteAddress().getAddress().getHostAddress();
+		}
+		String header = exchange.getRequestHeaders().getFirst("Authorization");
+		String user = header != null && header.startsWith("Bearer ") ? apiKeys.get(header.substring(7).trim()) : null;
+		if (user == null) {
+			exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+			throw new HttpError(401, "Unauthorized");
+		}
+		return user;
+	}
+
+	private Object route(Request req) {
+		switch (req.segment(0)) {
+		case "departments":
+			return departments(req);
+		case "sellers":
+			return sellers(req);
+		case "health":
+			return health();
+		default:
+			throw new HttpError(404, "Not found");
+		}
+	}
+
+	private Object departments(Request req) {
+		switch (req.route()) {
+		case "GET ":
+			return JsonMapper.toList(departmentService.findAll());
+		case "GET stamp":
+			return JsonMapper.toMap(departmentService.findStamp());
+		case "GET {id}": {
+			Department obj = departmentService.findById(req.id(1));
+			return obj == null ? null : JsonMapper.toMap(obj);
+		}
+		case "POST find": {
+			List<Integer> ids = JsonMapper.toIntegers(req.body().get("ids"));
+			return JsonMapper.toList(departmentService.findByIds(ids));
+		}
+		case "POST exists": {
+			Map<String, Object> body = req.body();
+			Integer excludeId = JsonMapper.toInteger(body.get("excludeId"));
+			return departmentService.isNameTaken((String) body.get("name"), excludeId);
+		}
+		case "POST ": {
+			Department obj = JsonMapper.toDepartment(req.body());
+			obj.setId(null);
+			departmentService.saveOrUpdate(obj);
+			return JsonMapper.toMap(obj);
+		}
+		case "PUT {id}": {
+			Department obj = found(departmentService.findById(req.id(1)));
+			Map<String, Object> body = req.body();
+			if (body.containsKey("name")) {
+				obj.setName((String) body.get("name"));
+			}
+			departmentService.saveOrUpdate(obj);
+			return null;
+		}
+		case "DELETE {id}": {
+			// J removido: a excluso  idempotente
+			Department obj = departmentService.findById(req.id(1));
+			if (obj != null) {
+				departmentService.remove(obj);
+			}
+			return null;
+		}
+		default:
+			throw new HttpError(404, "Not found");
+		}
+	}
+
+	private Object sellers(Request req) {
+		switch (req.route()) {
+		case "GET ": {
+			Integer departmentId = req.queryId("departmentId");
+			return JsonMapper.toList(departmentId == null
+					? sellerService.findAll()
+					: sellerService.findByDepartment(new Department(departmentId, null)));
+		}
+		case "GET rows": {
+			Integer departmentId = req.queryId("departmentId");
+			return JsonMapper.toList(departmentId == null
+					? sellerService.findAllRows()
+					: sellerService.findRowsByDepartment(new Department(departmentId, null)));
+		}
+		case "GET stamp":
+			return JsonMapper.toMap(sellerService.findStamp());
+		case "GET stats":
+			return JsonMapper.toList(new ArrayList<>(departmentService.findStats().values()));
+		case "GET {id}": {
+			Seller obj = sellerService.findById(req.id(1));
+			return obj == null ? null : JsonMapper.toMap(obj);
+		}
+		case "POST find": {
+			List<Integer> ids = JsonMapper.toIntegers(req.body().get("ids"));
+			return JsonMapper.toList(sellerService.findByIds(ids));
+		}
+		case "POST findRows": {
+			List<Integer> ids = JsonMapper.toIntegers(req.body().get("ids"));
+			return JsonMapper.toList(sellerService.findRowsByIds(ids));
+		}
+		case "POST exists": {
+			Map<String, Object> body = req.body();
+			Integer excludeId = JsonMapper.toInteger(body.get("excludeId"));
+			return sellerService.isEmailTaken((String) body.get("email"), excludeId);
+		}
+		case "POST ": {
+			Seller obj = JsonMapper.toSeller(req.body());
+			obj.setId(null);
+			// Incluso do write-behind de um cliente: repetida depois de uma falha, devolve a que j entrou
+			String writeKey = (String) req.body().get("writeKey");
+			if (writeKey == null) {
+				sellerService.saveOrUpdate(obj);
+				return JsonMapper.toMap(obj);
+			}
+			Integer id = sellerService.findIdByWriteKey(writeKey);
+			if (id != null) {
+				return JsonMapper.toMap(found(sellerService.findById(id)));
+			}
+			sellerService.insert(obj, writeKey);
+			return JsonMapper.toMap(obj);
+		}
+		case "POST findByWriteKey":
+			return sellerService.findIdByWriteKey((String) req.body().get("writeKey"));
+		case "POST batch": {
+			List<Seller> list = JsonMapper.toSellers(Json.parseArray(req.text()));
+			list.forEach(obj -> obj.setId(null));
+			sellerService.insertAll(list);
+			List<Integer> ids = new ArrayList<>(list.size());
+			list.forEach(obj -> ids.add(obj.getId()));
+			return ids;
+		}
+		case "PUT {id}":
+			updateSeller(req.id(1), req.body());
+			return null;
+		case "DELETE {id}": {
+			Seller obj = sellerService.findById(req.id(1));
+			if (obj != null) {
+				sellerService.remove(obj);
+			}
+			return null;
+		}
+		case "POST delete": {
+			List<Integer> ids = JsonMapper.toIntegers(req.body().get("ids"));
+			sellerService.removeAll(sellerService.findRowsByIds(ids));
+			return null;
+		}
+		case "POST move": {
+			Map<String, Object> body = req.body();
+			List<Integer> ids = JsonMapper.toIntegers(body.get("ids"));
+			Department dep = found(departmentService.findById(JsonMapper.toInteger(body.get("departmentId"))));
+			sellerService.moveToDepartment(sellerService.findRowsByIds(ids), dep);
+			return null;
+		}
+		default:
+			throw new HttpError(404, "Not found");
+		}
+	}
+
+	// O cliente envia s os campos alterados; aplic-los sobre o registro lido mantm o UPDATE parcial
+	private void updateSeller(Integer id, Map<String, Object> changes) {
+		Seller obj = found(sellerService.findById(id));
+		Map<String, Object> merged = JsonMapper.toMap(obj);
+		merged.putAll(changes);
+		Seller changed = JsonMapper.toSeller(merged);
+		obj.setName(changed.getName());
+		obj.setEmail(changed.getEmail());
+		obj.setBirthDate(changed.getBirthDate());
+		obj.setBaseSalary(changed.getBaseSalary());
+		obj.setDepartment(changed.getDepartment());
+		sellerService.saveOrUpdate(obj);
+	}
+
+	private Object health() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("status", "ok");
+		map.put("time", new Date().getTime());
+		ConnectionPool pool = DB.getPool();
+		if (pool != null) {
+			map.put("poolOpen", pool.getOpenCount());
+			map.put("poolIdle", pool.getIdleCount());
+		}
+		return map;
+	}
+
+	private static <T> T found(T obj) {
+		if (obj == null) {
+			throw new HttpError(404, "Not found");
+		}
+		return obj;
+	}
+
+	private static boolean isId(String segment) {
+		return !segment.isEmpty() && segment.chars().allMatch(Character::isDigit);
+	}
+
+	private static byte[] toBytes(Object result) {
+		return result == null ? null : Json.write(result).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+		if (body == null) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("error", message);
+		send(exchange, status, toBytes(map));
+	}
+
+	public static void main(String[] args) throws IOException {
+		Properties props = DB.getProperties();
+		ApiServer server = new ApiServer(props);
+		server.start();
+		MetricsExporter.start(props);
+		System.out.println("API server listening on http://" + props.getProperty("server.host", "localhost") + ":"
+				+ server.getPort() + "/api (backend " + DB.getBackend() + ")");
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+	}
+
+	private static class Request {
+
+		private final HttpExchange exchange;
+		private final String method;
+		private final List<String> segments;
+		private final Map<String, String> query = new HashMap<>();
+		private String text = null;
+
+		Request(HttpExchange exchange) {
+			this.exchange = exchange;
+			this.method = exchange.getRequestMethod().toUpperCase();
+			URI uri = exchange.getRequestURI();
+			String path = uri.getPath().substring("/api".length());
+			this.segments = new ArrayList<>(Arrays.asList(path.replaceAll("^/+|/+$", "").split("/")));
+			if (uri.getQuery() != null) {
+				for (String pair : uri.getQuery().split("&")) {
+					int eq = pair.indexOf('=');
+					if (eq > 0) {
+						query.put(pair.substring(0, eq), pair.substring(eq + 1));
+					}
+				}
+			}
+		}
+
+		// Ex.: "GET " (coleo), "GET {id}", "POST find"
+		String route() {
+			String sub = segment(1);
+			return method + " " + (isId(sub) ? "{id}" : sub);
+		}
+
+		boolean isQuery() {
+			String sub = segment(1);
+			return method.equals("POST") && (sub.equals("find") || sub.equals("findRows") || sub.equals("exists"));
+		}
+
+		String segment(int index) {
+			return index < segments.size() ? segments.get(index) : "";
+		}
+
+		Integer id(int index) {
+			return Integer.valueOf(segment(index));
+		}
+
+		Integer queryId(String name) {
+			String value = query.get(name);
+			return value == null ? null : Integer.valueOf(value);
+		}
+
+		String text() {
+			if (text == null) {
+				try {
+					text = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+				}
+				catch (IOException e) {
+					throw new JsonException("Could not read request body: " + e.getMessage());
+				}
+			}
+			return text;
+		}
+
+		Map<String, Object> body() {
+			return Json.parseObject(text());
+		}
+	}
+
+	private static class HttpError extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+
+		HttpError(int status, String msg) {
+			super(msg);
+			this.status = status;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package application.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import diagnostics.Metrics;
+
+/*
+Respostas dos GETs j serializadas, compartilhadas por todos os clientes do servidor.
+Toda gravao feita pela API invalida o cache; o prazo (server.cacheMillis) cobre
+as alteraes feitas direto no banco, por fora do servidor.
+*/
+class ResponseCache {
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final long ttlMillis;
+
+	ResponseCache(long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+	}
+
+	byte[] get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null || System.currentTimeMillis() > entry.expiresAt) {
+			Metrics.cacheRequest("api_responses", false);
+			return null;
+		}
+		Metrics.cacheRequest("api_responses", true);
+		return entry.body;
+	}
+
+	long generation() {
+		return generation.get();
+	}
+
+	// Descarta a resposta se houve uma gravao enquanto ela era montada
+	void put(String key, byte[] body, long readGeneration) {
+		if (ttlMillis <= 0) {
+			return;
+		}
+		entries.put(key, new Entry(body, System.currentTimeMillis() + ttlMillis));
+		if (generation.get() != readGeneration) {
+			entries.remove(key);
+		}
+	}
+
+	void invalidate() {
+		generation.incrementAndGet();
+		entries.clear();
+	}
+
+	private static class Entry {
+
+		private final byte[] body;
+		private final long expiresAt;
+
+		Entry(byte[] body, long expiresAt) {
+			this.body = body;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package application.tools;
+
+import model.dao.DaoFactory;
+import model.dao.DataGenerator;
+
+/*
+Popula as tabelas department e seller do backend configurado em db.properties.
+Uso: GenerateData [departamentos] [vendedores] [semente]
+*/
+public class GenerateData {
+
+	public static void main(String[] args) {
+		int departments = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int sellers = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : System.currentTimeMillis();
+
+		long start = System.nanoTime();
+		new DataGenerator(seed).populate(DaoFactory.createDepartmentDao(), DaoFactory.createSellerDao(),
+				departments, sellers);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("Inserted %d departments and %d sellers in %.1fs (%.0f sellers/s)%n",
+				departments, sellers, seconds, sellers / seconds);
+		System.exit(0);
+	}
+}
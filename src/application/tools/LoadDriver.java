@@ -0,0 +1,265 @@
+package application.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import db.DB;
+import model.dao.DaoFactory;
+import model.dao.DataGenerator;
+import model.dao.DepartmentDao;
+import model.dao.SellerDao;
+import model.entities.Department;
+import model.entities.Seller;
+import model.services.BatchLoader;
+
+/*
+Executa uma mistura configurvel de operaes direto nos DAOs, a partir de vrias threads,
+e mostra a vazo e os percentis de latncia de cada operao.
+As threads usam o pool de conexes do servidor (pool.size) e no passam pelos servios,
+para no mexer na cpia local (ReferenceDataCache) nem nos eventos da aplicao aberta.
+Operaes: findAll, findAllRows, findById, loadById, findByDepartment, insert, update, delete
+Uso: LoadDriver threads=16 seconds=30 warmup=5 mix=findAll:1,findById:60,findByDepartment:20,insert:8,update:8,delete:3
+*/
+public class LoadDriver {
+
+	enum Operation {
+		findAll, findAllRows, findById, loadById, findByDepartment, insert, update, delete
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> options = new LinkedHashMap<>();
+		options.put("threads", "16");
+		options.put("seconds", "30");
+		options.put("warmup", "5");
+		options.put("mix", "findAll:1,findById:60,findByDepartment:20,insert:8,update:8,delete:3");
+		for (String arg : args) {
+			String[] pair = arg.split("=", 2);
+			options.put(pair[0], pair[1]);
+		}
+		int threads = Integer.parseInt(options.get("threads"));
+		long warmupNanos = Long.parseLong(options.get("warmup")) * 1_000_000_000L;
+		long runNanos = Long.parseLong(options.get("seconds")) * 1_000_000_000L;
+		Operation[] mix = parseMix(options.get("mix"));
+
+		DB.usePool();
+		SellerDao sellerDao = DaoFactory.createSellerDao();
+		DepartmentDao departmentDao = DaoFactory.createDepartmentDao();
+		List<Department> departments = departmentDao.findAll();
+		int[] ids = sellerDao.findAll().stream().mapToInt(Seller::getId).toArray();
+		if (departments.isEmpty() || ids.length == 0) {
+			System.out.println("No data found. Run GenerateData first.");
+			System.exit(1);
+		}
+		System.out.printf("%d threads, %d departments, %d sellers, mix=%s%n", threads, departments.size(), ids.length,
+				options.get("mix"));
+
+		// Buscas por id feitas ao mesmo tempo pelas threads viram um nico findByIds (loadById)
+		BatchLoader<Integer, Seller> loader = new BatchLoader<>(
+				keys -> sellerDao.findByIds(keys).stream().collect(Collectors.toMap(Seller::getId, Function.identity())),
+				Long.parseLong(DB.getProperties().getProperty("batch.windowMillis", "2")), 500);
+		/* seller.Email  nico: a sequncia dos emails continua a partir do maior Id e as sementes
+		   mudam a cada execuo, para que uma nova execuo no repita os emails da anterior */
+		AtomicInteger sequence = new AtomicInteger(sellerDao.findStamp().getMaxId());
+		long seed = System.nanoTime();
+		ConcurrentLinkedQueue<Seller> inserted = new ConcurrentLinkedQueue<>();
+		List<Worker> workers = new ArrayList<>();
+		CountDownLatch done = new CountDownLatch(threads);
+		long start = System.nanoTime();
+		long measureFrom = start + warmupNanos;
+		long end = measureFrom + runNanos;
+		for (int i = 0; i < threads; i++) {
+			Worker worker = new Worker(mix, sellerDao, loader, new DataGenerator(seed + i), sequence, departments, ids,
+					inserted, measureFrom, end, done);
+			workers.add(worker);
+			Thread t = new Thread(worker, "load-" + i);
+			t.setDaemon(true);
+			t.start();
+		}
+		done.await();
+
+		report(workers, runNanos / 1e9);
+		System.exit(0);
+	}
+
+	// Expande "op:peso,..." em uma tabela da qual as operaes so sorteadas
+	private static Operation[] parseMix(String spec) {
+		List<Operation> table = new ArrayList<>();
+		for (String part : spec.split(",")) {
+			String[] pair = part.trim().split(":");
+			Operation op = Operation.valueOf(pair[0]);
+			int weight = pair.length > 1 ? Integer.parseInt(pair[1]) : 1;
+			for (int i = 0; i < weight; i++) {
+				table.add(op);
+			}
+		}
+		return table.toArray(new Operation[0]);
+	}
+
+	private static void report(List<Worker> workers, double seconds) {
+		System.out.printf("%-17s %9s %10s %9s %9s %9s %9s %9s %7s%n", "operation", "count", "ops/s", "p50 ms",
+				"p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+		long totalCount = 0;
+		for (Operation op : Operation.values()) {
+			Recorder merged = new Recorder();
+			long errors = 0;
+			for (Worker worker : workers) {
+				merged.addAll(worker.latencies.get(op));
+				errors += worker.errors.get(op)[0];
+			}
+			if (merged.size == 0 && errors == 0) {
+				continue;
+			}
+			long[] sorted = merged.sorted();
+			totalCount += sorted.length;
+			System.out.printf("%-17s %9d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %7d%n", op, sorted.length,
+					sorted.length / seconds, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+					percentile(sorted, 99.9), percentile(sorted, 100), errors);
+		}
+		System.out.printf("%-17s %9d %10.1f%n", "total", totalCount, totalCount / seconds);
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+
+	private static class Worker implements Runnable {
+
+		private final Operation[] mix;
+		private final SellerDao dao;
+		private final BatchLoader<Integer, Seller> loader;
+		private final DataGenerator generator;
+		private final AtomicInteger sequence;
+		private final List<Department> departments;
+		private final int[] ids;
+		private final ConcurrentLinkedQueue<Seller> inserted;
+		private final long measureFrom;
+		private final long end;
+		private final CountDownLatch done;
+
+		private final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+		private final Map<Operation, long[]> errors = new EnumMap<>(Operation.class);
+
+		Worker(Operation[] mix, SellerDao dao, BatchLoader<Integer, Seller> loader, DataGenerator generator,
+				AtomicInteger sequence, List<Department> departments, int[] ids, ConcurrentLinkedQueue<Seller> inserted,
+				long measureFrom, long end, CountDownLatch done) {
+			this.mix = mix;
+			this.dao = dao;
+			this.loader = loader;
+			this.generator = generator;
+			this.sequence = sequence;
+			this.departments = departments;
+			this.ids = ids;
+			this.inserted = inserted;
+			this.measureFrom = measureFrom;
+			this.end = end;
+			this.done = done;
+			for (Operation op : Operation.values()) {
+				latencies.put(op, new Recorder());
+				errors.put(op, new long[1]);
+			}
+		}
+
+		@Override
+		public void run() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			try {
+				long now;
+				while ((now = System.nanoTime()) < end) {
+					Operation op = mix[random.nextInt(mix.length)];
+					try {
+						execute(op, random);
+						if (now >= measureFrom) {
+							latencies.get(op).add(System.nanoTime() - now);
+						}
+					}
+					catch (RuntimeException e) {
+						if (now >= measureFrom) {
+							errors.get(op)[0]++;
+						}
+					}
+				}
+			}
+			finally {
+				done.countDown();
+			}
+		}
+
+		private void execute(Operation op, ThreadLocalRandom random) {
+			switch (op) {
+			case findAll:
+				dao.findAll();
+				break;
+			case findAllRows:
+				dao.findAllRows();
+				break;
+			case findById:
+				dao.findById(ids[random.nextInt(ids.length)]);
+				break;
+			case loadById:
+				loader.load(ids[random.nextInt(ids.length)]).join();
+				break;
+			case findByDepartment:
+				dao.findByDepartment(departments.get(random.nextInt(departments.size())));
+				break;
+			case insert:
+				Seller obj = generator.seller(sequence.incrementAndGet(), departments);
+				dao.insert(obj);
+				inserted.add(obj);
+				break;
+			case update:
+				Seller existing = dao.findById(ids[random.nextInt(ids.length)]);
+				if (existing != null) {
+					existing.setBaseSalary(Math.round(existing.getBaseSalary() * 101) / 100.0);
+					dao.update(existing);
+				}
+				break;
+			case delete:
+				// Remove apenas vendedores criados pelo prprio teste, preservando a massa de dados
+				Seller created = inserted.poll();
+				if (created != null) {
+					dao.deleteById(created.getId());
+				}
+				break;
+			}
+		}
+	}
+
+	private static class Recorder {
+
+		private long[] values = new long[1024];
+		private int size = 0;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		void addAll(Recorder other) {
+			for (int i = 0; i < other.size; i++) {
+				add(other.values[i]);
+			}
+		}
+
+		long[] sorted() {
+			long[] result = Arrays.copyOf(values, size);
+			Arrays.sort(result);
+			return result;
+		}
+	}
+}
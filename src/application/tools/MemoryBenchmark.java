@@ -0,0 +1,85 @@
+package application.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.dao.DataGenerator;
+import model.dto.SellerRow;
+import model.dto.StringPool;
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+Mede o heap ocupado por uma lista grande de vendedores em bytes por linha, comparando a lista de
+Seller que a tela usava antes do SellerRow (Integer, Date e Double em objetos, sem o snapshot do
+controle de alteraes, que veio depois) com a lista de SellerRow montada como na leitura do banco
+(campos primitivos, data em epoch day, nomes repetidos deduplicados pelo StringPool).
+Nos dois casos o Department  compartilhado entre as linhas, como na leitura do banco.
+Uso: MemoryBenchmark [vendedores] [departamentos]
+Rodar com heap fixo para resultados estveis, ex.: java -Xms2g -Xmx2g ...
+*/
+public class MemoryBenchmark {
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int departmentCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		DataGenerator generator = new DataGenerator(42);
+		List<Department> departments = generator.departments(departmentCount);
+		for (int i = 0; i < departments.size(); i++) {
+			departments.get(i).setId(i + 1);
+		}
+
+		long baseline = usedMemory();
+		List<Seller> sellers = sellers(generator, departments, count);
+		long sellerBytes = usedMemory() - baseline;
+
+		List<SellerRow> rows = rows(sellers);
+		sellers = null;
+		long rowBytes = usedMemory() - baseline;
+
+		System.out.printf("%,d sellers, %d departments%n", rows.size(), departmentCount);
+		System.out.printf("before (Seller):     %,12d bytes  %6.1f bytes/row%n", sellerBytes,
+				(double) sellerBytes / count);
+		System.out.printf("after  (SellerRow):  %,12d bytes  %6.1f bytes/row%n", rowBytes,
+				(double) rowBytes / count);
+		System.out.printf("reduction: %.1f%%%n", 100.0 * (sellerBytes - rowBytes) / sellerBytes);
+	}
+
+	// Como a lista da tela antes do SellerRow: textos prprios de cada linha e nenhum snapshot
+	private static List<Seller> sellers(DataGenerator generator, List<Department> departments, int count) {
+		List<Seller> list = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Seller obj = generator.seller(i, departments);
+			obj.setId(i + 1);
+			list.add(obj);
+		}
+		return list;
+	}
+
+	// Como o instantiateRows do SellerDaoJDBC: cada texto chega novo do driver e o nome passa pelo StringPool
+	private static List<SellerRow> rows(List<Seller> sellers) {
+		List<SellerRow> list = new ArrayList<>(sellers.size());
+		StringPool names = new StringPool();
+		for (Seller obj : sellers) {
+			list.add(new SellerRow(obj.getId(), names.get(new String(obj.getName())), new String(obj.getEmail()),
+					SellerRow.toEpochDay(obj.getBirthDate()), SellerRow.toSalary(obj.getBaseSalary()),
+					obj.getDepartment()));
+		}
+		return list;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,65 @@
+package application.tools;
+
+import java.sql.Connection;
+import java.util.List;
+
+import db.ConnectionSource;
+import db.DB;
+import db.DbException;
+import db.Migrations;
+import db.ShardMap;
+
+/*
+Aplica as migraes pendentes no banco configurado em db.properties (e em cada shard de shard.urls)
+e confere os ndices esperados.
+Uso: Migrate [--check]   (--check s mostra a verso e os avisos, sem alterar o banco)
+*/
+public class Migrate {
+
+	public static void main(String[] args) {
+		boolean checkOnly = args.length > 0 && args[args.length - 1].equals("--check");
+		if (!DB.isJdbcBackend()) {
+			System.out.println("Backend " + DB.getBackend() + " has no schema to migrate");
+			return;
+		}
+		try {
+			boolean upToDate = migrate(DB.getConnection(), checkOnly);
+			ShardMap shards = DB.getShardMap();
+			for (int i = 0; shards != null && i < shards.size(); i++) {
+				System.out.println("Shard " + i + ":");
+				ConnectionSource source = shards.getSource(i);
+				Connection conn = source.getConnection();
+				try {
+					upToDate &= migrate(conn, checkOnly);
+				}
+				finally {
+					source.release(conn);
+				}
+			}
+			DB.closeConnection();
+			System.exit(upToDate ? 0 : 1);
+		}
+		catch (DbException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	// Retorna false se sobrou algum aviso
+	private static boolean migrate(Connection conn, boolean checkOnly) {
+		int before = Migrations.currentVersion(conn);
+		if (!checkOnly) {
+			int applied = Migrations.migrate(conn);
+			System.out.printf("Schema version %d -> %d (%d migrations applied)%n", before,
+					Migrations.currentVersion(conn), applied);
+		}
+		List<String> warnings = Migrations.check(conn);
+		for (String warning : warnings) {
+			System.out.println("Warning: " + warning);
+		}
+		if (checkOnly && warnings.isEmpty()) {
+			System.out.println("Schema version " + before + " is up to date");
+		}
+		return warnings.isEmpty();
+	}
+}
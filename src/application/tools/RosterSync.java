@@ -0,0 +1,24 @@
+package application.tools;
+
+import java.nio.file.Paths;
+
+import model.dto.SyncResult;
+import model.services.RosterSyncService;
+
+/*
+Aplica o arquivo de vendedores do RH ao banco configurado em db.properties.
+Uso: RosterSync arquivo.csv
+*/
+public class RosterSync {
+
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.out.println("Usage: RosterSync <roster.csv>");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		SyncResult result = new RosterSyncService().sync(Paths.get(args[0]));
+		System.out.printf("%s in %.1fs%n", result, (System.nanoTime() - start) / 1e9);
+		System.exit(0);
+	}
+}
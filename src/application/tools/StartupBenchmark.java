@@ -0,0 +1,229 @@
+package application.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import application.Launcher;
+import application.Main;
+import gui.MainViewController;
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+
+/*
+Mede o tempo at a primeira tabela: cada execuo  uma JVM nova da aplicao (--startup-probe), que abre
+a janela, espera clickAfter ms (o usurio indo ao menu), clica na lista e termina quando a tabela tem linhas.
+Por padro (localCache=false) a cpia local (reference-data.cache) no  carregada nas execues medidas: as
+linhas s podem vir do banco, e  a tabela lida do banco que  medida. localCache=true mede a abertura com a
+cpia local, cujas linhas aparecem antes da resposta do banco.
+Mostra, por modo (normal e startup.fast), a mediana, o mnimo e o mximo de:
+  window: do lanamento da JVM at a janela aparecer
+  click:  do clique at a tabela ter linhas
+  total:  do lanamento at a tabela ter linhas
+As primeiras execues (warmup) s aquecem o cache de disco do sistema e no entram no resultado.
+jvmArgs so repassados s execues, ex.: jvmArgs="-XX:SharedArchiveFile=build/cds/app.jsa" (ver scripts/appcds.sh).
+Uso: StartupBenchmark runs=10 warmup=2 view=sellers|departments clickAfter=1000 mode=both|normal|fast
+     localCache=false jvmArgs=
+*/
+public class StartupBenchmark {
+
+	private static final String PROBE = "--startup-probe";
+	private static final long TIMEOUT_SECONDS = 120;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Map<String, String> options = options(args);
+		options.putIfAbsent("runs", "10");
+		options.putIfAbsent("warmup", "2");
+		options.putIfAbsent("view", "sellers");
+		options.putIfAbsent("clickAfter", "1000");
+		options.putIfAbsent("mode", "both");
+		options.putIfAbsent("localCache", "false");
+		options.putIfAbsent("jvmArgs", "");
+		int runs = Integer.parseInt(options.get("runs"));
+		int warmup = Integer.parseInt(options.get("warmup"));
+		String mode = options.get("mode");
+
+		System.out.printf("view=%s, clickAfter=%s ms, localCache=%s, %d runs (+%d warmup), jvmArgs=%s%n",
+				options.get("view"), options.get("clickAfter"), options.get("localCache"), runs, warmup,
+				options.get("jvmArgs"));
+		System.out.printf("%-7s %-7s %9s %9s %9s%n", "mode", "", "p50 ms", "min ms", "max ms");
+		for (boolean fast : new boolean[] { false, true }) {
+			if (!mode.equals("both") && mode.equals("fast") != fast) {
+				continue;
+			}
+			long[][] samples = new long[3][runs];
+			for (int i = -warmup; i < runs; i++) {
+				long[] run = launch(options, fast);
+				if (i >= 0) {
+					for (int k = 0; k < 3; k++) {
+						samples[k][i] = run[k];
+					}
+				}
+			}
+			String name = fast ? "fast" : "normal";
+			report(name, "window", samples[0]);
+			report(name, "click", samples[1]);
+			report(name, "total", samples[2]);
+		}
+	}
+
+	// Uma execuo da aplicao em uma JVM nova; retorna window, click e total em nanossegundos
+	private static long[] launch(Map<String, String> options, boolean fast) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(ProcessHandle.current().info().command().orElse("java"));
+		if (!options.get("jvmArgs").isBlank()) {
+			command.addAll(Arrays.asList(options.get("jvmArgs").trim().split("\\s+")));
+		}
+		String modulePath = System.getProperty("jdk.module.path");
+		if (modulePath != null && !modulePath.isEmpty()) {
+			command.add("--module-path");
+			command.add(modulePath);
+			command.add("--add-modules");
+			command.add("javafx.controls,javafx.fxml");
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		// Com o JavaFX no classpath (AppCDS) a classe principal no pode estender Application
+		command.add(modulePath != null && !modulePath.isEmpty() ? Main.class.getName() : Launcher.class.getName());
+		command.add(PROBE);
+		command.add("view=" + options.get("view"));
+		command.add("clickAfter=" + options.get("clickAfter"));
+		command.add("fast=" + fast);
+		command.add("localCache=" + options.get("localCache"));
+
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+		// Uma execuo travada  encerrada depois do tempo limite
+		CompletableFuture.runAsync(process::destroyForcibly,
+				CompletableFuture.delayedExecutor(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		long window = -1;
+		long click = -1;
+		long total = -1;
+		try (BufferedReader in = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				long now = System.nanoTime();
+				if (line.equals("probe window")) {
+					window = now - start;
+				}
+				else if (line.startsWith("probe table ")) {
+					click = Long.parseLong(line.substring("probe table ".length()));
+					total = now - start;
+					break;
+				}
+			}
+		}
+		// A medida j foi feita: quem demorar a sair (ex.: gravaes pendentes)  encerrado
+		if (!process.waitFor(10, TimeUnit.SECONDS)) {
+			process.destroyForcibly();
+		}
+		if (total < 0) {
+			throw new IllegalStateException("Startup probe did not show the table; run the application with "
+					+ String.join(" ", command.subList(command.indexOf(PROBE), command.size())) + " to see its output");
+		}
+		return new long[] { window, click, total };
+	}
+
+	private static void report(String mode, String measure, long[] samples) {
+		long[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		System.out.printf("%-7s %-7s %9.1f %9.1f %9.1f%n", mode, measure, sorted[(sorted.length - 1) / 2] / 1e6,
+				sorted[0] / 1e6, sorted[sorted.length - 1] / 1e6);
+	}
+
+	private static Map<String, String> options(Iterable<String> args) {
+		Map<String, String> options = new LinkedHashMap<>();
+		for (String arg : args) {
+			String[] pair = arg.split("=", 2);
+			options.put(pair[0], pair.length > 1 ? pair[1] : "");
+		}
+		return options;
+	}
+
+	private static Map<String, String> options(String[] args) {
+		return options(Arrays.asList(args));
+	}
+
+	// Execuo medida; null se a aplicao no foi lanada pelo benchmark
+	public static Probe probe(List<String> args) {
+		if (args.isEmpty() || !args.get(0).equals(PROBE)) {
+			return null;
+		}
+		return new Probe(options(args.subList(1, args.size())));
+	}
+
+	// Lado da aplicao: avisa pela sada padro quando a janela aparece e quando a tabela tem linhas
+	public static class Probe {
+
+		private final String view;
+		private final long clickAfter;
+		private final boolean fast;
+		private final boolean localCache;
+
+		private Probe(Map<String, String> options) {
+			this.view = options.getOrDefault("view", "sellers");
+			this.clickAfter = Long.parseLong(options.getOrDefault("clickAfter", "1000"));
+			this.fast = Boolean.parseBoolean(options.getOrDefault("fast", "false"));
+			this.localCache = Boolean.parseBoolean(options.getOrDefault("localCache", "false"));
+		}
+
+		public boolean isFast() {
+			return fast;
+		}
+
+		// false: a cpia local no  carregada, e as linhas da tabela s podem ter vindo do banco
+		public boolean usesLocalCache() {
+			return localCache;
+		}
+
+		public void start(MainViewController controller) {
+			System.out.println("probe window");
+			PauseTransition pause = new PauseTransition(Duration.millis(Math.max(1, clickAfter)));
+			pause.setOnFinished(event -> {
+				long click = System.nanoTime();
+				if (view.equals("departments")) {
+					controller.onMenuItemDepartmentAction();
+				}
+				else {
+					controller.onMenuItemSellerAction();
+				}
+				// Confere a cada pulso do JavaFX, o mesmo momento em que a tabela seria desenhada
+				new AnimationTimer() {
+					@Override
+					public void handle(long now) {
+						if (tableShown()) {
+							stop();
+							System.out.println("probe table " + (System.nanoTime() - click));
+							System.out.flush();
+							Platform.exit();
+						}
+					}
+				}.start();
+			});
+			pause.play();
+		}
+
+		private static boolean tableShown() {
+			for (Node node : Main.getMainScene().getRoot().lookupAll(".table-view")) {
+				TableView<?> table = (TableView<?>) node;
+				if (table.getItems() != null && !table.getItems().isEmpty()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
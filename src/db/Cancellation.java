@@ -0,0 +1,90 @@
+package db;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+Permite cancelar de verdade uma operao de banco em andamento.
+O trabalho executado por call fica associado  thread atual; os comandos criados por DB.prepare
+se registram aqui e cancel() chama Statement.cancel() em cada um deles. A conexo continua vlida
+e volta normalmente ao pool pelo finally dos DAOs.
+*/
+public class Cancellation {
+
+	private static final ThreadLocal<Cancellation> current = new ThreadLocal<>();
+
+	private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+	private volatile boolean cancelled = false;
+
+	public <T> T call(Supplier<T> work) {
+		Cancellation previous = current.get();
+		current.set(this);
+		try {
+			return work.get();
+		}
+		finally {
+			if (previous == null) {
+				current.remove();
+			}
+			else {
+				current.set(previous);
+			}
+		}
+	}
+
+	public void cancel() {
+		cancelled = true;
+		for (Statement st : running) {
+			try {
+				st.cancel();
+			}
+			catch (SQLException e) {
+				// o comando pode ter terminado enquanto era cancelado
+			}
+		}
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	// Cancelamento da operao em andamento nesta thread (null se no houver), para repass-lo a outras threads
+	public static Cancellation current() {
+		return current.get();
+	}
+
+	public static boolean isCurrentCancelled() {
+		Cancellation c = current.get();
+		return c != null && c.cancelled;
+	}
+
+	static void register(Statement st) {
+		Cancellation c = current.get();
+		if (c == null) {
+			return;
+		}
+		checkCancelled(c);
+		c.running.add(st);
+		// cancel() pode ter rodado entre a verificao e o registro
+		if (c.cancelled) {
+			c.running.remove(st);
+			checkCancelled(c);
+		}
+	}
+
+	static void unregister(Statement st) {
+		Cancellation c = current.get();
+		if (c != null) {
+			c.running.remove(st);
+		}
+	}
+
+	private static void checkCancelled(Cancellation c) {
+		if (c.cancelled) {
+			throw new DbCancelledException("Operation cancelled");
+		}
+	}
+}
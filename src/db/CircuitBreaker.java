@@ -0,0 +1,127 @@
+package db;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openMillis;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures = 0;
+	private long openedAt = 0;
+	// Meio aberto: s a chamada de teste passa; as outras falham imediatamente at ela terminar
+	private final AtomicBoolean trialInFlight = new AtomicBoolean(false);
+	// Marca a thread que recebeu a chamada de teste: s o fim dela libera a vaga e decide o estado
+	private final ThreadLocal<Boolean> holdsTrial = ThreadLocal.withInitial(() -> false);
+
+	private final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	public void addStateListener(Consumer<State> listener) {
+		listeners.add(listener);
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	// Enquanto aberto, recusa as chamadas at o fim do intervalo; depois deixa uma nica chamada de teste passar.
+	// Quem recebe true deve terminar com onSuccess, onFailure ou onAbandoned.
+	public boolean allowRequest() {
+		State changed = null;
+		State current;
+		synchronized (this) {
+			if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+				state = State.HALF_OPEN;
+				changed = state;
+			}
+			current = state;
+		}
+		notifyListeners(changed);
+		switch (current) {
+		case CLOSED:
+			return true;
+		case HALF_OPEN:
+			if (!trialInFlight.compareAndSet(false, true)) {
+				return false;
+			}
+			holdsTrial.set(true);
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	// A chamada terminou sem dizer nada sobre o banco (ex.: cancelada): libera o teste para outra chamada
+	public void onAbandoned() {
+		releaseTrial();
+	}
+
+	// true se a chamada que terminou nesta thread era a de teste
+	private boolean releaseTrial() {
+		if (!holdsTrial.get()) {
+			return false;
+		}
+		holdsTrial.remove();
+		trialInFlight.set(false);
+		return true;
+	}
+
+	public synchronized long getRemainingOpenMillis() {
+		return state == State.OPEN ? Math.max(0, openMillis - (System.currentTimeMillis() - openedAt)) : 0;
+	}
+
+	// No meio aberto, uma chamada liberada antes da abertura que termina agora no decide o estado
+	public void onSuccess() {
+		boolean trial = releaseTrial();
+		State changed = null;
+		synchronized (this) {
+			if (state == State.HALF_OPEN && !trial) {
+				return;
+			}
+			consecutiveFailures = 0;
+			if (state != State.CLOSED) {
+				state = State.CLOSED;
+				changed = state;
+			}
+		}
+		notifyListeners(changed);
+	}
+
+	public void onFailure() {
+		boolean trial = releaseTrial();
+		State changed = null;
+		synchronized (this) {
+			if (state == State.HALF_OPEN && !trial) {
+				return;
+			}
+			consecutiveFailures++;
+			if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+				state = State.OPEN;
+				openedAt = System.currentTimeMillis();
+				changed = state;
+			}
+		}
+		notifyListeners(changed);
+	}
+
+	private void notifyListeners(State changed) {
+		if (changed != null) {
+			for (Consumer<State> listener : listeners) {
+				listener.accept(changed);
+			}
+		}
+	}
+}
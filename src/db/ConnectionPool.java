@@ -0,0 +1,161 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import diagnostics.Metrics;
+
+/*
+Conjunto de conexes compartilhado pelas requisies do servidor (ApiServer).
+Abre no mximo pool.size conexes; quem no encontra conexo livre espera at
+pool.timeoutMillis antes de desistir. As conexes devolvidas quebradas so descartadas.
+As leituras usam as rplicas de replica.urls, com as mesmas regras de DB.getReadConnection.
+Cada rplica tambm tem o seu (ReplicaRouter), usado por take e give, sem as regras de leitura e gravao.
+*/
+public class ConnectionPool implements ConnectionSource {
+
+	private final String url;
+	private final Properties props;
+	private final int maxSize;
+	private final long timeoutMillis;
+
+	private final LinkedBlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+	private final AtomicInteger opened = new AtomicInteger();
+
+	public ConnectionPool(String url, Properties props) {
+		this(url, props, Integer.parseInt(props.getProperty("pool.size", "10")));
+	}
+
+	public ConnectionPool(String url, Properties props, int maxSize) {
+		this.url = url;
+		this.props = props;
+		this.maxSize = maxSize;
+		this.timeoutMillis = Long.parseLong(props.getProperty("pool.timeoutMillis", "5000"));
+	}
+
+	@Override
+	public Connection getConnection() {
+		DB.usingPrimary();
+		return take();
+	}
+
+	@Override
+	public Connection getReadConnection() {
+		Connection replica = DB.acquireReplica();
+		return replica != null ? replica : getConnection();
+	}
+
+	@Override
+	public void release(Connection conn) {
+		if (conn == null || DB.releaseReplica(conn)) {
+			return;
+		}
+		give(conn);
+	}
+
+	// Uma conexo livre, aberta se preciso; espera at pool.timeoutMillis se todas estiverem em uso
+	Connection take() {
+		Connection conn = idle.poll();
+		while (conn == null || isClosed(conn)) {
+			if (conn != null) {
+				opened.decrementAndGet();
+			}
+			conn = open();
+			if (conn == null) {
+				conn = await();
+			}
+		}
+		return conn;
+	}
+
+	// Devolve a conexo; uma fechada (ex.: descartada depois de uma falha) deixa de contar no limite
+	void give(Connection conn) {
+		if (isClosed(conn)) {
+			opened.decrementAndGet();
+			return;
+		}
+		idle.offer(conn);
+	}
+
+	// Confere uma conexo do pool depois de uma falha; as quebradas so descartadas na devoluo
+	public boolean isValid() {
+		Connection conn = null;
+		try {
+			conn = getConnection();
+			return conn.isValid(2);
+		}
+		catch (SQLException | DbException e) {
+			return false;
+		}
+		finally {
+			release(conn);
+		}
+	}
+
+	public int getOpenCount() {
+		return opened.get();
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public void close() {
+		Connection conn;
+		while ((conn = idle.poll()) != null) {
+			opened.decrementAndGet();
+			try {
+				conn.close();
+			}
+			catch (SQLException e) {
+				// a conexo j estava quebrada
+			}
+		}
+	}
+
+	// Abre uma nova conexo se o limite permitir; seno retorna null
+	private Connection open() {
+		if (opened.incrementAndGet() > maxSize) {
+			opened.decrementAndGet();
+			return null;
+		}
+		try {
+			Connection conn = DriverManager.getConnection(url, props);
+			Metrics.counter("db_connections_opened_total", "Database connections opened").increment();
+			return conn;
+		}
+		catch (SQLException e) {
+			opened.decrementAndGet();
+			throw new DbConnectionException(e.getMessage());
+		}
+	}
+
+	private Connection await() {
+		try {
+			Connection conn = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+			if (conn == null) {
+				Metrics.counter("db_pool_timeouts_total", "Requests that gave up waiting for a pooled connection")
+						.increment();
+				throw new DbException("Timeout waiting for a pooled connection (pool.size=" + maxSize + ")");
+			}
+			return conn;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for a pooled connection");
+		}
+	}
+
+	private static boolean isClosed(Connection conn) {
+		try {
+			return conn.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+}
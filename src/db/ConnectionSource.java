@@ -0,0 +1,17 @@
+package db;
+
+import java.sql.Connection;
+
+public interface ConnectionSource {
+
+	Connection getConnection();
+
+	// Conexo para consultas; pode ser uma rplica de leitura
+	default Connection getReadConnection() {
+		return getConnection();
+	}
+
+	// Devolve uma conexo obtida por getConnection ou getReadConnection
+	default void release(Connection conn) {
+	}
+}
@@ -4,30 +4,223 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+import diagnostics.Metrics;
+import diagnostics.QueryPlans;
 
 public class DB {
 
 	private static Connection conn = null;
 	
-	public static Connection getConnection() {
-		if (conn == null) {
+	private static Properties props = null;
+	
+	private static ReplicaRouter replicas = null;
+	
+	/* ltima gravao de cada chamador (replica.stickyMillis). No servidor o chamador  o da requisio
+	   (setCaller); na aplicao, sem chamador, todas as threads so do mesmo usurio e compartilham a entrada */
+	private static final ThreadLocal<String> caller = new ThreadLocal<>();
+	private static final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+	private static final String LOCAL_CALLER = "";
+	
+	private static ConnectionPool pool = null;
+	
+	private static ShardMap shards = null;
+	
+	// Rplica usada pela ltima leitura de cada thread (null: banco principal), conferida depois de uma falha
+	private static final ThreadLocal<Connection> lastReplica = new ThreadLocal<>();
+	
+	public static synchronized Connection getConnection() {
+		if (conn == null || isClosed(conn)) {
 			try {
-				Properties props = loadProperties();
-				String url = props.getProperty("dburl");
-				conn = DriverManager.getConnection(url, props);
+				conn = DriverManager.getConnection(getUrl(), getProperties());
+				Metrics.counter("db_connections_opened_total", "Database connections opened").increment();
 			}
 			catch (SQLException e) {
 				throw new DbException(e.getMessage());
 			}
 		}
+		lastReplica.remove();
 		return conn;
 	}
 	
-	public static void closeConnection() {
+	// mysql (padro), h2 (banco embutido em arquivo ou em memria) ou memory (sem JDBC)
+	public static String getBackend() {
+		return getProperties().getProperty("backend", "mysql").trim().toLowerCase();
+	}
+	
+	private static String getUrl() {
+		Properties props = getProperties();
+		return "h2".equals(getBackend())
+				? props.getProperty("h2.dburl", "jdbc:h2:mem:coursejdbc;MODE=MySQL;DB_CLOSE_DELAY=-1")
+				: props.getProperty("dburl");
+	}
+	
+	// Modo servidor: as requisies concorrentes passam a compartilhar um pool de conexes
+	public static synchronized void usePool() {
+		if (pool == null) {
+			pool = new ConnectionPool(getUrl(), getProperties());
+			ConnectionPool current = pool;
+			Metrics.gauge("db_pool_connections", "Pooled connections by state", () -> current.getOpenCount()
+					- current.getIdleCount(), "state", "active");
+			Metrics.gauge("db_pool_connections", "Pooled connections by state", current::getIdleCount, "state", "idle");
+		}
+	}
+	
+	public static synchronized ConnectionPool getPool() {
+		return pool;
+	}
+	
+	// Servidor da API (usePool): sem cpia local dos dados e sem gravao adiada, que so recursos dos clientes
+	public static synchronized boolean isServerMode() {
+		return pool != null;
+	}
+	
+	public static synchronized ConnectionSource getConnectionSource() {
+		if (pool != null) {
+			return pool;
+		}
+		return new ConnectionSource() {
+			@Override
+			public Connection getConnection() {
+				return DB.getConnection();
+			}
+
+			@Override
+			public Connection getReadConnection() {
+				return DB.getReadConnection();
+			}
+
+			@Override
+			public void release(Connection conn) {
+				DB.release(conn);
+			}
+		};
+	}
+	
+	/* Conexo exclusiva para tarefas longas que controlam a transao (ex.: RosterSync), para no mexer
+	   no autocommit da conexo compartilhada pela aplicao. Com o pool, cada chamada j recebe a sua */
+	public static synchronized ConnectionSource getDedicatedConnectionSource() {
+		if (pool != null) {
+			return pool;
+		}
+		return new ConnectionSource() {
+			private Connection dedicated = null;
+
+			@Override
+			public synchronized Connection getConnection() {
+				if (dedicated == null || isClosed(dedicated)) {
+					try {
+						dedicated = DriverManager.getConnection(getUrl(), getProperties());
+						Metrics.counter("db_connections_opened_total", "Database connections opened").increment();
+					}
+					catch (SQLException e) {
+						throw new DbException(e.getMessage());
+					}
+				}
+				return dedicated;
+			}
+		};
+	}
+	
+	/* Leituras vo para uma rplica, exceto logo aps uma gravao (replica.stickyMillis),
+	   para que o usurio sempre veja o que acabou de salvar */
+	public static Connection getReadConnection() {
+		Connection replica = acquireReplica();
+		return replica != null ? replica : getConnection();
+	}
+	
+	public static void release(Connection conn) {
+		replicas().release(conn);
+	}
+	
+	// Rplica para a prxima leitura desta thread, ou null para usar o banco principal (tambm pelo pool)
+	static Connection acquireReplica() {
+		long sticky = Long.parseLong(getProperties().getProperty("replica.stickyMillis", "5000"));
+		Connection replica = replicas().isEmpty() || wroteWithin(sticky) ? null : replicas().acquire();
+		if (replica == null) {
+			lastReplica.remove();
+		}
+		else {
+			lastReplica.set(replica);
+		}
+		return replica;
+	}
+	
+	// Devolve a conexo se ela for de uma rplica; false se for do banco principal
+	static boolean releaseReplica(Connection conn) {
+		if (!replicas().owns(conn)) {
+			return false;
+		}
+		replicas().release(conn);
+		return true;
+	}
+	
+	// A thread passou a usar o banco principal (ex.: conexo do pool para uma gravao)
+	static void usingPrimary() {
+		lastReplica.remove();
+	}
+	
+	// S o chamador que gravou deixa de ler das rplicas por replica.stickyMillis
+	public static void markWrite() {
+		lastWrites.put(currentCaller(), System.currentTimeMillis());
+	}
+	
+	// Chamador das prximas leituras e gravaes desta thread (ex.: usurio da requisio); null limpa
+	public static void setCaller(String key) {
+		if (key == null) {
+			caller.remove();
+		}
+		else {
+			caller.set(key);
+		}
+	}
+	
+	private static String currentCaller() {
+		String key = caller.get();
+		return key != null ? key : LOCAL_CALLER;
+	}
+	
+	// A entrada de quem no grava h mais de replica.stickyMillis  removida
+	private static boolean wroteWithin(long sticky) {
+		String key = currentCaller();
+		Long last = lastWrites.get(key);
+		if (last == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - last < sticky) {
+			return true;
+		}
+		lastWrites.remove(key, last);
+		return false;
+	}
+	
+	private static synchronized ReplicaRouter replicas() {
+		if (replicas == null) {
+			replicas = new ReplicaRouter(getProperties());
+		}
+		return replicas;
+	}
+	
+	// Bancos entre os quais os vendedores so divididos (shard.urls); null se houver um banco s
+	public static synchronized ShardMap getShardMap() {
+		if (shards == null) {
+			shards = new ShardMap(getProperties());
+		}
+		return shards.isEmpty() ? null : shards;
+	}
+	
+	public static synchronized void closeConnection() {
 		if (conn != null) {
 			try {
 				conn.close();
@@ -37,6 +230,71 @@ public class DB {
 		}
 	}
 	
+	/* Descarta a conexo atual (e as ociosas do pool) para que a prxima chamada a getConnection reconecte.
+	   Se a falha foi em uma rplica, s ela  descartada */
+	public static synchronized void invalidateConnection() {
+		Metrics.counter("db_connection_invalidations_total", "Connections discarded after a failure").increment();
+		Connection replica = lastReplica.get();
+		if (replica != null) {
+			replicas().discard(replica);
+			return;
+		}
+		if (pool != null) {
+			pool.close();
+		}
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				// a conexo j estava quebrada
+			}
+			conn = null;
+		}
+	}
+	
+	/* Confere a conexo usada pela ltima chamada desta thread: uma rplica quebrada sai do rodzio
+	   sem invalidar o banco principal, e vice-versa */
+	public static boolean isConnectionValid() {
+		// Os backends sem JDBC no tm conexo a validar
+		if (!isJdbcBackend()) {
+			return true;
+		}
+		Connection replica = lastReplica.get();
+		if (replica != null) {
+			return replicas().validate(replica);
+		}
+		// No modo servidor a falha foi em uma conexo do pool:  uma delas que deve ser conferida
+		ConnectionPool current = getPool();
+		if (current != null) {
+			return current.isValid();
+		}
+		try {
+			return getConnection().isValid(2);
+		} catch (SQLException | DbException e) {
+			return false;
+		}
+	}
+	
+	public static boolean isJdbcBackend() {
+		String backend = getBackend();
+		return backend.equals("mysql") || backend.equals("h2");
+	}
+	
+	private static boolean isClosed(Connection conn) {
+		try {
+			return conn.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+	
+	public static synchronized Properties getProperties() {
+		if (props == null) {
+			props = loadProperties();
+		}
+		return props;
+	}
+	
 	private static Properties loadProperties() {
 		try (FileInputStream fs = new FileInputStream("db.properties")) {
 			Properties props = new Properties();
@@ -48,8 +306,61 @@ public class DB {
 		}
 	}
 	
+	// Divide uma lista de ids em blocos para clusulas IN de tamanho limitado
+	public static List<List<Integer>> chunks(Collection<Integer> ids) {
+		int size = Integer.parseInt(getProperties().getProperty("in.chunkSize", "500"));
+		List<List<Integer>> chunks = new ArrayList<>();
+		List<Integer> chunk = new ArrayList<>(size);
+		for (Integer id : ids) {
+			chunk.add(id);
+			if (chunk.size() == size) {
+				chunks.add(chunk);
+				chunk = new ArrayList<>(size);
+			}
+		}
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+	
+	public static String placeholders(int count) {
+		StringJoiner joiner = new StringJoiner(", ");
+		for (int i = 0; i < count; i++) {
+			joiner.add("?");
+		}
+		return joiner.toString();
+	}
+	
+	/* Prepara o comando com o timeout configurado para a operao (timeout.SellerDao.findAll,
+	   por exemplo, em segundos; padro timeout.default) e o registra para cancelamento */
+	public static PreparedStatement prepare(Connection conn, String operation, String sql) throws SQLException {
+		return register(QueryPlans.sample(conn, operation, sql, conn.prepareStatement(sql)), operation);
+	}
+	
+	public static PreparedStatement prepare(Connection conn, String operation, String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return register(QueryPlans.sample(conn, operation, sql, conn.prepareStatement(sql, autoGeneratedKeys)),
+				operation);
+	}
+	
+	private static PreparedStatement register(PreparedStatement st, String operation) throws SQLException {
+		Properties props = getProperties();
+		st.setQueryTimeout(Integer.parseInt(
+				props.getProperty("timeout." + operation, props.getProperty("timeout.default", "30"))));
+		try {
+			Cancellation.register(st);
+		}
+		catch (DbCancelledException e) {
+			st.close();
+			throw e;
+		}
+		return st;
+	}
+	
 	public static void closeStatement(Statement st) {
 		if (st != null) {
+			Cancellation.unregister(st);
 			try {
 				st.close();
 			} catch (SQLException e) {
@@ -0,0 +1,9 @@
+package db;
+
+public class DbCancelledException extends DbException {
+	private static final long serialVersionUID = 1L;
+
+	public DbCancelledException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,9 @@
+package db;
+
+public class DbConnectionException extends DbException {
+	private static final long serialVersionUID = 1L;
+
+	public DbConnectionException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,9 @@
+package db;
+
+public class DbUnavailableException extends DbException {
+	private static final long serialVersionUID = 1L;
+
+	public DbUnavailableException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,114 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.IntSupplier;
+
+import diagnostics.Log;
+
+/*
+Sequncia de ids guardada no banco (tabela id_sequence, migrao 10), usada quando a mesma tabela
+est dividida entre vrios bancos e o AUTO_INCREMENT de cada um no serve (ShardedSellerDao).
+Os ids so reservados em blocos (hi-lo): uma transao curta a cada bloco, e duas instncias do
+programa nunca recebem o mesmo id. Ids de um bloco no usado at o fim do programa ficam sem uso.
+*/
+public class IdSequence {
+
+	private final ConnectionSource source;
+	private final String name;
+
+	public IdSequence(ConnectionSource source, String name) {
+		this.source = source;
+		this.name = name;
+	}
+
+	/* Reserva size ids e retorna o primeiro; os ids reservados so [primeiro, primeiro + size).
+	   Na primeira reserva a sequncia comea em initial (ex.: maior Id j existente + 1) */
+	public int reserve(int size, IntSupplier initial) {
+		Connection conn = source.getConnection();
+		boolean autoCommit = true;
+		try {
+			autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			Integer next = lockNext(conn);
+			if (next == null) {
+				next = create(conn, initial.getAsInt());
+			}
+			PreparedStatement st = null;
+			try {
+				st = conn.prepareStatement("UPDATE id_sequence SET NextValue = ? WHERE Name = ?");
+				st.setInt(1, next + size);
+				st.setString(2, name);
+				st.executeUpdate();
+			}
+			finally {
+				DB.closeStatement(st);
+			}
+			conn.commit();
+			return next;
+		}
+		catch (SQLException e) {
+			rollback(conn);
+			throw new DbException("Id sequence " + name + " not reserved: " + e.getMessage());
+		}
+		finally {
+			try {
+				conn.setAutoCommit(autoCommit);
+			}
+			catch (SQLException e) {
+				// A conexo volta ao pool de qualquer forma; o pool descarta as que falharem
+			}
+			source.release(conn);
+		}
+	}
+
+	// Valor atual com a linha travada at o commit; null se a sequncia ainda no existir
+	private Integer lockNext(Connection conn) throws SQLException {
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = conn.prepareStatement("SELECT NextValue FROM id_sequence WHERE Name = ? FOR UPDATE");
+			st.setString(1, name);
+			rs = st.executeQuery();
+			return rs.next() ? rs.getInt("NextValue") : null;
+		}
+		finally {
+			DB.closeResultSet(rs);
+			DB.closeStatement(st);
+		}
+	}
+
+	// Duas instncias criando ao mesmo tempo: a segunda falha na chave primria e usa a linha da primeira
+	private Integer create(Connection conn, int initial) throws SQLException {
+		PreparedStatement st = null;
+		try {
+			st = conn.prepareStatement("INSERT INTO id_sequence (Name, NextValue) VALUES (?, ?)");
+			st.setString(1, name);
+			st.setInt(2, initial);
+			st.executeUpdate();
+			return initial;
+		}
+		catch (SQLException e) {
+			conn.rollback();
+			Integer next = lockNext(conn);
+			if (next == null) {
+				throw e;
+			}
+			return next;
+		}
+		finally {
+			DB.closeStatement(st);
+		}
+	}
+
+	private static void rollback(Connection conn) {
+		try {
+			conn.rollback();
+		}
+		catch (SQLException e) {
+			Log.LOGGER.warning("Rollback failed: " + e.getMessage());
+		}
+	}
+}
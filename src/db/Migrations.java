@@ -0,0 +1,470 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import diagnostics.Log;
+
+/*
+Migraes versionadas do esquema. Cada migrao aplicada  registrada na tabela schema_version e
+nunca roda de novo; para alterar o esquema, acrescente uma nova migrao no fim da lista.
+As primeiras migraes usam CREATE TABLE IF NOT EXISTS para adotar bancos criados  mo, e os
+ndices s so criados se ainda no existir um ndice equivalente (ex.: o criado pela chave estrangeira).
+Roda na inicializao (bancos embutidos ou schema.autoMigrate=true) ou pela linha de comando: Main --migrate
+No MySQL as migraes rodam sob um lock nomeado (GET_LOCK), para que duas instncias iniciando juntas,
+em mquinas diferentes, no apliquem a mesma migrao duas vezes; o lock de linha no serviria, porque
+cada DDL faz commit implcito. O H2 embutido s  aberto por um processo, e o synchronized basta.
+*/
+public class Migrations {
+
+	// ndices de que as consultas das listas dependem; sem eles o ORDER BY e o filtro por departamento viram filesort
+	private static final Index SELLER_NAME = new Index("seller", "idx_seller_name", false, "Name");
+	private static final Index SELLER_DEPARTMENT = new Index("seller", "idx_seller_department", false, "DepartmentId");
+	private static final Index SELLER_EMAIL = new Index("seller", "uq_seller_email", true, "Email");
+	// Verificao de nome repetido do formulrio de departamento; redundante depois do ndice nico (migrao 9)
+	private static final Index DEPARTMENT_NAME = new Index("department", "idx_department_name", false, "Name");
+	// O formulrio s avisa; a unicidade  garantida pelo banco (bancos com nomes repetidos param na migrao 9)
+	private static final Index DEPARTMENT_NAME_UNIQUE = new Index("department", "uq_department_name", true, "Name");
+	// MAX(UpdatedAt) do TableStamp, lido a cada revalidao das cpias locais e dos totais por departamento
+	private static final Index SELLER_UPDATED_AT = new Index("seller", "idx_seller_updated_at", false, "UpdatedAt");
+	private static final Index DEPARTMENT_UPDATED_AT = new Index("department", "idx_department_updated_at", false,
+			"UpdatedAt");
+
+	// Consulta de findIdByWriteKey; nico para que a mesma incluso do write-behind nunca entre duas vezes
+	private static final Index SELLER_WRITE_KEY = new Index("seller", "uq_seller_write_key", true, "WriteKey");
+
+	// Histrico de um registro na trilha de auditoria
+	private static final Index AUDIT_ENTITY = new Index("audit_log", "idx_audit_entity", false, "Entity", "EntityId");
+
+	private static final String LOCK_NAME = "workshop.schema_version";
+	private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+	// Quantos valores repetidos so listados na mensagem quando um ndice nico no pode ser criado
+	private static final int MAX_REPORTED_DUPLICATES = 10;
+
+	private static final List<Index> EXPECTED_INDEXES = Arrays.asList(SELLER_NAME, SELLER_DEPARTMENT, SELLER_EMAIL,
+			DEPARTMENT_NAME_UNIQUE, SELLER_UPDATED_AT, DEPARTMENT_UPDATED_AT, SELLER_WRITE_KEY);
+
+	private static final List<Migration> MIGRATIONS = Arrays.asList(
+			new Migration(1, "Create department and seller tables", conn -> execute(conn,
+					"CREATE TABLE IF NOT EXISTS department ("
+					+ "Id INT NOT NULL AUTO_INCREMENT, "
+					+ "Name VARCHAR(60) DEFAULT NULL, "
+					+ "PRIMARY KEY (Id))",
+
+					"CREATE TABLE IF NOT EXISTS seller ("
+					+ "Id INT NOT NULL AUTO_INCREMENT, "
+					+ "Name VARCHAR(60) NOT NULL, "
+					+ "Email VARCHAR(100) NOT NULL, "
+					+ "BirthDate DATETIME NOT NULL, "
+					+ "BaseSalary DOUBLE NOT NULL, "
+					+ "DepartmentId INT NOT NULL, "
+					+ "PRIMARY KEY (Id), "
+					+ "FOREIGN KEY (DepartmentId) REFERENCES department (Id))")),
+
+			new Migration(2, "Create seller_sync table", conn -> execute(conn,
+					"CREATE TABLE IF NOT EXISTS seller_sync ("
+					+ "SellerId INT NOT NULL, "
+					+ "ContentHash BIGINT NOT NULL, "
+					+ "PRIMARY KEY (SellerId), "
+					+ "FOREIGN KEY (SellerId) REFERENCES seller (Id) ON DELETE CASCADE)")),
+
+			new Migration(3, "Index seller.Name (ORDER BY Name)", SELLER_NAME::createIfMissing),
+
+			new Migration(4, "Index seller.DepartmentId (findByDepartment and the department join)",
+					SELLER_DEPARTMENT::createIfMissing),
+
+			new Migration(5, "Unique index on seller.Email", SELLER_EMAIL::createIfMissing),
+
+			new Migration(6, "Index department.Name (duplicate name check)", DEPARTMENT_NAME::createIfMissing),
+
+			new Migration(7, "Create audit_log table", conn -> {
+				execute(conn,
+						"CREATE TABLE IF NOT EXISTS audit_log ("
+						+ "Id BIGINT NOT NULL AUTO_INCREMENT, "
+						+ "Entity VARCHAR(30) NOT NULL, "
+						+ "EntityId INT NOT NULL, "
+						+ "Action VARCHAR(10) NOT NULL, "
+						+ "UserName VARCHAR(60) NOT NULL, "
+						+ "ChangedAt DATETIME NOT NULL, "
+						+ "OldValues TEXT, "
+						+ "NewValues TEXT, "
+						+ "PRIMARY KEY (Id))");
+				AUDIT_ENTITY.createIfMissing(conn);
+			}),
+
+			// O TableStamp da cpia local s via incluses e excluses; com UpdatedAt tambm v as alteraes
+			new Migration(8, "Add UpdatedAt to seller and department (cache revalidation)", conn -> execute(conn,
+					"ALTER TABLE department ADD COLUMN UpdatedAt TIMESTAMP(3) NOT NULL "
+					+ "DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)",
+
+					"ALTER TABLE seller ADD COLUMN UpdatedAt TIMESTAMP(3) NOT NULL "
+					+ "DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)")),
+
+			// O ndice nico tambm atende a verificao de nome repetido: o da migrao 6 deixa de ser necessrio
+			new Migration(9, "Unique index on department.Name", conn -> {
+				DEPARTMENT_NAME_UNIQUE.createIfMissing(conn);
+				DEPARTMENT_NAME.dropIfPresent(conn);
+			}),
+
+			// Ids dos vendedores com shard.urls (IdSequence); criada em todos os bancos, usada s no shard 0
+			new Migration(10, "Create id_sequence table", conn -> execute(conn,
+					"CREATE TABLE IF NOT EXISTS id_sequence ("
+					+ "Name VARCHAR(30) NOT NULL, "
+					+ "NextValue INT NOT NULL, "
+					+ "PRIMARY KEY (Name))")),
+
+			// Bancos que aplicaram a migrao 9 antes de ela remover idx_department_name tambm o perdem aqui
+			new Migration(11, "Index UpdatedAt on seller and department, drop idx_department_name", conn -> {
+				SELLER_UPDATED_AT.createIfMissing(conn);
+				DEPARTMENT_UPDATED_AT.createIfMissing(conn);
+				DEPARTMENT_NAME.dropIfPresent(conn);
+			}),
+
+			// Chave gravada com as incluses do write-behind (SellerWriteQueue); nula nas demais
+			new Migration(12, "Add WriteKey to seller (write-behind replay)", conn -> {
+				execute(conn, "ALTER TABLE seller ADD COLUMN WriteKey VARCHAR(36) NULL");
+				SELLER_WRITE_KEY.createIfMissing(conn);
+			}));
+
+	// Aplica as migraes pendentes e retorna quantas foram aplicadas
+	public static synchronized int migrate(Connection conn) {
+		boolean locked = false;
+		try {
+			locked = lock(conn);
+			execute(conn, "CREATE TABLE IF NOT EXISTS schema_version ("
+					+ "Version INT NOT NULL, "
+					+ "Description VARCHAR(200) NOT NULL, "
+					+ "InstalledOn DATETIME NOT NULL, "
+					+ "DurationMillis INT NOT NULL, "
+					+ "PRIMARY KEY (Version))");
+			int current = currentVersion(conn);
+			int applied = 0;
+			for (Migration migration : MIGRATIONS) {
+				if (migration.version <= current) {
+					continue;
+				}
+				long start = System.currentTimeMillis();
+				try {
+					migration.step.apply(conn);
+				}
+				catch (SQLException e) {
+					throw new DbException("Migration " + migration.version + " (" + migration.description + ") failed: "
+							+ e.getMessage());
+				}
+				record(conn, migration, System.currentTimeMillis() - start);
+				applied++;
+			}
+			return applied;
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			if (locked) {
+				unlock(conn);
+			}
+		}
+	}
+
+	// Retorna false quando o banco no tem lock nomeado (H2)
+	private static boolean lock(Connection conn) throws SQLException {
+		if (!isMySql(conn)) {
+			return false;
+		}
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = conn.prepareStatement("SELECT GET_LOCK(?, ?)");
+			st.setString(1, LOCK_NAME);
+			st.setInt(2, LOCK_TIMEOUT_SECONDS);
+			rs = st.executeQuery();
+			if (!rs.next() || rs.getInt(1) != 1) {
+				throw new DbException("Timed out after " + LOCK_TIMEOUT_SECONDS
+						+ "s waiting for another instance to finish the schema migrations");
+			}
+			return true;
+		}
+		finally {
+			DB.closeResultSet(rs);
+			DB.closeStatement(st);
+		}
+	}
+
+	private static void unlock(Connection conn) {
+		PreparedStatement st = null;
+		try {
+			st = conn.prepareStatement("SELECT RELEASE_LOCK(?)");
+			st.setString(1, LOCK_NAME);
+			st.executeQuery().close();
+		}
+		catch (SQLException e) {
+			// O lock  liberado de qualquer forma quando a conexo for fechada
+			Log.LOGGER.warning("Releasing the migration lock failed: " + e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+		}
+	}
+
+	private static boolean isMySql(Connection conn) throws SQLException {
+		String product = conn.getMetaData().getDatabaseProductName();
+		return product.equalsIgnoreCase("MySQL") || product.equalsIgnoreCase("MariaDB");
+	}
+
+	// Verso registrada no banco; 0 se as migraes nunca rodaram
+	public static int currentVersion(Connection conn) {
+		if (!tableExists(conn, "schema_version")) {
+			return 0;
+		}
+		Statement st = null;
+		ResultSet rs = null;
+		try {
+			st = conn.createStatement();
+			rs = st.executeQuery("SELECT MAX(Version) AS Version FROM schema_version");
+			return rs.next() ? rs.getInt("Version") : 0;
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeResultSet(rs);
+			DB.closeStatement(st);
+		}
+	}
+
+	public static int latestVersion() {
+		return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+	}
+
+	// Verificao da inicializao: avisos para migraes pendentes e ndices esperados que no existem
+	public static List<String> check(Connection conn) {
+		List<String> warnings = new ArrayList<>();
+		int current = currentVersion(conn);
+		if (current < latestVersion()) {
+			warnings.add("Schema is at version " + current + ", latest is " + latestVersion()
+					+ "; run Main --migrate to apply the pending migrations");
+		}
+		if (!tableExists(conn, "seller")) {
+			return warnings;
+		}
+		for (Index index : EXPECTED_INDEXES) {
+			try {
+				if (!index.exists(conn)) {
+					warnings.add("Missing " + (index.unique ? "unique " : "") + "index on " + index.table + "("
+							+ String.join(", ", index.columns) + ")" + (index.unique
+									? "; duplicate values are not prevented"
+									: "; queries using it will scan and sort the whole table"));
+				}
+			}
+			catch (SQLException e) {
+				throw new DbException(e.getMessage());
+			}
+		}
+		return warnings;
+	}
+
+	private static void record(Connection conn, Migration migration, long millis) throws SQLException {
+		PreparedStatement st = null;
+		try {
+			st = conn.prepareStatement(
+					"INSERT INTO schema_version (Version, Description, InstalledOn, DurationMillis) VALUES (?, ?, ?, ?)");
+			st.setInt(1, migration.version);
+			st.setString(2, migration.description);
+			st.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+			st.setInt(4, (int) millis);
+			st.executeUpdate();
+		}
+		finally {
+			DB.closeStatement(st);
+		}
+	}
+
+	private static void execute(Connection conn, String... sqls) throws SQLException {
+		Statement st = null;
+		try {
+			st = conn.createStatement();
+			for (String sql : sqls) {
+				st.executeUpdate(sql);
+			}
+		}
+		finally {
+			DB.closeStatement(st);
+		}
+	}
+
+	private static boolean tableExists(Connection conn, String table) {
+		ResultSet rs = null;
+		try {
+			DatabaseMetaData meta = conn.getMetaData();
+			rs = meta.getTables(conn.getCatalog(), null, identifier(meta, table), new String[] { "TABLE" });
+			return rs.next();
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeResultSet(rs);
+		}
+	}
+
+	// O H2 guarda os nomes sem aspas em maisculas; o MySQL, como foram escritos
+	private static String identifier(DatabaseMetaData meta, String name) throws SQLException {
+		return meta.storesUpperCaseIdentifiers() ? name.toUpperCase() : name;
+	}
+
+	private interface Step {
+		void apply(Connection conn) throws SQLException;
+	}
+
+	private static class Migration {
+
+		private final int version;
+		private final String description;
+		private final Step step;
+
+		Migration(int version, String description, Step step) {
+			this.version = version;
+			this.description = description;
+			this.step = step;
+		}
+	}
+
+	private static class Index {
+
+		private final String table;
+		private final String name;
+		private final boolean unique;
+		private final List<String> columns;
+
+		Index(String table, String name, boolean unique, String... columns) {
+			this.table = table;
+			this.name = name;
+			this.unique = unique;
+			this.columns = Arrays.asList(columns);
+		}
+
+		void createIfMissing(Connection conn) throws SQLException {
+			if (!exists(conn)) {
+				if (unique) {
+					checkDuplicates(conn);
+				}
+				execute(conn, "CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name + " ON " + table + " ("
+						+ String.join(", ", columns) + ")");
+			}
+		}
+
+		// Pelo nome: um ndice equivalente com outro nome (ex.: o nico) continua no lugar
+		void dropIfPresent(Connection conn) throws SQLException {
+			DatabaseMetaData meta = conn.getMetaData();
+			boolean present = false;
+			ResultSet rs = null;
+			try {
+				rs = meta.getIndexInfo(conn.getCatalog(), null, identifier(meta, table), false, true);
+				while (rs.next()) {
+					present |= name.equalsIgnoreCase(rs.getString("INDEX_NAME"));
+				}
+			}
+			finally {
+				DB.closeResultSet(rs);
+			}
+			if (present) {
+				execute(conn, "DROP INDEX " + name + " ON " + table);
+			}
+		}
+
+		// Com valores repetidos o CREATE UNIQUE INDEX falharia com uma mensagem genrica do banco; aqui a
+		// migrao para antes, listando os valores a corrigir. A comparao segue a collation da coluna
+		private void checkDuplicates(Connection conn) throws SQLException {
+			String list = String.join(", ", columns);
+			Statement st = null;
+			ResultSet rs = null;
+			List<String> duplicates = new ArrayList<>();
+			try {
+				st = conn.createStatement();
+				st.setMaxRows(MAX_REPORTED_DUPLICATES + 1);
+				rs = st.executeQuery("SELECT " + list + ", COUNT(*) AS Total FROM " + table + " GROUP BY " + list
+						+ " HAVING COUNT(*) > 1 ORDER BY COUNT(*) DESC");
+				while (rs.next()) {
+					List<String> values = new ArrayList<>();
+					for (int i = 1; i <= columns.size(); i++) {
+						values.add(String.valueOf(rs.getObject(i)));
+					}
+					duplicates.add(String.join(", ", values) + " (" + rs.getInt("Total") + " rows)");
+				}
+			}
+			finally {
+				DB.closeResultSet(rs);
+				DB.closeStatement(st);
+			}
+			if (duplicates.isEmpty()) {
+				return;
+			}
+			String shown = String.join("; ", duplicates.subList(0, Math.min(duplicates.size(), MAX_REPORTED_DUPLICATES)));
+			throw new SQLException("cannot create unique index " + name + ": " + table + " has duplicate " + list
+					+ " values: " + shown + (duplicates.size() > MAX_REPORTED_DUPLICATES ? "; ..." : "")
+					+ ". Fix or remove the duplicates (SELECT " + list + ", COUNT(*) FROM " + table + " GROUP BY "
+					+ list + " HAVING COUNT(*) > 1) and run the migrations again");
+		}
+
+		// Qualquer ndice que comece pelas mesmas colunas serve (e, se exigido, que seja nico)
+		boolean exists(Connection conn) throws SQLException {
+			DatabaseMetaData meta = conn.getMetaData();
+			Map<String, List<String>> found = new LinkedHashMap<>();
+			Map<String, Boolean> uniqueness = new LinkedHashMap<>();
+			ResultSet rs = null;
+			try {
+				rs = meta.getIndexInfo(conn.getCatalog(), null, identifier(meta, table), false, true);
+				while (rs.next()) {
+					String indexName = rs.getString("INDEX_NAME");
+					String column = rs.getString("COLUMN_NAME");
+					if (indexName == null || column == null) {
+						continue;
+					}
+					List<String> indexColumns = found.computeIfAbsent(indexName, k -> new ArrayList<>());
+					int position = rs.getShort("ORDINAL_POSITION");
+					while (indexColumns.size() < position) {
+						indexColumns.add(null);
+					}
+					indexColumns.set(position - 1, column);
+					uniqueness.put(indexName, !rs.getBoolean("NON_UNIQUE"));
+				}
+			}
+			finally {
+				DB.closeResultSet(rs);
+			}
+			for (Map.Entry<String, List<String>> entry : found.entrySet()) {
+				// um ndice nico composto no garante unicidade da coluna sozinha
+				if (unique && (!uniqueness.get(entry.getKey()) || entry.getValue().size() != columns.size())) {
+					continue;
+				}
+				if (startsWith(entry.getValue(), columns)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean startsWith(List<String> indexColumns, List<String> columns) {
+			if (indexColumns.size() < columns.size()) {
+				return false;
+			}
+			for (int i = 0; i < columns.size(); i++) {
+				if (!columns.get(i).equalsIgnoreCase(indexColumns.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Distribui as leituras entre as rplicas configuradas em replica.urls (separadas por vrgula).
+replica.balance=round_robin (padro) alterna entre as rplicas;
+replica.balance=least_loaded escolhe a rplica com menos consultas em andamento.
+Cada rplica tem um pool prprio de at replica.poolSize conexes (ConnectionPool): as leituras
+simultneas no disputam uma nica conexo, e descartar a conexo que falhou no derruba as consultas
+que as outras threads ainda fazem na mesma rplica.
+Uma rplica que no conecta fica fora do rodzio por replica.retryMillis.
+*/
+public class ReplicaRouter {
+
+	private final List<Replica> replicas = new ArrayList<>();
+	private final boolean leastLoaded;
+	private final long retryMillis;
+	private final Properties props;
+	private final int poolSize;
+	private final AtomicInteger next = new AtomicInteger();
+
+	public ReplicaRouter(Properties props) {
+		this.props = props;
+		this.poolSize = Integer.parseInt(props.getProperty("replica.poolSize", "4"));
+		this.leastLoaded = "least_loaded".equalsIgnoreCase(props.getProperty("replica.balance", "round_robin").trim());
+		this.retryMillis = Long.parseLong(props.getProperty("replica.retryMillis", "30000"));
+		String urls = props.getProperty("replica.urls", "");
+		for (String url : urls.split(",")) {
+			if (!url.isBlank()) {
+				replicas.add(new Replica(url.trim()));
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return replicas.isEmpty();
+	}
+
+	// Retorna a conexo de uma rplica disponvel, ou null se nenhuma puder ser usada
+	public Connection acquire() {
+		int size = replicas.size();
+		int start = leastLoaded ? 0 : Math.floorMod(next.getAndIncrement(), size);
+		Replica chosen = null;
+		for (int i = 0; i < size; i++) {
+			Replica replica = replicas.get((start + i) % size);
+			if (!replica.isAvailable()) {
+				continue;
+			}
+			if (!leastLoaded) {
+				chosen = replica;
+				break;
+			}
+			if (chosen == null || replica.leased.size() < chosen.leased.size()) {
+				chosen = replica;
+			}
+		}
+		if (chosen == null) {
+			return null;
+		}
+		Connection conn = chosen.connect();
+		if (conn == null) {
+			return acquire();
+		}
+		return conn;
+	}
+
+	// Devolve a conexo ao pool da rplica
+	public void release(Connection conn) {
+		Replica replica = find(conn);
+		if (replica != null) {
+			replica.giveBack(conn);
+		}
+	}
+
+	// Indica se a conexo  de uma das rplicas (e no do banco principal)
+	public boolean owns(Connection conn) {
+		return find(conn) != null;
+	}
+
+	/* Valida somente a rplica dona da conexo; quebrada, ela fica fora do rodzio por replica.retryMillis.
+	   Uma conexo que j foi descartada no tem mais o que validar */
+	public boolean validate(Connection conn) {
+		Replica replica = find(conn);
+		return replica == null || replica.validate(conn);
+	}
+
+	/* Descarta a conexo depois de uma falha; a rplica fica fora do rodzio por replica.retryMillis.
+	   As conexes que outras threads esto usando continuam abertas at serem devolvidas */
+	public void discard(Connection conn) {
+		Replica replica = find(conn);
+		if (replica != null) {
+			close(conn);
+			replica.giveBack(conn);
+			replica.markDown();
+		}
+	}
+
+	// Consultas em andamento na rplica dona da conexo
+	int inFlight(Connection conn) {
+		Replica replica = find(conn);
+		return replica == null ? 0 : replica.leased.size();
+	}
+
+	/* A falha s  tratada depois que a consulta devolveu a conexo: a rplica dona continua sendo
+	   encontrada enquanto a conexo estiver aberta no pool dela */
+	private Replica find(Connection conn) {
+		if (conn == null) {
+			return null;
+		}
+		for (Replica replica : replicas) {
+			if (replica.owned.contains(conn)) {
+				return replica;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isClosed(Connection conn) {
+		try {
+			return conn.isClosed();
+		}
+		catch (SQLException e) {
+			return true;
+		}
+	}
+
+	private static void close(Connection conn) {
+		try {
+			conn.close();
+		}
+		catch (SQLException e) {
+			// a conexo j estava quebrada
+		}
+	}
+
+	private class Replica {
+
+		private final ConnectionPool pool;
+		private volatile long downUntil = 0;
+		// Conexes do pool da rplica e, entre elas, as emprestadas s consultas em andamento
+		private final Set<Connection> owned = ConcurrentHashMap.newKeySet();
+		private final Set<Connection> leased = ConcurrentHashMap.newKeySet();
+
+		Replica(String url) {
+			this.pool = new ConnectionPool(url, props, poolSize);
+		}
+
+		boolean isAvailable() {
+			return System.currentTimeMillis() >= downUntil;
+		}
+
+		// null se a rplica no conectar; ela sai do rodzio
+		Connection connect() {
+			try {
+				Connection conn = pool.take();
+				owned.add(conn);
+				leased.add(conn);
+				return conn;
+			}
+			catch (DbConnectionException e) {
+				markDown();
+				return null;
+			}
+		}
+
+		// Uma fechada (ex.: descartada) deixa a rplica; uma segunda devoluo da mesma conexo  ignorada
+		void giveBack(Connection conn) {
+			if (!leased.remove(conn)) {
+				return;
+			}
+			pool.give(conn);
+			if (isClosed(conn)) {
+				owned.remove(conn);
+			}
+		}
+
+		// Confere a conexo que falhou; quebrada, a rplica sai do rodzio
+		boolean validate(Connection conn) {
+			try {
+				if (conn.isValid(2)) {
+					return true;
+				}
+			}
+			catch (SQLException e) {
+				// tratada abaixo como conexo invlida
+			}
+			markDown();
+			return false;
+		}
+
+		// As conexes livres so fechadas; as emprestadas, descartadas quando voltarem quebradas
+		void markDown() {
+			downUntil = System.currentTimeMillis() + retryMillis;
+			pool.close();
+			owned.removeIf(ReplicaRouter::isClosed);
+		}
+	}
+}
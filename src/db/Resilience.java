@@ -0,0 +1,158 @@
+package db;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import diagnostics.Metrics;
+
+/*
+Camada de resilincia para o acesso ao banco:
+- reconecta automaticamente quando a conexo cai
+- repete as leituras (idempotentes) algumas vezes, com espera exponencial e aleatria entre as tentativas
+- usa um circuit breaker para falhar imediatamente enquanto o banco estiver fora do ar
+As gravaes nunca so repetidas, pois no se sabe se o comando chegou a ser executado.
+*/
+public class Resilience {
+
+	private static CircuitBreaker breaker = null;
+
+	private static final Metrics.Timer readTimer = Metrics.timer("service_db_seconds",
+			"Service-layer database calls, including retries", "kind", "read");
+	private static final Metrics.Timer writeTimer = Metrics.timer("service_db_seconds",
+			"Service-layer database calls, including retries", "kind", "write");
+	private static final Metrics.Counter retries = Metrics.counter("service_db_retries_total",
+			"Reads repeated after a connection failure");
+	private static final Metrics.Counter rejected = Metrics.counter("service_db_rejected_total",
+			"Calls refused while the circuit breaker was open");
+
+	public static synchronized CircuitBreaker getCircuitBreaker() {
+		if (breaker == null) {
+			Properties props = DB.getProperties();
+			breaker = new CircuitBreaker(
+					Integer.parseInt(props.getProperty("breaker.failureThreshold", "3")),
+					Long.parseLong(props.getProperty("breaker.openMillis", "10000")));
+			// 0 = CLOSED, 1 = OPEN, 2 = HALF_OPEN
+			CircuitBreaker current = breaker;
+			Metrics.gauge("db_circuit_breaker_state", "Circuit breaker state (0 closed, 1 open, 2 half-open)",
+					() -> current.getState().ordinal());
+		}
+		return breaker;
+	}
+
+	public static <T> T read(Supplier<T> action) {
+		Properties props = DB.getProperties();
+		int maxAttempts = Integer.parseInt(props.getProperty("retry.maxAttempts", "3"));
+		long baseDelay = Long.parseLong(props.getProperty("retry.baseDelayMillis", "100"));
+
+		long start = System.nanoTime();
+		try {
+			for (int attempt = 1;; attempt++) {
+				try {
+					return execute(action);
+				}
+				catch (DbException e) {
+					if (!(e instanceof DbConnectionException) || attempt >= maxAttempts
+							|| getCircuitBreaker().getState() == CircuitBreaker.State.OPEN) {
+						throw e;
+					}
+					retries.increment();
+					sleep(backoff(baseDelay, attempt));
+				}
+			}
+		}
+		finally {
+			readTimer.recordSince(start);
+		}
+	}
+
+	public static <T> T write(Supplier<T> action) {
+		DB.markWrite();
+		long start = System.nanoTime();
+		try {
+			return execute(action);
+		}
+		finally {
+			writeTimer.recordSince(start);
+			DB.markWrite();
+		}
+	}
+
+	public static void write(Runnable action) {
+		write(() -> {
+			action.run();
+			return null;
+		});
+	}
+
+	/* Gravao interna da aplicao (ex.: trilha de auditoria): passa pelo circuit breaker como as outras,
+	   mas no  uma gravao do usurio e no desvia as leituras dele para o banco principal (markWrite) */
+	public static void writeInternal(Runnable action) {
+		long start = System.nanoTime();
+		try {
+			execute(() -> {
+				action.run();
+				return null;
+			});
+		}
+		finally {
+			writeTimer.recordSince(start);
+		}
+	}
+
+	private static <T> T execute(Supplier<T> action) {
+		CircuitBreaker cb = getCircuitBreaker();
+		if (!cb.allowRequest()) {
+			rejected.increment();
+			if (cb.getState() == CircuitBreaker.State.HALF_OPEN) {
+				throw new DbUnavailableException("Database unavailable, checking the connection");
+			}
+			throw new DbUnavailableException(
+					"Database unavailable, next attempt in " + (cb.getRemainingOpenMillis() + 999) / 1000 + "s");
+		}
+		try {
+			T result = action.get();
+			cb.onSuccess();
+			return result;
+		}
+		catch (DbCancelledException e) {
+			cb.onAbandoned();
+			throw e;
+		}
+		catch (DbException e) {
+			// Comando cancelado pelo usurio (Statement.cancel): no  falha do banco nem deve ser repetido
+			if (Cancellation.isCurrentCancelled()) {
+				cb.onAbandoned();
+				throw new DbCancelledException(e.getMessage());
+			}
+			// O banco respondeu com erro (ex.: SQL invlido): a conexo est saudvel
+			if (!(e instanceof DbConnectionException) && DB.isConnectionValid()) {
+				cb.onSuccess();
+				throw e;
+			}
+			DB.invalidateConnection();
+			cb.onFailure();
+			throw new DbConnectionException(e.getMessage());
+		}
+		catch (RuntimeException e) {
+			cb.onAbandoned();
+			throw e;
+		}
+	}
+
+	// Espera exponencial com variao aleatria para que os clientes no tentem todos ao mesmo tempo
+	private static long backoff(long baseDelay, int attempt) {
+		long max = baseDelay << Math.min(attempt - 1, 10);
+		return ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting to retry");
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/*
+Mapa dos bancos (shards) entre os quais a tabela seller  dividida, configurado em shard.urls
+(separadas por vrgula; a posio na lista  o nmero do shard e no deve mudar depois de haver dados).
+shard.key=id (padro): o vendedor fica no shard Id % quantidade de shards.
+shard.key=department: fica no shard DepartmentId % quantidade, junto com os colegas de departamento.
+A tabela department  copiada em todos os shards (chave estrangeira e juno das listas);
+o shard 0  a referncia para as leituras de departamentos.
+*/
+public class ShardMap {
+
+	private final List<ConnectionPool> shards = new ArrayList<>();
+	private final boolean byDepartment;
+
+	public ShardMap(Properties props) {
+		this.byDepartment = "department".equalsIgnoreCase(props.getProperty("shard.key", "id").trim());
+		for (String url : props.getProperty("shard.urls", "").split(",")) {
+			if (!url.isBlank()) {
+				shards.add(new ConnectionPool(url.trim(), props));
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return shards.isEmpty();
+	}
+
+	public int size() {
+		return shards.size();
+	}
+
+	public boolean isByDepartment() {
+		return byDepartment;
+	}
+
+	public ConnectionSource getSource(int shard) {
+		return shards.get(shard);
+	}
+
+	public int byId(int id) {
+		return Math.floorMod(id, shards.size());
+	}
+
+	public int byDepartment(int departmentId) {
+		return Math.floorMod(departmentId, shards.size());
+	}
+
+	public void close() {
+		for (ConnectionPool pool : shards) {
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("workshop.DaoCall")
+@Label("DAO Call")
+@Category({ "Workshop", "Database" })
+@Description("Chamada a um mtodo de DAO; a durao inclui a espera pela conexo")
+@StackTrace(false)
+public class DaoCallEvent extends Event {
+
+	// Mesmo identificador usado em DB.prepare e nos timeouts (ex.: SellerDao.findAll)
+	@Label("Operation")
+	public String operation;
+
+	@Label("Backend")
+	public String backend;
+
+	@Label("Rows")
+	@Description("Tamanho da lista devolvida, linhas alteradas ou 1/0 para um objeto")
+	public int rows;
+
+	@Label("Connection Wait")
+	@Timespan(Timespan.NANOSECONDS)
+	public long connectionWait;
+
+	@Label("Error")
+	public String error;
+}
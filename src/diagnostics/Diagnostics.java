@@ -0,0 +1,173 @@
+package diagnostics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import db.ConnectionSource;
+import db.DB;
+import jdk.jfr.EventType;
+
+/*
+Instrumentao dos DAOs para o Java Flight Recorder (JFR) e para as Metrics.
+Os DAOs criados pelo DaoFactory passam por um proxy que mede cada chamada (dao_call_seconds) e gera
+um DaoCallEvent, e a origem das conexes  embrulhada para medir a espera por conexo.
+Com a gravao do JFR desligada (ou o evento desabilitado) o proxy s repassa a chamada e mede o
+tempo para as Metrics: nenhum evento  criado e a espera por conexo no  acumulada.
+Uso: java -XX:StartFlightRecording=filename=app.jfr,settings=profile ...
+*/
+public class Diagnostics {
+
+	private static final EventType daoCallType = EventType.getEventType(DaoCallEvent.class);
+
+	// Espera por conexo acumulada durante a chamada de DAO em andamento nesta thread
+	private static final ThreadLocal<long[]> connectionWait = new ThreadLocal<>();
+
+	private static final Metrics.Timer connectionWaitTimer = Metrics.timer("db_connection_wait_seconds",
+			"Time spent obtaining a database connection");
+
+	@SuppressWarnings("unchecked")
+	public static <T> T trace(Class<T> type, T dao) {
+		String prefix = type.getSimpleName() + ".";
+		Map<Method, Operation> operations = new ConcurrentHashMap<>();
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					if (method.getDeclaringClass() == Object.class) {
+						return call(dao, method, args);
+					}
+					Operation operation = operations.computeIfAbsent(method, m -> new Operation(prefix + m.getName()));
+					return invoke(operation, dao, method, args);
+				});
+	}
+
+	public static ConnectionSource timed(ConnectionSource source) {
+		return new ConnectionSource() {
+			@Override
+			public Connection getConnection() {
+				long start = System.nanoTime();
+				try {
+					return source.getConnection();
+				}
+				finally {
+					addConnectionWait(System.nanoTime() - start);
+				}
+			}
+
+			@Override
+			public Connection getReadConnection() {
+				long start = System.nanoTime();
+				try {
+					return source.getReadConnection();
+				}
+				finally {
+					addConnectionWait(System.nanoTime() - start);
+				}
+			}
+
+			@Override
+			public void release(Connection conn) {
+				source.release(conn);
+			}
+		};
+	}
+
+	private static void addConnectionWait(long nanos) {
+		connectionWaitTimer.record(nanos);
+		long[] wait = connectionWait.get();
+		if (wait != null) {
+			wait[0] += nanos;
+		}
+	}
+
+	private static Object invoke(Operation operation, Object dao, Method method, Object[] args) throws Throwable {
+		if (!daoCallType.isEnabled()) {
+			long start = System.nanoTime();
+			try {
+				return call(dao, method, args);
+			}
+			catch (Throwable e) {
+				operation.errors.increment();
+				throw e;
+			}
+			finally {
+				operation.timer.recordSince(start);
+			}
+		}
+		DaoCallEvent event = new DaoCallEvent();
+		long[] outer = connectionWait.get();
+		long[] wait = new long[1];
+		connectionWait.set(wait);
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			Object result = call(dao, method, args);
+			if (event.isEnabled()) {
+				event.rows = rows(method, args, result);
+			}
+			return result;
+		}
+		catch (Throwable e) {
+			operation.errors.increment();
+			event.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+			throw e;
+		}
+		finally {
+			operation.timer.recordSince(start);
+			event.end();
+			connectionWait.set(outer);
+			if (event.shouldCommit()) {
+				event.operation = operation.name;
+				event.backend = DB.getBackend();
+				event.connectionWait = wait[0];
+				event.commit();
+			}
+		}
+	}
+
+	private static Object call(Object dao, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(dao, args);
+		}
+		catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	// Nas escritas sem retorno (void) conta os objetos recebidos; nas demais chamadas, os devolvidos
+	// (nas gravaes de vendedores, as linhas que existiam antes delas)
+	private static int rows(Method method, Object[] args, Object result) {
+		if (method.getReturnType() == void.class) {
+			if (args == null || args.length == 0) {
+				return 0;
+			}
+			return args[0] instanceof Collection ? ((Collection<?>) args[0]).size() : 1;
+		}
+		if (result == null) {
+			return 0;
+		}
+		if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		}
+		if (result instanceof Map) {
+			return ((Map<?, ?>) result).size();
+		}
+		return 1;
+	}
+
+	private static class Operation {
+
+		private final String name;
+		private final Metrics.Timer timer;
+		private final Metrics.Counter errors;
+
+		Operation(String name) {
+			this.name = name;
+			this.timer = Metrics.timer("dao_call_seconds", "DAO call latency", "operation", name);
+			this.errors = Metrics.counter("dao_errors_total", "DAO calls that threw an exception", "operation", name);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("workshop.EventDispatch")
+@Label("Data Change Dispatch")
+@Category({ "Workshop", "Events" })
+@StackTrace(false)
+public class EventDispatchEvent extends Event {
+
+	@Label("Topic")
+	public String topic;
+
+	@Label("Listener")
+	public String listener;
+
+	@Label("Events")
+	@Description("Quantidade de eventos agrupados nesta entrega")
+	public int events;
+
+	@Label("UI Thread")
+	public boolean ui;
+}
@@ -0,0 +1,40 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("workshop.FormSave")
+@Label("Form Save")
+@Category({ "Workshop", "User Interface" })
+@StackTrace(false)
+public class FormSaveEvent extends Event {
+
+	@Label("Entity")
+	public String entity;
+
+	// saved, invalid ou error
+	@Label("Outcome")
+	public String outcome;
+
+	@Label("Validation Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long validationTime;
+
+	@Label("Database Time")
+	@Description("Zero quando a gravao  adiada (write-behind)")
+	@Timespan(Timespan.NANOSECONDS)
+	public long dbTime;
+
+	@Label("Deferred")
+	@Description("Gravao adiada: s entrou no dirio, o envio ao banco  feito depois em segundo plano")
+	public boolean deferred;
+
+	@Label("Journal Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long journalTime;
+}
@@ -0,0 +1,16 @@
+package diagnostics;
+
+import java.util.logging.Logger;
+
+/*
+Logger dos avisos operacionais da aplicao (java.util.logging), no lugar do System.err.
+As falhas tambm so contadas nas mtricas de cada recurso; o log traz o detalhe.
+Sem configurao vai para o console; -Djava.util.logging.config.file=... troca o destino e o nvel.
+*/
+public class Log {
+
+	public static final Logger LOGGER = Logger.getLogger("workshop");
+
+	private Log() {
+	}
+}
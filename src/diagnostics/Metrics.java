@@ -0,0 +1,205 @@
+package diagnostics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+Registro de mtricas da instncia (contadores, medidores e temporizadores), exportado no formato
+texto do Prometheus pelo MetricsExporter.
+As mtricas so criadas na primeira utilizao e identificadas pelo nome mais os rtulos
+(ex.: dao_call_seconds{operation="SellerDao.findAll"}); chamadas repetidas devolvem a mesma instncia.
+Os temporizadores so histogramas com faixas fixas, em segundos.
+*/
+public class Metrics {
+
+	private static final double[] BUCKETS = { 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+	private static final Map<String, Family> families = new ConcurrentHashMap<>();
+
+	public static Counter counter(String name, String help, String... labels) {
+		return (Counter) family(name, help, "counter").metrics.computeIfAbsent(labels(labels), k -> new Counter());
+	}
+
+	public static Timer timer(String name, String help, String... labels) {
+		return (Timer) family(name, help, "histogram").metrics.computeIfAbsent(labels(labels), k -> new Timer());
+	}
+
+	// O valor  lido a cada exportao; registrar de novo o mesmo medidor substitui a funo
+	public static void gauge(String name, String help, Supplier<? extends Number> value, String... labels) {
+		family(name, help, "gauge").metrics.put(labels(labels), new Gauge(value));
+	}
+
+	public static void cacheRequest(String cache, boolean hit) {
+		counter("cache_requests_total", "Cache lookups by result", "cache", cache, "result", hit ? "hit" : "miss")
+				.increment();
+	}
+
+	// Conferncia da cpia local com o banco: unchanged = a cpia ainda vale
+	public static void cacheRevalidation(String cache, boolean unchanged) {
+		counter("cache_revalidations_total", "Local copies checked against the database", "cache", cache, "result",
+				unchanged ? "unchanged" : "changed").increment();
+	}
+
+	public static String scrape() {
+		StringBuilder sb = new StringBuilder();
+		for (Family family : new TreeMap<>(families).values()) {
+			sb.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+			sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+			for (Map.Entry<String, Object> entry : new TreeMap<>(family.metrics).entrySet()) {
+				write(sb, family.name, entry.getKey(), entry.getValue());
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void write(StringBuilder sb, String name, String labels, Object metric) {
+		if (metric instanceof Counter) {
+			sample(sb, name, labels, null, ((Counter) metric).get());
+		}
+		else if (metric instanceof Gauge) {
+			Number value;
+			try {
+				value = ((Gauge) metric).value.get();
+			}
+			catch (RuntimeException e) {
+				return;
+			}
+			if (value != null) {
+				sample(sb, name, labels, null, value.doubleValue());
+			}
+		}
+		else {
+			Timer timer = (Timer) metric;
+			long cumulative = 0;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				cumulative += timer.buckets[i].sum();
+				sample(sb, name + "_bucket", labels, "le=\"" + BUCKETS[i] + "\"", cumulative);
+			}
+			long count = timer.count.sum();
+			sample(sb, name + "_bucket", labels, "le=\"+Inf\"", count);
+			sample(sb, name + "_sum", labels, null, timer.sumNanos.sum() / 1e9);
+			sample(sb, name + "_count", labels, null, count);
+		}
+	}
+
+	private static void sample(StringBuilder sb, String name, String labels, String extra, double value) {
+		sb.append(name);
+		if (!labels.isEmpty() || extra != null) {
+			sb.append('{').append(labels);
+			if (extra != null) {
+				sb.append(labels.isEmpty() ? "" : ",").append(extra);
+			}
+			sb.append('}');
+		}
+		sb.append(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			sb.append((long) value);
+		}
+		else {
+			sb.append(value);
+		}
+		sb.append('\n');
+	}
+
+	private static Family family(String name, String help, String type) {
+		Family family = families.computeIfAbsent(name, k -> new Family(name, help, type));
+		if (!family.type.equals(type)) {
+			throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+		}
+		return family;
+	}
+
+	// Rtulos em pares nome, valor: "operation", "SellerDao.findAll"
+	private static String labels(String... labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Labels must be name/value pairs");
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(labels[i]).append("=\"");
+			String value = labels[i + 1] == null ? "" : labels[i + 1];
+			sb.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+		}
+		return sb.toString();
+	}
+
+	private static class Family {
+
+		private final String name;
+		private final String help;
+		private final String type;
+		private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+		Family(String name, String help, String type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	private static class Gauge {
+
+		private final Supplier<? extends Number> value;
+
+		Gauge(Supplier<? extends Number> value) {
+			this.value = value;
+		}
+	}
+
+	public static class Counter {
+
+		private final LongAdder value = new LongAdder();
+
+		public void increment() {
+			value.increment();
+		}
+
+		public void add(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	public static class Timer {
+
+		private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sumNanos = new LongAdder();
+
+		private Timer() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		public void record(long nanos) {
+			double seconds = nanos / 1e9;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				if (seconds <= BUCKETS[i]) {
+					buckets[i].increment();
+					break;
+				}
+			}
+			count.increment();
+			sumNanos.add(nanos);
+		}
+
+		// Registra o tempo decorrido desde start (obtido de System.nanoTime)
+		public void recordSince(long start) {
+			record(System.nanoTime() - start);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package diagnostics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+Publica as Metrics no formato texto do Prometheus, de duas formas (ambas desligadas por padro):
+- metrics.port: endpoint HTTP local (GET /metrics), escutando em metrics.host (127.0.0.1)
+- metrics.file: arquivo regravado a cada metrics.fileIntervalSeconds, para mquinas onde no se pode
+  abrir porta; serve para o textfile collector do node_exporter (extenso .prom)
+*/
+public class MetricsExporter {
+
+	private static HttpServer server = null;
+	private static ScheduledExecutorService fileWriter = null;
+
+	public static synchronized void start(Properties props) {
+		String port = props.getProperty("metrics.port", "").trim();
+		if (!port.isEmpty() && server == null) {
+			startServer(props.getProperty("metrics.host", "127.0.0.1"), Integer.parseInt(port));
+		}
+		String file = props.getProperty("metrics.file", "").trim();
+		if (!file.isEmpty() && fileWriter == null) {
+			long interval = Long.parseLong(props.getProperty("metrics.fileIntervalSeconds", "15"));
+			startFileWriter(Paths.get(file), interval);
+		}
+	}
+
+	public static synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+		if (fileWriter != null) {
+			fileWriter.shutdownNow();
+			fileWriter = null;
+		}
+	}
+
+	private static void startServer(String host, int port) {
+		try {
+			server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		}
+		catch (IOException e) {
+			// Sem mtricas, mas a aplicao segue normalmente
+			Log.LOGGER.warning("Metrics endpoint not started on " + host + ":" + port + ": " + e.getMessage());
+			return;
+		}
+		server.createContext("/metrics", MetricsExporter::handle);
+		server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "metrics-http");
+			t.setDaemon(true);
+			return t;
+		}));
+		server.start();
+	}
+
+	private static void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private static void startFileWriter(Path file, long intervalSeconds) {
+		fileWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "metrics-file");
+			t.setDaemon(true);
+			return t;
+		});
+		fileWriter.scheduleWithFixedDelay(() -> writeFile(file), 0, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	// Grava em um arquivo temporrio e troca de uma vez, para que o coletor nunca leia um arquivo pela metade
+	private static void writeFile(Path file) {
+		try {
+			Path dir = file.toAbsolutePath().getParent();
+			Files.createDirectories(dir);
+			Path tmp = dir.resolve(file.getFileName() + ".tmp");
+			Files.write(tmp, Metrics.scrape().getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException | RuntimeException e) {
+			Log.LOGGER.warning("Metrics file not written: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("workshop.QueryPlan")
+@Label("Query Plan")
+@Category({ "Workshop", "Database" })
+@Description("Plano de execuo capturado por amostragem (EXPLAIN)")
+@StackTrace(false)
+public class QueryPlanEvent extends Event {
+
+	@Label("Operation")
+	public String operation;
+
+	@Label("Plan")
+	public String plan;
+
+	@Label("Flags")
+	@Description("full_scan:<tabela>, filesort, temporary")
+	public String flags;
+
+	@Label("Regression")
+	@Description("O plano mudou e passou a ter um flag que o plano anterior no tinha")
+	public boolean regression;
+
+	@Label("Previous Plan")
+	public String previousPlan;
+}
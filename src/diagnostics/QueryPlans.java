@@ -0,0 +1,314 @@
+package diagnostics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import db.DB;
+
+/*
+Captura por amostragem do plano de execuo (EXPLAIN) das consultas dos DAOs JDBC.
+A primeira execuo de cada operao no processo e uma frao das seguintes (explain.sampleRate)
+passam por um proxy do PreparedStatement que guarda os parmetros e roda o EXPLAIN com os mesmos
+valores antes da consulta. O resumo de cada plano fica em explain.file, para comparar entre execues
+e verses do banco; quando o plano muda e passa a ter full scan, filesort ou tabela temporria,
+a regresso  registrada no log, na mtrica query_plan_regressions_total e no evento QueryPlanEvent.
+O EXPLAIN e a gravao de explain.file rodam em uma thread prpria, com uma conexo prpria para cada
+banco (rplicas e shards includos): a consulta original no espera por eles. Com a fila cheia
+a amostra  descartada.
+*/
+public class QueryPlans {
+
+	private static final Set<String> EXECUTE_METHODS = new LinkedHashSet<>(
+			Arrays.asList("execute", "executeQuery", "executeUpdate", "executeBatch"));
+
+	private static final Pattern TABLE_SCAN = Pattern.compile("(\\w+)\\.tableScan");
+
+	private static final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+	private static Properties baseline = null;
+
+	private static final ExecutorService explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(100), r -> {
+				Thread t = new Thread(r, "query-plans");
+				t.setDaemon(true);
+				return t;
+			}, new ThreadPoolExecutor.DiscardPolicy());
+
+	// Conexes do EXPLAIN por URL do banco; usadas s pela thread do explainer
+	private static final Map<String, Connection> connections = new HashMap<>();
+
+	// Devolve o prprio statement quando a execuo no foi sorteada
+	public static PreparedStatement sample(Connection conn, String operation, String sql, PreparedStatement st) {
+		if (!isExplainable(sql) || !sampled(operation)) {
+			return st;
+		}
+		Map<Integer, Object[]> parameters = new TreeMap<>();
+		boolean[] captured = { false };
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+					String name = method.getName();
+					if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+						parameters.put((Integer) args[0], new Object[] { method, args });
+					}
+					else if (name.equals("clearParameters")) {
+						parameters.clear();
+					}
+					else if (EXECUTE_METHODS.contains(name) && (args == null || args.length == 0) && !captured[0]) {
+						captured[0] = true;
+						submit(conn, operation, sql, new ArrayList<>(parameters.values()));
+					}
+					try {
+						return method.invoke(st, args);
+					}
+					catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	private static boolean isExplainable(String sql) {
+		String start = sql.trim().toUpperCase();
+		return start.startsWith("SELECT") || start.startsWith("UPDATE") || start.startsWith("DELETE");
+	}
+
+	private static boolean sampled(String operation) {
+		String backend = DB.getBackend();
+		if (!backend.equals("mysql") && !backend.equals("h2")) {
+			return false;
+		}
+		double rate = Double.parseDouble(DB.getProperties().getProperty("explain.sampleRate", "0.01"));
+		if (rate <= 0) {
+			return false;
+		}
+		return seen.add(operation) || ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
+	// Falhas do EXPLAIN nunca afetam a consulta original
+	private static void submit(Connection conn, String operation, String sql, List<Object[]> parameters) {
+		String url;
+		try {
+			url = conn.getMetaData().getURL();
+		}
+		catch (SQLException e) {
+			Log.LOGGER.warning("Query plan not captured for " + operation + ": " + e.getMessage());
+			return;
+		}
+		explainer.execute(() -> capture(url, operation, sql, parameters));
+	}
+
+	private static void capture(String url, String operation, String sql, List<Object[]> parameters) {
+		try {
+			Plan plan = explain(connection(url), sql, parameters);
+			compare(operation, plan);
+		}
+		catch (SQLException e) {
+			// A conexo pode ter cado: a prxima amostra deste banco abre outra
+			close(connections.remove(url));
+			Log.LOGGER.warning("Query plan not captured for " + operation + ": " + e.getMessage());
+		}
+		catch (IOException | RuntimeException e) {
+			Log.LOGGER.warning("Query plan not captured for " + operation + ": " + e.getMessage());
+		}
+	}
+
+	private static Connection connection(String url) throws SQLException {
+		Connection conn = connections.get(url);
+		if (conn == null || conn.isClosed()) {
+			conn = DriverManager.getConnection(url, DB.getProperties());
+			connections.put(url, conn);
+		}
+		return conn;
+	}
+
+	private static void close(Connection conn) {
+		if (conn == null) {
+			return;
+		}
+		try {
+			conn.close();
+		}
+		catch (SQLException e) {
+			// a conexo j estava quebrada
+		}
+	}
+
+	private static Plan explain(Connection conn, String sql, List<Object[]> parameters) throws SQLException {
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = conn.prepareStatement("EXPLAIN " + sql);
+			for (Object[] call : parameters) {
+				try {
+					((Method) call[0]).invoke(st, (Object[]) call[1]);
+				}
+				catch (ReflectiveOperationException e) {
+					throw new SQLException("Parameter not replayed: " + e.getMessage());
+				}
+			}
+			rs = st.executeQuery();
+			return isH2(conn) ? h2Plan(rs) : mysqlPlan(rs);
+		}
+		finally {
+			DB.closeResultSet(rs);
+			DB.closeStatement(st);
+		}
+	}
+
+	// O formato do EXPLAIN  o do banco que respondeu, que pode no ser o do backend (ex.: rplica MySQL)
+	private static boolean isH2(Connection conn) throws SQLException {
+		return conn.getMetaData().getDatabaseProductName().equalsIgnoreCase("H2");
+	}
+
+	// Uma linha por tabela: type ALL  varredura completa; Extra indica ordenao e tabela temporria
+	private static Plan mysqlPlan(ResultSet rs) throws SQLException {
+		List<String> steps = new ArrayList<>();
+		Set<String> flags = new LinkedHashSet<>();
+		while (rs.next()) {
+			String table = rs.getString("table");
+			String type = rs.getString("type");
+			String key = rs.getString("key");
+			String extra = rs.getString("Extra");
+			steps.add(table + ":" + type + ":" + (key == null ? "-" : key) + (extra == null ? "" : ":" + extra));
+			if ("ALL".equals(type)) {
+				flags.add("full_scan:" + table);
+			}
+			if (extra != null && extra.contains("Using filesort")) {
+				flags.add("filesort");
+			}
+			if (extra != null && extra.contains("Using temporary")) {
+				flags.add("temporary");
+			}
+		}
+		return new Plan(String.join(" | ", steps), flags);
+	}
+
+	// O H2 devolve o plano em texto, com a estratgia de acesso de cada tabela em comentrios
+	private static Plan h2Plan(ResultSet rs) throws SQLException {
+		String text = rs.next() ? rs.getString(1).replaceAll("\\s+", " ").trim() : "";
+		Set<String> flags = new LinkedHashSet<>();
+		Matcher m = TABLE_SCAN.matcher(text);
+		while (m.find()) {
+			flags.add("full_scan:" + m.group(1).toLowerCase());
+		}
+		if (text.contains("ORDER BY") && !text.contains("index sorted")) {
+			flags.add("filesort");
+		}
+		return new Plan(text, flags);
+	}
+
+	// S a thread do explainer chama: a leitura e a regravao de explain.file no disputam com as consultas
+	private static void compare(String operation, Plan plan) throws IOException {
+		Properties stored = baseline();
+		Plan previous = Plan.parse(stored.getProperty(operation));
+		if (previous != null && previous.summary.equals(plan.summary)) {
+			return;
+		}
+		Set<String> added = new LinkedHashSet<>(plan.flags);
+		if (previous != null) {
+			added.removeAll(previous.flags);
+		}
+		boolean regression = previous != null && !added.isEmpty();
+		if (regression) {
+			Log.LOGGER.warning("Query plan regression in " + operation + " (" + String.join(", ", added)
+					+ ")\n  before: " + previous.summary + "\n  now:    " + plan.summary);
+			Metrics.counter("query_plan_regressions_total", "Plans that changed and gained a scan, filesort or temporary table",
+					"operation", operation).increment();
+		}
+		QueryPlanEvent event = new QueryPlanEvent();
+		if (event.shouldCommit()) {
+			event.operation = operation;
+			event.plan = plan.summary;
+			event.flags = String.join(",", plan.flags);
+			event.regression = regression;
+			event.previousPlan = previous == null ? null : previous.summary;
+			event.commit();
+		}
+		stored.setProperty(operation, plan.format());
+		save(stored);
+	}
+
+	private static Properties baseline() throws IOException {
+		if (baseline == null) {
+			baseline = new Properties();
+			Path path = path();
+			if (Files.exists(path)) {
+				try (InputStream in = Files.newInputStream(path)) {
+					baseline.load(in);
+				}
+			}
+		}
+		return baseline;
+	}
+
+	private static void save(Properties stored) throws IOException {
+		Path path = path().toAbsolutePath();
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp)) {
+			stored.store(out, "Query plans captured by EXPLAIN: flags | plan");
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Path path() {
+		return Paths.get(DB.getProperties().getProperty("explain.file", "query-plans.properties"));
+	}
+
+	private static class Plan {
+
+		private final String summary;
+		private final Set<String> flags;
+
+		Plan(String summary, Set<String> flags) {
+			this.summary = summary;
+			this.flags = flags;
+		}
+
+		String format() {
+			return String.join(",", flags) + " | " + summary;
+		}
+
+		static Plan parse(String value) {
+			if (value == null) {
+				return null;
+			}
+			int sep = value.indexOf('|');
+			Set<String> flags = new LinkedHashSet<>();
+			for (String flag : value.substring(0, sep).split(",")) {
+				if (!flag.isBlank()) {
+					flags.add(flag.trim());
+				}
+			}
+			return new Plan(value.substring(sep + 1).trim(), flags);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("workshop.ViewLoad")
+@Label("View Load")
+@Category({ "Workshop", "User Interface" })
+@Description("Abertura de uma tela pelo menu principal, at a primeira lista exibida")
+@StackTrace(false)
+public class ViewLoadEvent extends Event {
+
+	@Label("View")
+	public String view;
+
+	// shown, error ou cancelled (saiu da tela antes de os dados chegarem)
+	@Label("Outcome")
+	public String outcome;
+
+	@Label("Cached")
+	@Description("A tela j estava aberta no ViewCache e s foi recolocada")
+	public boolean cached;
+
+	@Label("FXML Load Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long fxmlLoadTime;
+
+	@Label("Data Load Time")
+	@Description("Do fim da carga do FXML at os dados aparecerem na tabela")
+	@Timespan(Timespan.NANOSECONDS)
+	public long dataLoadTime;
+}
@@ -1,15 +1,16 @@
 package gui;
 
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import db.DbException;
-import gui.listeners.DataChangeListener;
+import diagnostics.FormSaveEvent;
+import diagnostics.Metrics;
 import gui.util.Alerts;
+import gui.util.AsyncValidator;
 import gui.util.Constraints;
 import gui.util.Utils;
 import javafx.event.ActionEvent;
@@ -29,9 +30,6 @@ public class DepartmentFormController implements Initializable {
 	
 	private DepartmentService service;
 	
-	// Lista que conter os objetos que sero atualizados quando ocorrer alguma altualizao na tabela Department
-	private List<DataChangeListener> dataChangeListeners = new ArrayList<>();
-	
 	@FXML
 	private TextField txtId;
 	
@@ -47,6 +45,8 @@ public class DepartmentFormController implements Initializable {
 	@FXML
 	private Button btCancel;
 	
+	private AsyncValidator nameCheck;
+	
 	public void setDepartment(Department entity) {
 		this.entity = entity;
 	}
@@ -54,11 +54,6 @@ public class DepartmentFormController implements Initializable {
 	public void setDepartmentService(DepartmentService service) {
 		this.service = service;
 	}
-	
-	// Inclui um objeto na lista de objetos que sero atualizados quando ocorrer alguma atualizao na tabela Department
-	public void subscribeDataChangeListener(DataChangeListener listener) {
-		dataChangeListeners.add(listener);
-	}
 
 	@FXML
 	private void onBtSaveAction(ActionEvent event) {
@@ -68,16 +63,27 @@ public class DepartmentFormController implements Initializable {
 		if (service == null) {
 			throw new IllegalStateException("Service was null");
 		}
+		// Clique antes de a verificao do nome terminar: verifica agora e salva com o resultado
+		if (nameCheck.isPending()) {
+			nameCheck.flush(() -> onBtSaveAction(event));
+			return;
+		}
+		// Tempos de validao e de gravao, para o JFR
+		FormSaveEvent save = new FormSaveEvent();
+		save.begin();
+		long start = System.nanoTime();
+		long validated = start;
+		// Qualquer exceo no tratada abaixo (ex.: RuntimeException) tambm conta como erro
+		save.outcome = "error";
 		try {
 			// Popula a entidade com os dados do formulrio
 			entity = getFormData();
+			validated = System.nanoTime();
 			
-			// salva no banco
+			// salva no banco; o servio publica a alterao no EventBus para as telas interessadas
 			service.saveOrUpdate(entity);
-			
-			// Atualiza as informaes da DepartmentListController
-			// Executa o mtodo onDataChanged dos objetos que implementaram a interface DataChangeListener
-			notifyDataChangeListener();
+			save.dbTime = System.nanoTime() - validated;
+			save.outcome = "saved";
 			
 			// Fecha a janela
 			Utils.currentStage(event).close();
@@ -85,25 +91,32 @@ public class DepartmentFormController implements Initializable {
 		// Exceo lanada pelo mtodo getFormData
 		// Exceo para validar os campos do formulrio de departamento
 		catch (ValidationException e) {
+			validated = System.nanoTime();
+			save.outcome = "invalid";
 			// Apresenta as mensagens de erro
 			setErrorMessages(e.getErrors());
 		}
 		catch (DbException e) {
+			save.dbTime = System.nanoTime() - validated;
+			save.outcome = "error";
 			Alerts.showAlert("Error saving object", null, e.getMessage(), AlertType.ERROR);
 		}
-	}
-
-	// Atualiza todos os objetos precisam ser atualizados devido a atualizao da tabela Department
-	private void notifyDataChangeListener() {
-		for (DataChangeListener listener : dataChangeListeners) {
-			listener.onDataChanged();
+		finally {
+			Metrics.timer("ui_form_save_seconds", "Form save time, validation included", "entity", "Department", "outcome",
+					save.outcome).recordSince(start);
+			save.end();
+			if (save.shouldCommit()) {
+				save.entity = "Department";
+				save.validationTime = validated - start;
+				save.commit();
+			}
 		}
 	}
 
 	// Retorna a entidade com os dados do formulrio
 	private Department getFormData() {
-		// Instancia a entidade
-		Department obj = new Department();
+		// Copia a entidade, mantendo os valores lidos do banco para gravar somente o que mudou
+		Department obj = entity.copy();
 		// Cria uma exceo para erros no preenchimento do formulrio
 		ValidationException exception = new ValidationException("Validation Error");
 
@@ -115,6 +128,10 @@ public class DepartmentFormController implements Initializable {
 			// Adiciona mensagem de error na exceo
 			exception.addError("name", "Field can't be empty");
 		}
+		else if (nameCheck.getError() != null) {
+			// Resultado da verificao feita no banco durante a digitao
+			exception.addError("name", nameCheck.getError());
+		}
 		
 		// Seta o nome com o valor digitado no formulrio
 		obj.setName(txtName.getText());
@@ -141,6 +158,20 @@ public class DepartmentFormController implements Initializable {
 	private void initializeNodes() {
 		Constraints.setTextFieldInteger(txtId);
 		Constraints.setTextFieldMaxLength(txtName, 30);
+		nameCheck = new AsyncValidator(txtName, labelErrorName, this::checkName);
+	}
+	
+	// Chamado pelo AsyncValidator na thread do JavaFX: o departamento  lido aqui e s a consulta roda em segundo plano
+	private Supplier<String> checkName(String name) {
+		Integer id = entity.getId();
+		if (id != null && name.equalsIgnoreCase(entity.getName())) {
+			return () -> null;
+		}
+		return () -> service.isNameTaken(name, id) ? "Department already exists" : null;
+	}
+	
+	public void cancelValidation() {
+		nameCheck.cancel();
 	}
 	
 	public void updateFormData() {
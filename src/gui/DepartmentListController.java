@@ -2,14 +2,20 @@ package gui;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import application.Main;
 import db.DbIntegrityException;
-import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
+import gui.util.CachedView;
+import gui.util.DataView;
+import gui.util.Tasks;
 import gui.util.Utils;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
@@ -29,10 +35,23 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.Pane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import model.dto.DepartmentStats;
 import model.entities.Department;
+import model.events.DataChangeEvent;
+import model.events.DataChangeEvent.Kind;
+import model.events.DataChangeListener;
+import model.events.EventBus;
+import model.services.QueryHandle;
 import model.services.DepartmentService;
 
-public class DepartmentListController implements Initializable, DataChangeListener {
+public class DepartmentListController implements Initializable, DataChangeListener, CachedView, DataView {
+
+	// Estimativas usadas pelo ViewCache: ns da tela e cada linha carregada
+	private static final long VIEW_BYTES = 128 * 1024;
+	private static final long ROW_BYTES = 100;
+
+	// Eventos acumulados fora da tela, no mximo; acima disso a lista  recarregada ao voltar
+	private static final int MAX_PENDING_EVENTS = 500;
 
 	private DepartmentService service;
 
@@ -45,6 +64,12 @@ public class DepartmentListController implements Initializable, DataChangeListen
 	@FXML
 	private TableColumn<Department, String> tableColumnName;
 
+	@FXML
+	private TableColumn<Department, Integer> tableColumnHeadcount;
+
+	@FXML
+	private TableColumn<Department, Double> tableColumnPayroll;
+
 	@FXML
 	private TableColumn<Department, Department> tableColumnEDIT;
 
@@ -56,6 +81,18 @@ public class DepartmentListController implements Initializable, DataChangeListen
 
 	private ObservableList<Department> obsList;
 
+	// Totais por departamento; os departamentos sem vendedores no aparecem
+	private Map<Integer, DepartmentStats> stats = Map.of();
+
+	// Alteraes recebidas enquanto a tela estava fora da janela
+	private List<DataChangeEvent> pendingEvents = new ArrayList<>();
+
+	// Leitura da lista em andamento e se ela foi interrompida antes de terminar
+	private QueryHandle<List<Department>> loading;
+	private boolean stale = false;
+
+	private Consumer<String> onDataShown;
+
 	@FXML
 	public void onBtNewAction(ActionEvent event) {
 		Stage parentStage = Utils.currentStage(event);
@@ -77,24 +114,118 @@ public class DepartmentListController implements Initializable, DataChangeListen
 		// Isso  necessrio para os dados apaream quando a tabela for populada
 		tableColumnId.setCellValueFactory(new PropertyValueFactory<>("id"));
 		tableColumnName.setCellValueFactory(new PropertyValueFactory<>("name"));
+		tableColumnHeadcount.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(
+				statsOf(param.getValue()).getHeadcount()));
+		tableColumnPayroll.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(
+				statsOf(param.getValue()).getPayroll()));
+		Utils.formatTableColumnDouble(tableColumnPayroll, 2);
 
 		// Faz a table view acompanhar a altura da janela
 		Stage stage = (Stage) Main.getMainScene().getWindow();
 		tableViewDepartment.prefHeightProperty().bind(stage.heightProperty());
+
+		// Recebe as alteraes de departamentos enquanto a tela existir (inclusive guardada no ViewCache)
+		EventBus.subscribe(Department.class, this, true);
+		// e as dos totais, mantidos pelo DepartmentService a partir das alteraes de vendedores
+		EventBus.subscribe(DepartmentStats.class, this, true);
+
+		// Ao trocar de tela, cancela no banco a leitura que ainda estiver em andamento
+		tableViewDepartment.sceneProperty().addListener((obs, oldScene, newScene) -> {
+			if (newScene == null) {
+				cancelLoading();
+			}
+		});
 	}
 
 	public void updateTableView() {
 		if (service == null) {
 			throw new IllegalStateException("Service was null");
 		}
-		List<Department> list = service.findAll();
+		load(service.findAllAsync(),
+				e -> Alerts.showAlert("Error loading departments", null, e.getMessage(), AlertType.ERROR));
+	}
+
+	// Mostra imediatamente a cpia local e revalida com o banco em segundo plano
+	public void updateTableViewFromCache() {
+		if (service == null) {
+			throw new IllegalStateException("Service was null");
+		}
+		List<Department> cached = service.findCached();
+		if (cached == null) {
+			updateTableView();
+			return;
+		}
+		showList(cached);
+		// Banco fora do ar no chega aqui: a revalidao mantm a cpia local e o menu mostra o estado offline
+		load(service.revalidateAsync(),
+				e -> Alerts.showAlert("Error loading departments", null, e.getMessage(), AlertType.ERROR));
+	}
+
+	// S uma leitura da lista por vez: a anterior  cancelada no banco
+	private void load(QueryHandle<List<Department>> handle, Consumer<Throwable> onFailure) {
+		if (loading != null) {
+			loading.cancel();
+		}
+		stale = false;
+		loading = Tasks.await(handle, list -> {
+			loading = null;
+			if (list != null) {
+				showList(list);
+			}
+		}, e -> {
+			loading = null;
+			dataShown("error");
+			onFailure.accept(e);
+		});
+	}
+
+	// Interrompe a leitura em andamento; a lista  recarregada quando a tela voltar a ser exibida
+	private void cancelLoading() {
+		if (loading != null) {
+			loading.cancel();
+			loading = null;
+			stale = true;
+			dataShown("cancelled");
+		}
+	}
+
+	@Override
+	public void setOnDataShown(Consumer<String> action) {
+		onDataShown = action;
+	}
+
+	private void dataShown(String outcome) {
+		if (onDataShown != null) {
+			Consumer<String> action = onDataShown;
+			onDataShown = null;
+			action.accept(outcome);
+		}
+	}
+
+	private void showList(List<Department> list) {
 		obsList = FXCollections.observableArrayList(list);
 		tableViewDepartment.setItems(obsList);
+		updateStats();
 		
 		// Cria boto para editar um separtamento
 		initEditButtons();
 		// Cria boto para remover um departamento
 		initRemoveButtons();
+		
+		dataShown("shown");
+	}
+
+	// S a primeira leitura vai ao banco (uma consulta agregada); as seguintes vm do cache
+	private void updateStats() {
+		Tasks.run(service::findStats, map -> {
+			stats = map;
+			tableViewDepartment.refresh();
+		}, e -> {});
+	}
+
+	private DepartmentStats statsOf(Department obj) {
+		DepartmentStats item = obj.getId() == null ? null : stats.get(obj.getId());
+		return item != null ? item : new DepartmentStats(obj.getId() == null ? 0 : obj.getId(), 0, 0.0);
 	}
 
 	private void createDialogForm(Department obj, String absoluteName, Stage parentStage) {
@@ -113,10 +244,6 @@ public class DepartmentListController implements Initializable, DataChangeListen
 			// Atualiza os campos do DepartmentFormController
 			controller.updateFormData();
 
-			/* Adiciona o objeto atual (DepartmentListController) na lista de atualizaes
-			   para que ele possa ser atualizado na volta do formulrio */
-			controller.subscribeDataChangeListener(this);
-			
 			// Abre o formurio DepartmentForm em estilo Modal
 			Stage dialogStage = new Stage();
 			dialogStage.setTitle("Enter Department data");
@@ -124,6 +251,8 @@ public class DepartmentListController implements Initializable, DataChangeListen
 			dialogStage.setResizable(false);
 			dialogStage.initOwner(parentStage);
 			dialogStage.initModality(Modality.WINDOW_MODAL);
+			// Fechar o dilogo cancela a verificao do nome que ainda estiver em andamento
+			dialogStage.setOnHidden(event -> controller.cancelValidation());
 			dialogStage.showAndWait();
 
 		} catch (IOException e) {
@@ -132,12 +261,76 @@ public class DepartmentListController implements Initializable, DataChangeListen
 		}
 	}
 
-	/* Este mtodo  chamado na classe DepartmentFormController em caso de alterao na tabela Department
-	   para que os dados desta tambm possam ser atualizados */
+	/* Chamado pelo EventBus com todas as alteraes de departamentos feitas desde a ltima notificao,
+	   para que os dados desta tela tambm possam ser atualizados */
 	@Override
-	public void onDataChanged() {
-		// Atualiza a Table View de departamentos
-		updateTableView();
+	public void onDataChanged(List<DataChangeEvent> events) {
+		if (obsList == null) {
+			return;
+		}
+		// Fora da janela (guardada no ViewCache): acumula para aplicar quando voltar a ser exibida
+		if (tableViewDepartment.getScene() == null) {
+			if (!stale) {
+				pendingEvents.addAll(events);
+			}
+			if (pendingEvents.size() > MAX_PENDING_EVENTS) {
+				pendingEvents.clear();
+				stale = true;
+			}
+			return;
+		}
+		applyChanges(events);
+	}
+
+	@Override
+	public void onReattached() {
+		// A leitura foi cancelada ao sair da tela: recarrega tudo, o que j inclui as alteraes pendentes
+		if (stale) {
+			pendingEvents.clear();
+			updateTableView();
+			return;
+		}
+		if (!pendingEvents.isEmpty()) {
+			List<DataChangeEvent> events = new ArrayList<>(pendingEvents);
+			pendingEvents.clear();
+			applyChanges(events);
+		}
+	}
+
+	@Override
+	public void onEvicted() {
+		EventBus.unsubscribe(Department.class, this);
+		EventBus.unsubscribe(DepartmentStats.class, this);
+		pendingEvents.clear();
+	}
+
+	@Override
+	public long estimateMemory() {
+		return VIEW_BYTES + (obsList == null ? 0 : (long) obsList.size() * ROW_BYTES);
+	}
+
+	// A lista de departamentos  pequena: qualquer incluso ou alterao recarrega a lista
+	private void applyChanges(List<DataChangeEvent> events) {
+		List<DataChangeEvent> departmentEvents = new ArrayList<>();
+		boolean statsChanged = false;
+		for (DataChangeEvent event : events) {
+			if (event.getTopic() == DepartmentStats.class) {
+				statsChanged = true;
+			}
+			else {
+				departmentEvents.add(event);
+			}
+		}
+		if (statsChanged) {
+			updateStats();
+		}
+
+		Set<Integer> deleted = DataChangeEvent.idsOf(departmentEvents, Kind.DELETED);
+		obsList.removeIf(obj -> deleted.contains(obj.getId()));
+
+		if (!DataChangeEvent.idsOf(departmentEvents, Kind.INSERTED, Kind.UPDATED).isEmpty()) {
+			updateTableView();
+		}
 	}
 
 	// Cria boto para editar um departamento
@@ -189,7 +382,6 @@ public class DepartmentListController implements Initializable, DataChangeListen
 			}
 			try {
 				service.remove(obj);
-				updateTableView();
 			}
 			catch (DbIntegrityException e) {
 				Alerts.showAlert("Error removing object", null, e.getMessage(), AlertType.ERROR);
@@ -2,22 +2,37 @@ package gui;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.function.Consumer;
 
 import application.Main;
+import db.CircuitBreaker;
+import db.DB;
+import db.Resilience;
+import diagnostics.Log;
+import diagnostics.Metrics;
+import diagnostics.ViewLoadEvent;
 import gui.util.Alerts;
+import gui.util.CachedView;
+import gui.util.DataView;
+import gui.util.ViewCache;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.VBox;
+import model.cache.ReferenceDataCache;
 import model.services.DepartmentService;
 import model.services.SellerService;
+import model.services.SellerWriteQueue;
 
 public class MainViewController implements Initializable {
 	
@@ -30,21 +45,21 @@ public class MainViewController implements Initializable {
 	@FXML
 	private MenuItem menuItemAbout;
 	
+	@FXML
+	private Menu menuDbStatus;
+	
+	// Telas j abertas, mantidas com os dados carregados para que a troca de menu seja imediata
+	private ViewCache viewCache = new ViewCache(DB.getProperties());
+	
 	@FXML
 	public void onMenuItemSellerAction() {
-		loadView("/gui/SellerList.fxml", (SellerListController controller) -> {
-			controller.setSellerService(new SellerService());
-			controller.updateTableView();
-		});
+		loadView("/gui/SellerList.fxml", this::initSellerList);
 	}
 
 	@FXML
 	public void onMenuItemDepartmentAction() {
 		// loadView2("/gui/DepartmentList.fxml");
-		loadView("/gui/DepartmentList.fxml", (DepartmentListController controller) -> {
-					controller.setDepartmentService(new DepartmentService());
-					controller.updateTableView();
-				});
+		loadView("/gui/DepartmentList.fxml", this::initDepartmentList);
 	}
 
 	@FXML
@@ -54,38 +69,161 @@ public class MainViewController implements Initializable {
 	
 	@Override
 	public void initialize(URL uri, ResourceBundle rb) {
+		// Mostra no menu o estado da conexo com o banco (circuit breaker)
+		CircuitBreaker breaker = Resilience.getCircuitBreaker();
+		updateDbStatus(breaker.getState());
+		breaker.addStateListener(state -> Platform.runLater(() -> updateDbStatus(state)));
+		// e se as listas esto vindo da cpia local
+		ReferenceDataCache.addOfflineListener(offline -> Platform.runLater(() -> updateDbStatus(breaker.getState())));
+		
+		// Gravao adiada: avisa o usurio quando um vendedor salvo no pde ser gravado no banco
+		SellerWriteQueue writeQueue = SellerService.getWriteQueue();
+		if (writeQueue != null) {
+			writeQueue.addFailureListener((seller, e) -> Platform.runLater(() -> Alerts.showAlert("Error saving seller",
+					"Seller " + seller.getName() + " was not saved", e.getMessage(), AlertType.ERROR)));
+		}
+	}
+	
+	/* Inicializao rpida (startup.fast): monta as listas fora da janela e as guarda no ViewCache,
+	   j com os dados sendo carregados; o primeiro clique no menu s recoloca os ns */
+	public void preloadViews() {
+		preloadView("/gui/DepartmentList.fxml", this::initDepartmentList);
+		preloadView("/gui/SellerList.fxml", this::initSellerList);
+	}
+	
+	private void initSellerList(SellerListController controller) {
+		controller.setSellerService(new SellerService());
+		controller.updateTableViewFromCache();
+	}
+	
+	private void initDepartmentList(DepartmentListController controller) {
+		controller.setDepartmentService(new DepartmentService());
+		controller.updateTableViewFromCache();
+	}
+	
+	private void updateDbStatus(CircuitBreaker.State state) {
+		String text;
+		switch (state) {
+		case OPEN:
+			text = "Database: offline";
+			break;
+		case HALF_OPEN:
+			text = "Database: reconnecting";
+			break;
+		default:
+			text = "Database: online";
+		}
+		if (ReferenceDataCache.isOffline()) {
+			text += " (showing local copy, read only)";
+		}
+		menuDbStatus.setText(text);
 	}
 	
 	private synchronized <T> void loadView(String absoluteName, Consumer<T> initializingAction) {
+		// Tempo de abertura da tela para o JFR: carga do FXML e chegada dos dados
+		ViewLoadEvent load = new ViewLoadEvent();
+		load.begin();
+		load.view = absoluteName;
+		long start = System.nanoTime();
+		
+		// Tela j aberta antes: s recoloca os ns e aplica o que mudou enquanto estava fora
+		ViewCache.Entry cached = viewCache.get(absoluteName);
+		if (cached != null) {
+			showNodes(cached.getNodes());
+			cached.getController().onReattached();
+			viewCache.trim(absoluteName);
+			load.cached = true;
+			load.outcome = "shown";
+			load.commit();
+			viewLoadTimer(absoluteName, true).recordSince(start);
+			return;
+		}
 		try {
 			// Obtem o VBox da tela que se deseja abrir
 			FXMLLoader loader = new FXMLLoader(getClass().getResource(absoluteName));
 			VBox newVBox = loader.load();
+			long loaded = System.nanoTime();
+			load.fxmlLoadTime = loaded - start;
 			
-			// Obtem o node VBox da tela principal
-			Scene mainScene = Main.getMainScene();
-			VBox mainVBox = (VBox) ((ScrollPane) mainScene.getRoot()).getContent();
-			
-			// Guarda o node de menu principal do VBox
-			Node mainMenu = mainVBox.getChildren().get(0);
-			
-			// Apaga todos os filhos do VBox
-			mainVBox.getChildren().clear();
-			
-			// Inclui novamente o menu principal do VBox
-			mainVBox.getChildren().add(mainMenu);
-			
-			// Inclui os filhos da newVBox
-			mainVBox.getChildren().addAll(newVBox.getChildren());
+			// Guarda os filhos da newVBox, que passaro para o VBox da tela principal
+			List<Node> nodes = new ArrayList<>(newVBox.getChildren());
+			showNodes(nodes);
 			
 			// Executa a funo para popular dados na janela
 			T controller = loader.getController();
+			if (controller instanceof DataView) {
+				// Falha ou sada da tela antes dos dados tambm gera o evento, com o resultado
+				((DataView) controller).setOnDataShown(outcome -> {
+					load.dataLoadTime = System.nanoTime() - loaded;
+					load.outcome = outcome;
+					load.commit();
+					if (outcome.equals("shown")) {
+						viewLoadTimer(absoluteName, false).recordSince(start);
+					}
+				});
+			}
 			initializingAction.accept(controller);
+			if (!(controller instanceof DataView)) {
+				load.outcome = "shown";
+				load.commit();
+				viewLoadTimer(absoluteName, false).recordSince(start);
+			}
+			
+			if (controller instanceof CachedView) {
+				viewCache.put(absoluteName, nodes, (CachedView) controller);
+			}
 		}
 		catch (IOException e) {
+			load.outcome = "error";
+			load.commit();
 			Alerts.showAlert("IO Exception", "Error loading view", e.getMessage(), AlertType.ERROR);
 		}
 	}
+	
+	private synchronized <T> void preloadView(String absoluteName, Consumer<T> initializingAction) {
+		// J aberta por um clique antes da pr-carga
+		if (viewCache.contains(absoluteName)) {
+			return;
+		}
+		try {
+			FXMLLoader loader = new FXMLLoader(getClass().getResource(absoluteName));
+			VBox newVBox = loader.load();
+			List<Node> nodes = new ArrayList<>(newVBox.getChildren());
+			T controller = loader.getController();
+			initializingAction.accept(controller);
+			if (controller instanceof CachedView) {
+				viewCache.put(absoluteName, nodes, (CachedView) controller);
+			}
+		}
+		catch (IOException e) {
+			// Sem pr-carga a tela  montada no clique, como no modo normal
+			Log.LOGGER.warning("Preload of " + absoluteName + " failed: " + e.getMessage());
+		}
+	}
+	
+	// Do clique no menu at os dados aparecerem na tela
+	private static Metrics.Timer viewLoadTimer(String view, boolean cached) {
+		return Metrics.timer("ui_view_load_seconds", "Time to open a view until its data is shown", "view", view,
+				"cached", String.valueOf(cached));
+	}
+	
+	private void showNodes(List<Node> nodes) {
+		// Obtem o node VBox da tela principal
+		Scene mainScene = Main.getMainScene();
+		VBox mainVBox = (VBox) ((ScrollPane) mainScene.getRoot()).getContent();
+		
+		// Guarda o node de menu principal do VBox
+		Node mainMenu = mainVBox.getChildren().get(0);
+		
+		// Apaga todos os filhos do VBox
+		mainVBox.getChildren().clear();
+		
+		// Inclui novamente o menu principal do VBox
+		mainVBox.getChildren().add(mainMenu);
+		
+		// Inclui os ns da tela
+		mainVBox.getChildren().addAll(nodes);
+	}
 
 	/*
 	private synchronized void loadView2(String absoluteName) {
@@ -4,18 +4,21 @@ import java.net.URL;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import db.DbException;
-import gui.listeners.DataChangeListener;
+import diagnostics.FormSaveEvent;
+import diagnostics.Metrics;
 import gui.util.Alerts;
+import gui.util.AsyncValidator;
 import gui.util.Constraints;
+import gui.util.Tasks;
 import gui.util.Utils;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -35,6 +38,7 @@ import model.entities.Department;
 import model.entities.Seller;
 import model.exceptions.ValidationException;
 import model.services.DepartmentService;
+import model.services.QueryHandle;
 import model.services.SellerService;
 
 public class SellerFormController implements Initializable {
@@ -45,10 +49,6 @@ public class SellerFormController implements Initializable {
 
 	private DepartmentService departmentService;
 
-	// Lista que conter os objetos que sero atualizados quando ocorrer alguma
-	// altualizao na tabela Seller
-	private List<DataChangeListener> dataChangeListeners = new ArrayList<>();
-
 	@FXML
 	private TextField txtId;
 
@@ -87,6 +87,10 @@ public class SellerFormController implements Initializable {
 
 	private ObservableList<Department> obsList;
 
+	private QueryHandle<List<Department>> loading;
+
+	private AsyncValidator emailCheck;
+
 	public void setSeller(Seller entity) {
 		this.entity = entity;
 	}
@@ -96,12 +100,6 @@ public class SellerFormController implements Initializable {
 		this.departmentService = departmentService;
 	}
 
-	// Inclui um objeto na lista de objetos que sero atualizados quando ocorrer
-	// alguma atualizao na tabela Seller
-	public void subscribeDataChangeListener(DataChangeListener listener) {
-		dataChangeListeners.add(listener);
-	}
-
 	@FXML
 	private void onBtSaveAction(ActionEvent event) {
 		if (entity == null) {
@@ -110,17 +108,34 @@ public class SellerFormController implements Initializable {
 		if (service == null) {
 			throw new IllegalStateException("Service was null");
 		}
+		// Clique antes de a verificao do email terminar: verifica agora e salva com o resultado
+		if (emailCheck.isPending()) {
+			emailCheck.flush(() -> onBtSaveAction(event));
+			return;
+		}
+		// Tempos de validao e de gravao, para o JFR
+		FormSaveEvent save = new FormSaveEvent();
+		save.begin();
+		long start = System.nanoTime();
+		long validated = start;
+		// Qualquer exceo no tratada abaixo (ex.: RuntimeException) tambm conta como erro
+		save.outcome = "error";
 		try {
 			// pega os dados do formulrio
 			entity = getFormData();
+			validated = System.nanoTime();
 
-			// salva no banco
+			// salva no banco; o servio publica a alterao no EventBus para as telas interessadas
+			save.deferred = SellerService.getWriteQueue() != null;
 			service.saveOrUpdate(entity);
-
-			// Atualiza informaes na tela
-			// Executa o mtodo onDataChanged dos objetos que implementaram a interface
-			// DataChangeListener
-			notifyDataChangeListener();
+			// Com write-behind o tempo medido  o do dirio, no o do banco
+			if (save.deferred) {
+				save.journalTime = System.nanoTime() - validated;
+			}
+			else {
+				save.dbTime = System.nanoTime() - validated;
+			}
+			save.outcome = "saved";
 
 			// Fecha a janela
 			Utils.currentStage(event).close();
@@ -128,24 +143,36 @@ public class SellerFormController implements Initializable {
 		// Exceo lanada pelo mtodo getFormData
 		// Exceo para validar os campos do formulrio de departamento
 		catch (ValidationException e) {
+			validated = System.nanoTime();
+			save.outcome = "invalid";
 			// Apresenta as mensagens de erro
 			setErrorMessages(e.getErrors());
 		} catch (DbException e) {
+			if (save.deferred) {
+				save.journalTime = System.nanoTime() - validated;
+			}
+			else {
+				save.dbTime = System.nanoTime() - validated;
+			}
+			save.outcome = "error";
 			Alerts.showAlert("Error saving object", null, e.getMessage(), AlertType.ERROR);
 		}
-	}
-
-	// Atualiza todos os objetos precisam ser atualizados devido a atualizao da
-	// tabela Seller
-	private void notifyDataChangeListener() {
-		for (DataChangeListener listener : dataChangeListeners) {
-			listener.onDataChanged();
+		finally {
+			Metrics.timer("ui_form_save_seconds", "Form save time, validation included", "entity", "Seller", "outcome",
+					save.outcome).recordSince(start);
+			save.end();
+			if (save.shouldCommit()) {
+				save.entity = "Seller";
+				save.validationTime = validated - start;
+				save.commit();
+			}
 		}
 	}
 
 	// Retorna um Seller populado com os campos do formulrio
 	private Seller getFormData() {
-		Seller obj = new Seller();
+		// Copia a entidade, mantendo os valores lidos do banco para gravar somente o que mudou
+		Seller obj = entity.copy();
 
 		ValidationException exception = new ValidationException("Validation Error");
 
@@ -163,6 +190,13 @@ public class SellerFormController implements Initializable {
 			// Adiciona mensagem de error na exceo
 			exception.addError("email", "Field can't be empty");
 		}
+		else if (!Constraints.isEmail(txtEmail.getText())) {
+			exception.addError("email", "Invalid email");
+		}
+		else if (emailCheck.getError() != null) {
+			// Resultado da verificao feita no banco durante a digitao
+			exception.addError("email", emailCheck.getError());
+		}
 		obj.setEmail(txtEmail.getText());
 
 		// Valida campo do formulrio data de nascimento do vendedor
@@ -212,6 +246,20 @@ public class SellerFormController implements Initializable {
 		Constraints.setTextFieldMaxLength(txtEmail, 60);
 		Utils.formatDatePicker(dpBirthDate, "dd/MM/yyyy");
 		initializeComboBoxDepartment();
+		emailCheck = new AsyncValidator(txtEmail, labelErrorEmail, this::checkEmail);
+	}
+
+	// Chamado pelo AsyncValidator na thread do JavaFX: o vendedor  lido aqui e s a consulta roda em segundo plano
+	private Supplier<String> checkEmail(String email) {
+		if (!Constraints.isEmail(email)) {
+			return () -> "Invalid email";
+		}
+		Integer id = entity.getId();
+		// O email que o vendedor j tinha no precisa ir ao banco
+		if (id != null && email.equalsIgnoreCase(entity.getEmail())) {
+			return () -> null;
+		}
+		return () -> service.isEmailTaken(email, id) ? "Email already in use" : null;
 	}
 
 	// Popula os campos do formulrio com os dados do vendedor selecionado ou novo
@@ -238,13 +286,34 @@ public class SellerFormController implements Initializable {
 		}
 	}
 
+	// Carrega os departamentos fora da thread do JavaFX; a carga  cancelada se o dilogo for fechado antes
 	public void loadAssociatedObjects() {
 		if (departmentService == null) {
 			throw new IllegalStateException("DepartmentService was null");
 		}
-		List<Department> list = departmentService.findAll();
-		obsList = FXCollections.observableArrayList(list);
-		comboBoxDepartment.setItems(obsList);
+		loading = Tasks.await(departmentService.findAllAsync(), list -> {
+			loading = null;
+			Department selected = comboBoxDepartment.getValue();
+			obsList = FXCollections.observableArrayList(list);
+			comboBoxDepartment.setItems(obsList);
+			if (selected == null) {
+				comboBoxDepartment.getSelectionModel().selectFirst();
+			}
+			else {
+				comboBoxDepartment.setValue(selected);
+			}
+		}, e -> {
+			loading = null;
+			Alerts.showAlert("Error loading departments", null, e.getMessage(), AlertType.ERROR);
+		});
+	}
+
+	public void cancelLoading() {
+		if (loading != null) {
+			loading.cancel();
+			loading = null;
+		}
+		emailCheck.cancel();
 	}
 
 	private void setErrorMessages(Map<String, String> errors) {
@@ -2,15 +2,23 @@ package gui;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import application.Main;
-import db.DbIntegrityException;
-import gui.listeners.DataChangeListener;
 import gui.util.Alerts;
+import gui.util.CachedView;
+import gui.util.DataView;
+import gui.util.Tasks;
 import gui.util.Utils;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
@@ -23,6 +31,10 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
@@ -30,42 +42,79 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.Pane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Callback;
+import model.entities.Department;
+import model.dto.SellerRow;
 import model.entities.Seller;
+import model.events.DataChangeEvent;
+import model.events.DataChangeEvent.Kind;
+import model.events.DataChangeListener;
+import model.events.EventBus;
 import model.services.DepartmentService;
+import model.services.QueryHandle;
 import model.services.SellerService;
 
-public class SellerListController implements Initializable, DataChangeListener {
+public class SellerListController implements Initializable, DataChangeListener, CachedView, DataView {
+
+	// Estimativas usadas pelo ViewCache: ns da tela e cada linha carregada (objeto, strings e data)
+	private static final long VIEW_BYTES = 256 * 1024;
+	private static final long ROW_BYTES = 300;
+
+	private static final int MAX_PATCH_ROWS = 500;
+
+	// Listas fora da tela acumulam no mximo isto de ids alterados; acima disso so recarregadas ao voltar
+	private static final int MAX_PENDING_IDS = MAX_PATCH_ROWS;
+
+	private static final Comparator<SellerRow> BY_NAME = SellerService.rowOrder();
 
 	private SellerService service;
 	
 	@FXML
-	private TableView<Seller> tableViewSeller;
+	private TableView<SellerRow> tableViewSeller;
 
 	@FXML
-	private TableColumn<Seller, Integer> tableColumnId;
+	private TableColumn<SellerRow, Integer> tableColumnId;
 
 	@FXML
-	private TableColumn<Seller, String> tableColumnName;
+	private TableColumn<SellerRow, String> tableColumnName;
 	
 	@FXML
-	private TableColumn<Seller, String> tableColumnEmail;
+	private TableColumn<SellerRow, String> tableColumnEmail;
 
 	@FXML
-	private TableColumn<Seller, Date> tableColumnBirthDate;
+	private TableColumn<SellerRow, Date> tableColumnBirthDate;
 
 	@FXML
-	private TableColumn<Seller, Double> tableColumnBaseSalary;
+	private TableColumn<SellerRow, Double> tableColumnBaseSalary;
 	
 	@FXML
-	private TableColumn<Seller, Seller> tableColumnEDIT;
+	private TableColumn<SellerRow, SellerRow> tableColumnEDIT;
 
 	@FXML
-	private TableColumn<Seller, Seller> tableColumnREMOVE;
+	private TableColumn<SellerRow, SellerRow> tableColumnREMOVE;
 
 	@FXML
 	private Button btNew;
 
-	private ObservableList<Seller> obsList;
+	@FXML
+	private Button btRemoveSelected;
+
+	@FXML
+	private ComboBox<Department> comboBoxDepartment;
+
+	@FXML
+	private Button btMoveSelected;
+
+	private ObservableList<SellerRow> obsList;
+
+	// Alteraes recebidas enquanto a tela estava fora da janela
+	private List<DataChangeEvent> pendingEvents = new ArrayList<>();
+
+	// Leitura da lista em andamento e se ela foi interrompida antes de terminar
+	private QueryHandle<List<SellerRow>> loading;
+	private boolean stale = false;
+
+	private Consumer<String> onDataShown;
 
 	@FXML
 	public void onBtNewAction(ActionEvent event) {
@@ -74,6 +123,86 @@ public class SellerListController implements Initializable, DataChangeListener {
 		createDialogForm(obj, "/gui/SellerForm.fxml", parentStage);
 	}
 
+	@FXML
+	public void onBtRemoveSelectedAction() {
+		List<SellerRow> selected = new ArrayList<>(tableViewSeller.getSelectionModel().getSelectedItems());
+		if (selected.isEmpty()) {
+			return;
+		}
+		Optional<ButtonType> result = Alerts.showConfirmation("Confirmation",
+				"Are you sure to delete " + selected.size() + " seller(s)?");
+
+		if (result.get() == ButtonType.OK) {
+			if (service == null) {
+				throw new IllegalStateException("Service was null");
+			}
+			setBulkActionsDisabled(true);
+			// Um nico DELETE ... WHERE Id IN (...) fora da thread do JavaFX
+			Tasks.run(() -> {
+				service.removeAll(selected);
+				return null;
+			}, x -> {
+				// Atualiza a tabela uma nica vez, sem recarregar do banco
+				obsList.removeAll(selected);
+				setBulkActionsDisabled(false);
+			}, e -> {
+				setBulkActionsDisabled(false);
+				Alerts.showAlert("Error removing objects", null, e.getMessage(), AlertType.ERROR);
+			});
+		}
+	}
+
+	@FXML
+	public void onBtMoveSelectedAction() {
+		List<SellerRow> selected = new ArrayList<>(tableViewSeller.getSelectionModel().getSelectedItems());
+		Department department = comboBoxDepartment.getValue();
+		if (selected.isEmpty() || department == null) {
+			return;
+		}
+		if (service == null) {
+			throw new IllegalStateException("Service was null");
+		}
+		setBulkActionsDisabled(true);
+		// Um nico UPDATE ... SET DepartmentId = ? fora da thread do JavaFX
+		Tasks.run(() -> {
+			service.moveToDepartment(selected, department);
+			return null;
+		}, x -> {
+			// A lista pode ter mudado durante a gravao (recarga ou excluso): procura cada linha pelo id
+			boolean missing = false;
+			for (SellerRow obj : selected) {
+				int index = indexOfId(obj.getId());
+				if (index < 0) {
+					missing = true;
+				}
+				else {
+					obsList.set(index, obsList.get(index).withDepartment(department));
+				}
+			}
+			if (missing) {
+				updateTableView();
+			}
+			setBulkActionsDisabled(false);
+		}, e -> {
+			setBulkActionsDisabled(false);
+			Alerts.showAlert("Error moving objects", null, e.getMessage(), AlertType.ERROR);
+		});
+	}
+
+	private int indexOfId(Integer id) {
+		for (int i = 0; i < obsList.size(); i++) {
+			if (obsList.get(i).getId().equals(id)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void setBulkActionsDisabled(boolean disabled) {
+		btRemoveSelected.setDisable(disabled);
+		btMoveSelected.setDisable(disabled);
+	}
+
 	public void setSellerService(SellerService service) {
 		this.service = service;
 	}
@@ -93,16 +222,93 @@ public class SellerListController implements Initializable, DataChangeListener {
 		tableColumnBaseSalary.setCellValueFactory(new PropertyValueFactory<>("baseSalary"));
 		Utils.formatTableColumnDouble(tableColumnBaseSalary, 2);
 
+		// Permite selecionar vrios vendedores para as aes em lote
+		tableViewSeller.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+		initializeComboBoxDepartment();
+
 		// Faz a table view acompanhar a altura da janela
 		Stage stage = (Stage) Main.getMainScene().getWindow();
 		tableViewSeller.prefHeightProperty().bind(stage.heightProperty());
+
+		// Recebe as alteraes de vendedores enquanto a tela existir (inclusive guardada no ViewCache)
+		EventBus.subscribe(Seller.class, this, true);
+		// e as de departamentos, para o combo da mudana em lote
+		EventBus.subscribe(Department.class, this, true);
+
+		// Ao trocar de tela, cancela no banco a leitura que ainda estiver em andamento
+		tableViewSeller.sceneProperty().addListener((obs, oldScene, newScene) -> {
+			if (newScene == null) {
+				cancelLoading();
+			}
+		});
 	}
 
 	public void updateTableView() {
 		if (service == null) {
 			throw new IllegalStateException("Service was null");
 		}
-		List<Seller> list = service.findAll();
+		load(service.findAllRowsAsync(),
+				e -> Alerts.showAlert("Error loading sellers", null, e.getMessage(), AlertType.ERROR));
+	}
+
+	// Mostra imediatamente a cpia local e revalida com o banco em segundo plano
+	public void updateTableViewFromCache() {
+		if (service == null) {
+			throw new IllegalStateException("Service was null");
+		}
+		List<SellerRow> cached = service.findCached();
+		if (cached == null) {
+			updateTableView();
+			return;
+		}
+		showList(cached);
+		// Banco fora do ar no chega aqui: a revalidao mantm a cpia local e o menu mostra o estado offline
+		load(service.revalidateAsync(),
+				e -> Alerts.showAlert("Error loading sellers", null, e.getMessage(), AlertType.ERROR));
+	}
+
+	// S uma leitura da lista por vez: a anterior  cancelada no banco
+	private void load(QueryHandle<List<SellerRow>> handle, Consumer<Throwable> onFailure) {
+		if (loading != null) {
+			loading.cancel();
+		}
+		stale = false;
+		loading = Tasks.await(handle, list -> {
+			loading = null;
+			if (list != null) {
+				showList(list);
+			}
+		}, e -> {
+			loading = null;
+			dataShown("error");
+			onFailure.accept(e);
+		});
+	}
+
+	// Interrompe a leitura em andamento; a lista  recarregada quando a tela voltar a ser exibida
+	private void cancelLoading() {
+		if (loading != null) {
+			loading.cancel();
+			loading = null;
+			stale = true;
+			dataShown("cancelled");
+		}
+	}
+
+	@Override
+	public void setOnDataShown(Consumer<String> action) {
+		onDataShown = action;
+	}
+
+	private void dataShown(String outcome) {
+		if (onDataShown != null) {
+			Consumer<String> action = onDataShown;
+			onDataShown = null;
+			action.accept(outcome);
+		}
+	}
+
+	private void showList(List<SellerRow> list) {
 		obsList = FXCollections.observableArrayList(list);
 		tableViewSeller.setItems(obsList);
 		
@@ -110,6 +316,8 @@ public class SellerListController implements Initializable, DataChangeListener {
 		initEditButtons();
 		// Cria boto para remover um vendedor
 		initRemoveButtons();
+		
+		dataShown("shown");
 	}
 
 	private void createDialogForm(Seller obj, String absoluteName, Stage parentStage) {
@@ -124,11 +332,6 @@ public class SellerListController implements Initializable, DataChangeListener {
 			// popula o combo de departamento com os departamentos do banco
 			controller.loadAssociatedObjects();
 
-			// Adiciona este objeto (this) na lista de DataChangeListener para que ele possa
-			// ser atualizado
-			// quando a tabela Seller tambm for
-			controller.subscribeDataChangeListener(this);
-
 			controller.updateFormData();
 
 			Stage dialogStage = new Stage();
@@ -137,6 +340,8 @@ public class SellerListController implements Initializable, DataChangeListener {
 			dialogStage.setResizable(false);
 			dialogStage.initOwner(parentStage);
 			dialogStage.initModality(Modality.WINDOW_MODAL);
+			// Fechar o dilogo cancela a carga dos dados que ainda estiver em andamento
+			dialogStage.setOnHidden(event -> controller.cancelLoading());
 			dialogStage.showAndWait();
 
 		} catch (IOException e) {
@@ -145,30 +350,174 @@ public class SellerListController implements Initializable, DataChangeListener {
 		}
 	}
 
-	// Mtodo chamado pela classe que atualiza a tabela Seller para que est
-	// classe tambm sofra atualizao
+	// Chamado pelo EventBus com todas as alteraes de vendedores feitas desde a ltima notificao
+	@Override
+	public void onDataChanged(List<DataChangeEvent> events) {
+		if (!events.isEmpty() && events.get(0).getTopic() == Department.class) {
+			// Combo ainda no aberto: os departamentos sero lidos quando for
+			if (!comboBoxDepartment.getItems().isEmpty()) {
+				loadDepartments();
+			}
+			return;
+		}
+		if (obsList == null) {
+			return;
+		}
+		// Fora da janela (guardada no ViewCache): acumula para aplicar quando voltar a ser exibida
+		if (tableViewSeller.getScene() == null) {
+			if (!stale) {
+				pendingEvents.addAll(events);
+			}
+			if (DataChangeEvent.idsOf(pendingEvents, Kind.values()).size() > MAX_PENDING_IDS) {
+				pendingEvents.clear();
+				stale = true;
+			}
+			return;
+		}
+		applyChanges(events);
+	}
+
 	@Override
-	public void onDataChanged() {
-		// Atualiza a Table View do vendedor
-		updateTableView();
+	public void onReattached() {
+		// A leitura foi cancelada ao sair da tela: recarrega tudo, o que j inclui as alteraes pendentes
+		if (stale) {
+			pendingEvents.clear();
+			updateTableView();
+			return;
+		}
+		if (!pendingEvents.isEmpty()) {
+			List<DataChangeEvent> events = new ArrayList<>(pendingEvents);
+			pendingEvents.clear();
+			applyChanges(events);
+		}
+	}
+
+	@Override
+	public void onEvicted() {
+		EventBus.unsubscribe(Seller.class, this);
+		EventBus.unsubscribe(Department.class, this);
+		pendingEvents.clear();
+	}
+
+	@Override
+	public long estimateMemory() {
+		return VIEW_BYTES + (obsList == null ? 0 : (long) obsList.size() * ROW_BYTES);
+	}
+
+	// Aplica somente as linhas alteradas; muitas alteraes de uma vez recarregam a lista inteira
+	private void applyChanges(List<DataChangeEvent> events) {
+		// Excluses so aplicadas direto na tabela, sem ir ao banco
+		Set<Integer> deleted = DataChangeEvent.idsOf(events, Kind.DELETED);
+		obsList.removeIf(row -> deleted.contains(row.getId()));
+
+		Set<Integer> changed = DataChangeEvent.idsOf(events, Kind.INSERTED, Kind.UPDATED);
+		changed.removeAll(deleted);
+
+		// Linhas que j vieram no evento (ex.: mudana de departamento) so aplicadas sem ir ao banco;
+		// vale o ltimo evento de cada id
+		Map<Integer, SellerRow> known = new HashMap<>();
+		for (DataChangeEvent event : events) {
+			for (Integer id : event.getIds()) {
+				Object current = event.getCurrent(id);
+				if (current instanceof SellerRow) {
+					known.put(id, (SellerRow) current);
+				}
+				else {
+					known.remove(id);
+				}
+			}
+		}
+		known.keySet().retainAll(changed);
+		if (!known.isEmpty()) {
+			patchRows(known.keySet(), new ArrayList<>(known.values()));
+			changed.removeAll(known.keySet());
+		}
+
+		if (changed.isEmpty()) {
+			return;
+		}
+		if (changed.size() > MAX_PATCH_ROWS) {
+			updateTableView();
+			return;
+		}
+		Tasks.run(() -> service.findRowsByIds(changed), rows -> patchRows(changed, rows),
+				e -> Alerts.showAlert("Error loading sellers", null, e.getMessage(), AlertType.ERROR));
+	}
+
+	private void patchRows(Set<Integer> ids, List<SellerRow> rows) {
+		Map<Integer, SellerRow> found = new HashMap<>();
+		rows.forEach(row -> found.put(row.getId(), row));
+
+		/* Alterados: substitudos no lugar enquanto o nome no muda; renomeados saem e voltam na posio
+		   da nova ordem. Os que no existem mais no banco saem da lista */
+		for (int i = obsList.size() - 1; i >= 0; i--) {
+			SellerRow row = obsList.get(i);
+			if (ids.contains(row.getId())) {
+				SellerRow updated = found.get(row.getId());
+				if (updated == null) {
+					obsList.remove(i);
+				}
+				else if (updated.getName().equals(row.getName())) {
+					obsList.set(i, updated);
+					found.remove(row.getId());
+				}
+				else {
+					obsList.remove(i);
+				}
+			}
+		}
+		// Novos e renomeados: entram na posio da ordem por nome (a mesma do ORDER BY do banco)
+		for (SellerRow row : found.values()) {
+			int index = Collections.binarySearch(obsList, row, BY_NAME);
+			obsList.add(index < 0 ? -index - 1 : index, row);
+		}
+	}
+
+	// Popula o combo de departamentos somente quando ele for aberto
+	private void initializeComboBoxDepartment() {
+		Callback<ListView<Department>, ListCell<Department>> factory = lv -> new ListCell<Department>() {
+			@Override
+			protected void updateItem(Department item, boolean empty) {
+				super.updateItem(item, empty);
+				setText(empty ? "" : item.getName());
+			}
+		};
+		comboBoxDepartment.setCellFactory(factory);
+		comboBoxDepartment.setButtonCell(factory.call(null));
+		comboBoxDepartment.setOnShowing(event -> {
+			if (comboBoxDepartment.getItems().isEmpty()) {
+				loadDepartments();
+			}
+		});
+	}
+
+	// L os departamentos fora da thread do JavaFX; o selecionado continua escolhido se ainda existir
+	private void loadDepartments() {
+		Tasks.run(() -> new DepartmentService().findAll(), list -> {
+			Department selected = comboBoxDepartment.getValue();
+			comboBoxDepartment.setItems(FXCollections.observableArrayList(list));
+			int index = selected == null ? -1 : list.indexOf(selected);
+			if (index >= 0) {
+				comboBoxDepartment.setValue(list.get(index));
+			}
+		}, e -> Alerts.showAlert("Error loading departments", null, e.getMessage(), AlertType.ERROR));
 	}
 
 	// Cria boto para editar um vendedor
 	private void initEditButtons() {
 		tableColumnEDIT.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnEDIT.setCellFactory(param -> new TableCell<Seller, Seller>() {
+		tableColumnEDIT.setCellFactory(param -> new TableCell<SellerRow, SellerRow>() {
 			private final Button button = new Button("edit");
 
 			@Override
-			protected void updateItem(Seller obj, boolean empty) {
+			protected void updateItem(SellerRow obj, boolean empty) {
 				super.updateItem(obj, empty);
 				if (obj == null) {
 					setGraphic(null);
 					return;
 				}
 				setGraphic(button);
-				button.setOnAction(
-						event -> createDialogForm(obj, "/gui/SellerForm.fxml", Utils.currentStage(event)));
+				button.setOnAction(event -> editEntity(obj, Utils.currentStage(event)));
 			}
 		});
 	}
@@ -176,11 +525,11 @@ public class SellerListController implements Initializable, DataChangeListener {
 	// Cria boto para remover um departamento
 	private void initRemoveButtons() {
 		tableColumnREMOVE.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue()));
-		tableColumnREMOVE.setCellFactory(param -> new TableCell<Seller, Seller>() {
+		tableColumnREMOVE.setCellFactory(param -> new TableCell<SellerRow, SellerRow>() {
 			private final Button button = new Button("remove");
 
 			@Override
-			protected void updateItem(Seller obj, boolean empty) {
+			protected void updateItem(SellerRow obj, boolean empty) {
 				super.updateItem(obj, empty);
 				if (obj == null) {
 					setGraphic(null);
@@ -193,20 +542,35 @@ public class SellerListController implements Initializable, DataChangeListener {
 	}
 
 	
-	private void removeEntity(Seller obj) {
+	/* Carrega o vendedor completo fora da thread do JavaFX e abre o formulrio de edio.
+	   Passa pelo BatchLoader: as buscas feitas no mesmo pulso do JavaFX viram um nico findByIds */
+	private void editEntity(SellerRow row, Stage parentStage) {
+		if (service == null) {
+			throw new IllegalStateException("Service was null");
+		}
+		Tasks.await(service.loadById(row.getId()), obj -> {
+			if (obj == null) {
+				Alerts.showAlert("Seller not found", null, "The seller was removed by another user", AlertType.WARNING);
+				updateTableView();
+				return;
+			}
+			createDialogForm(obj, "/gui/SellerForm.fxml", parentStage);
+		}, e -> Alerts.showAlert("Error loading seller", null, e.getMessage(), AlertType.ERROR));
+	}
+
+	private void removeEntity(SellerRow obj) {
 		Optional<ButtonType> result = Alerts.showConfirmation("Confirmation", "Are you sure to delete?");
 		
 		if (result.get() == ButtonType.OK) {
 			if (service == null) {
 				throw new IllegalStateException("Service was null");
 			}
-			try {
-				service.remove(obj);
-				updateTableView();
-			}
-			catch (DbIntegrityException e) {
-				Alerts.showAlert("Error removing object", null, e.getMessage(), AlertType.ERROR);
-			}
+			// Fora da thread do JavaFX, como as aes em lote; a tabela  atualizada pelo evento de excluso
+			Tasks.run(() -> {
+				service.removeAll(Collections.singletonList(obj));
+				return null;
+			}, x -> {
+			}, e -> Alerts.showAlert("Error removing object", null, e.getMessage(), AlertType.ERROR));
 		}
 	}
 
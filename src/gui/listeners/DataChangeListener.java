@@ -1,12 +0,0 @@
-package gui.listeners;
-
-/*
-Interface usada para simular um evento de atualizao da tabela Department.
-Dever ser implementada por qualquer classe que precisar ser atualizada quando ocorrer alguma atualizao na referiada tabela.
-No momento da atualizao ser chamado o mtodo onDataChanged que dever estar implementado na classe que precisa ser atualizada
-*/
-public interface DataChangeListener {
-	
-	void onDataChanged();
-
-}
@@ -0,0 +1,124 @@
+package gui.util;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import db.DB;
+import javafx.animation.Animation;
+import javafx.animation.PauseTransition;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.util.Duration;
+import model.services.QueryHandle;
+
+/*
+Validao de um campo contra o banco enquanto o usurio digita (ex.: email j cadastrado).
+- a consulta s  feita depois de validation.debounceMillis sem digitao
+- roda fora da thread do JavaFX; a consulta anterior que ainda estiver em andamento  cancelada
+- resultados que chegam depois de o texto ter mudado so descartados
+- ao salvar, flush faz a verificao pendente na hora e s ento continua a gravao
+A funo  chamada na thread do JavaFX com o texto ( onde o controlador l o estado do formulrio) e
+retorna a consulta que roda em segundo plano: a mensagem de erro, ou null se o valor for aceito.
+*/
+public class AsyncValidator {
+
+	private final TextField field;
+	private final Label errorLabel;
+	private final Function<String, Supplier<String>> check;
+	private final PauseTransition pause;
+
+	// Incrementado a cada alterao do texto; identifica os resultados que ficaram velhos
+	private long generation = 0;
+	private String error = null;
+	private QueryHandle<String> running = null;
+	// Gravao esperando o resultado da verificao (flush)
+	private Runnable afterCheck = null;
+
+	public AsyncValidator(TextField field, Label errorLabel, Function<String, Supplier<String>> check) {
+		this.field = field;
+		this.errorLabel = errorLabel;
+		this.check = check;
+		pause = new PauseTransition(Duration.millis(
+				Long.parseLong(DB.getProperties().getProperty("validation.debounceMillis", "400"))));
+		pause.setOnFinished(event -> start());
+		field.textProperty().addListener((obs, oldValue, newValue) -> {
+			generation++;
+			afterCheck = null;
+			cancelRunning();
+			if (error != null) {
+				error = null;
+				errorLabel.setText("");
+			}
+			pause.playFromStart();
+		});
+	}
+
+	// Erro da ltima verificao concluda para o texto atual; null se aceito ou ainda no verificado
+	public String getError() {
+		return error;
+	}
+
+	// Ainda esperando o fim da digitao ou o resultado do banco
+	public boolean isPending() {
+		return pause.getStatus() == Animation.Status.RUNNING || running != null;
+	}
+
+	// Verifica agora o texto atual, sem esperar o fim da digitao, e executa a ao quando o resultado
+	// chegar (tambm se o banco falhar); se nada estiver pendente, executa na hora
+	public void flush(Runnable action) {
+		afterCheck = action;
+		if (pause.getStatus() == Animation.Status.RUNNING) {
+			pause.stop();
+			start();
+		}
+		if (running == null) {
+			runAfterCheck();
+		}
+	}
+
+	public void cancel() {
+		pause.stop();
+		afterCheck = null;
+		cancelRunning();
+	}
+
+	private void start() {
+		String text = field.getText();
+		if (text == null || text.trim().isEmpty()) {
+			return;
+		}
+		long requested = generation;
+		QueryHandle<String> handle = QueryHandle.start(check.apply(text.trim()));
+		running = handle;
+		Tasks.await(handle, message -> {
+			if (requested != generation) {
+				return;
+			}
+			running = null;
+			error = message;
+			errorLabel.setText(message == null ? "" : message);
+			runAfterCheck();
+		}, e -> {
+			// Banco indisponvel: fica sem aviso e a gravao decide
+			if (requested == generation) {
+				running = null;
+				runAfterCheck();
+			}
+		});
+	}
+
+	private void runAfterCheck() {
+		if (afterCheck != null) {
+			Runnable action = afterCheck;
+			afterCheck = null;
+			action.run();
+		}
+	}
+
+	private void cancelRunning() {
+		if (running != null) {
+			running.cancel();
+			running = null;
+		}
+	}
+}
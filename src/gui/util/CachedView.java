@@ -0,0 +1,14 @@
+package gui.util;
+
+// Controlador de uma tela que pode ser mantida no ViewCache entre as trocas de menu
+public interface CachedView {
+
+	// Memria aproximada ocupada pela tela e pelos dados carregados
+	long estimateMemory();
+
+	// A tela voltou a ser exibida: aplica as alteraes recebidas enquanto estava fora
+	void onReattached();
+
+	// A tela saiu do cache e no ser mais exibida
+	void onEvicted();
+}
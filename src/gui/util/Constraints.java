@@ -1,12 +1,23 @@
 package gui.util;
 
+import java.util.regex.Pattern;
+
 import javafx.scene.control.TextField;
 
 public class Constraints {
 
+	// Compilados uma vez; String.matches recompilaria a expresso a cada tecla
+	private static final Pattern INTEGER = Pattern.compile("\\d*");
+	private static final Pattern DOUBLE = Pattern.compile("\\d*([\\.]\\d*)?");
+	private static final Pattern EMAIL = Pattern.compile("[^@\\s]+@[^@\\s]+\\.[^@\\s]+");
+
+	public static boolean isEmail(String value) {
+		return value != null && EMAIL.matcher(value.trim()).matches();
+	}
+
 	public static void setTextFieldInteger(TextField txt) {
 		txt.textProperty().addListener((obs, oldValue, newValue) -> {
-	        if (newValue != null && !newValue.matches("\\d*")) {
+	        if (newValue != null && !INTEGER.matcher(newValue).matches()) {
 	        	txt.setText(oldValue);
 	        }
 	    });
@@ -22,7 +33,7 @@ public class Constraints {
 
 	public static void setTextFieldDouble(TextField txt) {
 		txt.textProperty().addListener((obs, oldValue, newValue) -> {
-		    	if (newValue != null && !newValue.matches("\\d*([\\.]\\d*)?")) {
+		    	if (newValue != null && !DOUBLE.matcher(newValue).matches()) {
                     txt.setText(oldValue);
                 }
 		    });
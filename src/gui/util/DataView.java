@@ -0,0 +1,11 @@
+package gui.util;
+
+import java.util.function.Consumer;
+
+// Controlador de uma tela cujos dados chegam depois de aberta (carga em segundo plano)
+public interface DataView {
+
+	// Executa a ao uma nica vez, quando a prxima carga terminar: "shown" com a lista exibida na
+	// tabela, "error" se a leitura falhou ou "cancelled" se a tela foi fechada antes
+	void setOnDataShown(Consumer<String> action);
+}
@@ -0,0 +1,65 @@
+package gui.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import db.DbCancelledException;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import model.services.QueryHandle;
+
+public class Tasks {
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "fx-background");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// Executa o trabalho fora da thread do JavaFX e devolve o resultado (ou o erro) na thread do JavaFX
+	public static <T> Task<T> run(Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+		Task<T> task = new Task<T>() {
+			@Override
+			protected T call() throws Exception {
+				return work.call();
+			}
+		};
+		task.setOnSucceeded(event -> onSuccess.accept(task.getValue()));
+		task.setOnFailed(event -> onFailure.accept(task.getException()));
+		executor.execute(task);
+		return task;
+	}
+
+	// Entrega na thread do JavaFX o resultado de uma leitura assncrona (ex.: SellerService.loadById)
+	public static <T> void await(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+		future.whenComplete((result, error) -> Platform.runLater(() -> {
+			if (error == null) {
+				onSuccess.accept(result);
+				return;
+			}
+			onFailure.accept(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+		}));
+	}
+
+	// Entrega na thread do JavaFX o resultado de uma leitura cancelvel; o cancelamento no  tratado como erro
+	public static <T> QueryHandle<T> await(QueryHandle<T> handle, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+		handle.getFuture().whenComplete((result, error) -> Platform.runLater(() -> {
+			if (handle.isCancelled()) {
+				return;
+			}
+			if (error == null) {
+				onSuccess.accept(result);
+				return;
+			}
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+			if (!(cause instanceof DbCancelledException)) {
+				onFailure.accept(cause);
+			}
+		}));
+		return handle;
+	}
+}
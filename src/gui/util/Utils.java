@@ -61,7 +61,7 @@ public class Utils {
 				@Override
 				protected void updateItem(Double item, boolean empty) {
 					super.updateItem(item, empty);
-					if (empty) {
+					if (empty || item == null) {
 						setText(null);
 					} else {
 						Locale.setDefault(Locale.US);
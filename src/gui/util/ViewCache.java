@@ -0,0 +1,84 @@
+package gui.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import diagnostics.Metrics;
+import javafx.scene.Node;
+
+/*
+Mantm as telas j abertas (ns e controlador, com os dados carregados) para que a troca de menu
+s recoloque os ns na janela. Poltica LRU limitada por quantidade (view.cacheMaxViews) e pela
+memria estimada pelos controladores (view.cacheBudgetMB).
+*/
+public class ViewCache {
+
+	private final int maxViews;
+	private final long budgetBytes;
+
+	// accessOrder = true: a iterao comea pela tela usada h mais tempo
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	public ViewCache(Properties props) {
+		this.maxViews = Integer.parseInt(props.getProperty("view.cacheMaxViews", "4"));
+		this.budgetBytes = Long.parseLong(props.getProperty("view.cacheBudgetMB", "64")) * 1024 * 1024;
+	}
+
+	public Entry get(String key) {
+		Entry entry = entries.get(key);
+		Metrics.cacheRequest("views", entry != null);
+		return entry;
+	}
+
+	public boolean contains(String key) {
+		return entries.containsKey(key);
+	}
+
+	public void put(String key, List<Node> nodes, CachedView controller) {
+		entries.put(key, new Entry(new ArrayList<>(nodes), controller));
+		trim(key);
+	}
+
+	// Descarta as telas menos usadas at caber no limite, preservando a tela atual
+	public void trim(String current) {
+		long total = 0;
+		for (Entry entry : entries.values()) {
+			total += entry.controller.estimateMemory();
+		}
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext() && (entries.size() > maxViews || total > budgetBytes)) {
+			Map.Entry<String, Entry> eldest = it.next();
+			if (eldest.getKey().equals(current)) {
+				continue;
+			}
+			total -= eldest.getValue().controller.estimateMemory();
+			it.remove();
+			eldest.getValue().controller.onEvicted();
+			Metrics.counter("cache_evictions_total", "Entries dropped to stay within the cache limits", "cache", "views")
+					.increment();
+		}
+	}
+
+	public static class Entry {
+
+		private final List<Node> nodes;
+		private final CachedView controller;
+
+		private Entry(List<Node> nodes, CachedView controller) {
+			this.nodes = nodes;
+			this.controller = controller;
+		}
+
+		public List<Node> getNodes() {
+			return nodes;
+		}
+
+		public CachedView getController() {
+			return controller;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package model.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import db.DB;
+import db.DbCancelledException;
+import db.DbException;
+import db.Resilience;
+import diagnostics.Metrics;
+import model.dao.SellerDao;
+import model.dto.DepartmentStats;
+import model.dto.SellerRow;
+import model.entities.Department;
+import model.entities.Seller;
+import model.entities.TableStamp;
+import model.events.DataChangeEvent;
+import model.events.DataChangeEvent.Kind;
+import model.events.DataChangeListener;
+import model.events.EventBus;
+
+/*
+Quantidade de vendedores e soma dos salrios por departamento, exibidas na lista de departamentos.
+Carregado por uma nica consulta agregada e depois mantido pelos eventos de vendedores: cada alterao
+subtrai os valores anteriores da linha e soma os atuais, sem agregar a tabela de novo.
+- s os eventos que mudaram o banco trazem os valores anteriores (DataChangeEvent.getPrevious), lidos do
+  banco por quem gravou; sem eles (ex.: gravao ainda na fila do write-behind) o evento  ignorado
+- ids negativos so incluses ainda no enviadas ao banco e no entram nos totais
+- cada evento recebe um nmero de ordem: os que chegaram antes da carga j esto na consulta agregada e
+  so ignorados; se algum chegar durante a carga, no se sabe se ela o viu, e a consulta  refeita
+- a cada stats.revalidateMillis o resumo da tabela (TableStamp, como na ReferenceDataCache)  comparado
+  com o da carga: outra instncia do programa, ou uma gravao feita sem evento, tambm alteram o banco, e
+  os totais so agregados de novo (inclusive depois das alteraes desta instncia, que mudam o resumo)
+- se os valores atuais no puderem ser lidos o cache  descartado e a prxima leitura agrega de novo
+Depois de cada atualizao publica no tpico DepartmentStats os ids dos departamentos alterados.
+*/
+public class DepartmentStatsCache implements DataChangeListener {
+
+	// Cargas seguidas com eventos no meio; depois disso guarda a ltima e conta com a revalidao
+	private static final int MAX_LOADS = 3;
+
+	private final SellerDao dao;
+	private final long revalidateNanos;
+
+	// Nmero de ordem do ltimo evento recebido
+	private final AtomicLong received = new AtomicLong();
+
+	// null: ainda no carregado ou descartado
+	private Map<Integer, DepartmentStats> stats = null;
+	// Resumo da tabela lido antes da carga, ltimo evento includo nela e hora da ltima conferncia
+	private TableStamp stamp = null;
+	private long loadedUpTo;
+	private long checkedAt;
+
+	public DepartmentStatsCache(SellerDao dao) {
+		this.dao = dao;
+		this.revalidateNanos = TimeUnit.MILLISECONDS
+				.toNanos(Long.parseLong(DB.getProperties().getProperty("stats.revalidateMillis", "30000")));
+		EventBus.subscribe(Seller.class, this, false);
+	}
+
+	public synchronized Map<Integer, DepartmentStats> get() {
+		if (stats != null && System.nanoTime() - checkedAt >= revalidateNanos) {
+			try {
+				TableStamp current = Resilience.read(dao::findStamp);
+				boolean unchanged = current.equals(stamp);
+				Metrics.cacheRevalidation("department_stats", unchanged);
+				if (unchanged) {
+					checkedAt = System.nanoTime();
+				}
+				else {
+					stats = null;
+				}
+			}
+			catch (DbCancelledException e) {
+				throw e;
+			}
+			catch (DbException e) {
+				// Sem banco, mostra os ltimos totais; confere de novo na prxima leitura
+				return Map.copyOf(stats);
+			}
+		}
+		Metrics.cacheRequest("department_stats", stats != null);
+		if (stats == null) {
+			load();
+		}
+		return Map.copyOf(stats);
+	}
+
+	public synchronized void invalidate() {
+		stats = null;
+	}
+
+	// stamp lido antes da consulta: uma alterao no meio aparece na prxima revalidao
+	private void load() {
+		for (int attempt = 1;; attempt++) {
+			long before = received.get();
+			TableStamp current = Resilience.read(dao::findStamp);
+			Map<Integer, DepartmentStats> map = new HashMap<>();
+			for (DepartmentStats item : Resilience.read(dao::findDepartmentStats)) {
+				map.put(item.getDepartmentId(), item);
+			}
+			long after = received.get();
+			if (after == before || attempt == MAX_LOADS) {
+				// Na ltima tentativa os eventos do meio so descartados: a revalidao corrige o que faltar
+				stats = map;
+				stamp = current;
+				loadedUpTo = after;
+				checkedAt = System.nanoTime();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void onDataChanged(List<DataChangeEvent> events) {
+		long order = received.incrementAndGet();
+		synchronized (this) {
+			if (stats == null || order <= loadedUpTo) {
+				return;
+			}
+		}
+		// Por vendedor: a linha antes do primeiro evento (null se foi includo) e o ltimo tipo de evento
+		Map<Integer, SellerRow> before = new HashMap<>();
+		Map<Integer, Kind> last = new LinkedHashMap<>();
+		for (DataChangeEvent event : events) {
+			for (Integer id : event.getIds()) {
+				SellerRow previous = (SellerRow) event.getPrevious(id);
+				if (id <= 0 || (event.getKind() != Kind.INSERTED && previous == null)) {
+					continue;
+				}
+				if (!last.containsKey(id)) {
+					before.put(id, previous);
+				}
+				last.put(id, event.getKind());
+			}
+		}
+		List<Integer> current = new ArrayList<>();
+		last.forEach((id, kind) -> {
+			if (kind != Kind.DELETED) {
+				current.add(id);
+			}
+		});
+		if (last.isEmpty()) {
+			return;
+		}
+		List<Seller> rows;
+		try {
+			rows = current.isEmpty() ? List.of() : Resilience.read(() -> dao.findByIds(current));
+		}
+		catch (DbException e) {
+			invalidate();
+			EventBus.publish(new DataChangeEvent(DepartmentStats.class, Kind.UPDATED, List.of()));
+			return;
+		}
+		Set<Integer> changed = new LinkedHashSet<>();
+		synchronized (this) {
+			// Carregado de novo enquanto os valores atuais eram lidos: a carga j inclui estes eventos
+			if (stats == null || order <= loadedUpTo) {
+				return;
+			}
+			for (SellerRow row : before.values()) {
+				if (row != null) {
+					add(-1, row.getDepartment(), row.getBaseSalary(), changed);
+				}
+			}
+			for (Seller obj : rows) {
+				add(1, obj.getDepartment(), obj.getBaseSalary(), changed);
+			}
+		}
+		if (!changed.isEmpty()) {
+			EventBus.publish(new DataChangeEvent(DepartmentStats.class, Kind.UPDATED, changed));
+		}
+	}
+
+	private void add(int sign, Department department, Double baseSalary, Set<Integer> changed) {
+		if (department == null || department.getId() == null) {
+			return;
+		}
+		int id = department.getId();
+		DepartmentStats item = stats.getOrDefault(id, new DepartmentStats(id, 0, 0.0))
+				.plus(sign, baseSalary == null ? 0.0 : baseSalary);
+		if (item.getHeadcount() <= 0) {
+			stats.remove(id);
+		}
+		else {
+			stats.put(id, item);
+		}
+		changed.add(id);
+	}
+}
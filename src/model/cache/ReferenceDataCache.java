@@ -0,0 +1,281 @@
+package model.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import db.DB;
+import model.dto.SellerRow;
+import model.dto.StringPool;
+import model.entities.Department;
+import model.entities.TableStamp;
+
+/*
+Cpia local dos departamentos e da ltima lista de vendedores exibida, gravada em um arquivo binrio compacto.
+Permite mostrar as listas antes da resposta do banco e enquanto ele estiver fora do ar (somente leitura).
+O arquivo  mapeado em memria na carga e regravado em segundo plano sempre que chegam dados novos do banco.
+*/
+public class ReferenceDataCache {
+
+	private static final int MAGIC = 0x53454c43;
+	private static final int VERSION = 3;
+
+	private static List<Department> departments = null;
+	private static TableStamp departmentStamp = null;
+
+	private static List<SellerRow> sellers = null;
+	private static TableStamp sellerStamp = null;
+	private static boolean sellersComplete = false;
+
+	private static volatile boolean offline = false;
+	// Avisados quando as listas passam a vir da cpia local (banco fora do ar) ou voltam a vir do banco
+	private static final List<Consumer<Boolean>> offlineListeners = new CopyOnWriteArrayList<>();
+
+	private static boolean savePending = false;
+
+	private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "reference-cache-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public static synchronized void load() {
+		// Carga em segundo plano (startup.fast) depois de uma leitura do banco: o arquivo  mais antigo
+		if (departments != null || sellers != null || DB.isServerMode()) {
+			return;
+		}
+		Path path = cacheFile();
+		if (!Files.isRegularFile(path)) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return;
+			}
+			departmentStamp = readStamp(buffer);
+			departments = readDepartments(buffer);
+			sellerStamp = readStamp(buffer);
+			sellersComplete = buffer.get() != 0;
+			sellers = readSellers(buffer);
+		}
+		catch (IOException | RuntimeException e) {
+			// Cache corrompido ou incompatvel: comea vazio
+			departments = null;
+			departmentStamp = null;
+			sellers = null;
+			sellerStamp = null;
+		}
+	}
+
+	public static synchronized List<Department> getDepartments() {
+		return departments;
+	}
+
+	public static synchronized TableStamp getDepartmentStamp() {
+		return departmentStamp;
+	}
+
+	// stamp: lido do banco antes da lista, para que uma alterao no meio aparea na prxima revalidao
+	public static synchronized void putDepartments(List<Department> list, TableStamp stamp) {
+		if (DB.isServerMode()) {
+			return;
+		}
+		departments = Collections.unmodifiableList(new ArrayList<>(list));
+		departmentStamp = stamp;
+		setOffline(false);
+		scheduleSave();
+	}
+
+	public static synchronized List<SellerRow> getSellers() {
+		return sellers;
+	}
+
+	public static synchronized boolean isSellersComplete() {
+		return sellersComplete;
+	}
+
+	public static synchronized TableStamp getSellerStamp() {
+		return sellerStamp;
+	}
+
+	public static synchronized void putSellers(List<SellerRow> list, TableStamp stamp) {
+		if (DB.isServerMode()) {
+			return;
+		}
+		int max = maxSellers();
+		sellersComplete = list.size() <= max;
+		sellers = Collections.unmodifiableList(new ArrayList<>(sellersComplete ? list : list.subList(0, max)));
+		sellerStamp = stamp;
+		setOffline(false);
+		scheduleSave();
+	}
+
+	public static boolean isOffline() {
+		return offline;
+	}
+
+	public static void setOffline(boolean value) {
+		if (offline == value) {
+			return;
+		}
+		offline = value;
+		for (Consumer<Boolean> listener : offlineListeners) {
+			listener.accept(value);
+		}
+	}
+
+	public static void addOfflineListener(Consumer<Boolean> listener) {
+		offlineListeners.add(listener);
+	}
+
+	private static int maxSellers() {
+		return Integer.parseInt(DB.getProperties().getProperty("cache.maxSellers", "1000"));
+	}
+
+	private static Path cacheFile() {
+		return Paths.get(DB.getProperties().getProperty("cache.file", "reference-data.cache"));
+	}
+
+	// Agrupa as gravaes: enquanto uma gravao estiver pendente, as novas alteraes entram nela
+	private static void scheduleSave() {
+		if (savePending) {
+			return;
+		}
+		savePending = true;
+		writer.execute(() -> {
+			List<Department> deps;
+			TableStamp depStamp;
+			List<SellerRow> sels;
+			TableStamp selStamp;
+			boolean complete;
+			synchronized (ReferenceDataCache.class) {
+				savePending = false;
+				deps = departments;
+				depStamp = departmentStamp;
+				sels = sellers;
+				selStamp = sellerStamp;
+				complete = sellersComplete;
+			}
+			save(deps, depStamp, sels, selStamp, complete);
+		});
+	}
+
+	private static void save(List<Department> deps, TableStamp depStamp, List<SellerRow> sels, TableStamp selStamp,
+			boolean complete) {
+		Path path = cacheFile();
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream os = Files.newOutputStream(tmp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeStamp(out, depStamp);
+			writeDepartments(out, deps == null ? Collections.emptyList() : deps);
+			writeStamp(out, selStamp);
+			out.writeByte(complete ? 1 : 0);
+			writeSellers(out, sels == null ? Collections.emptyList() : sels);
+		}
+		catch (IOException e) {
+			return;
+		}
+		try {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			// O cache  apenas uma otimizao; uma falha ao grav-lo no deve afetar a aplicao
+		}
+	}
+
+	private static void writeStamp(DataOutputStream out, TableStamp stamp) throws IOException {
+		out.writeLong(stamp == null ? -1 : stamp.getRowCount());
+		out.writeInt(stamp == null ? 0 : stamp.getMaxId());
+		out.writeLong(stamp == null ? 0 : stamp.getLastUpdate());
+	}
+
+	private static TableStamp readStamp(ByteBuffer buffer) {
+		long rowCount = buffer.getLong();
+		int maxId = buffer.getInt();
+		long lastUpdate = buffer.getLong();
+		return rowCount < 0 ? null : new TableStamp(rowCount, maxId, lastUpdate);
+	}
+
+	private static void writeDepartments(DataOutputStream out, List<Department> list) throws IOException {
+		out.writeInt(list.size());
+		for (Department dep : list) {
+			out.writeInt(dep.getId());
+			writeString(out, dep.getName());
+		}
+	}
+
+	private static List<Department> readDepartments(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		List<Department> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(new Department(buffer.getInt(), readString(buffer)));
+		}
+		return size == 0 ? null : Collections.unmodifiableList(list);
+	}
+
+	private static void writeSellers(DataOutputStream out, List<SellerRow> list) throws IOException {
+		out.writeInt(list.size());
+		for (SellerRow obj : list) {
+			out.writeInt(obj.getId());
+			writeString(out, obj.getName());
+			writeString(out, obj.getEmail());
+			out.writeInt(obj.getBirthEpochDay());
+			out.writeDouble(SellerRow.toSalary(obj.getBaseSalary()));
+			out.writeInt(obj.getDepartment().getId());
+			writeString(out, obj.getDepartment().getName());
+		}
+	}
+
+	private static List<SellerRow> readSellers(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		List<SellerRow> list = new ArrayList<>(size);
+		Map<Integer, Department> map = new HashMap<>();
+		StringPool names = new StringPool();
+		for (int i = 0; i < size; i++) {
+			int id = buffer.getInt();
+			String name = names.get(readString(buffer));
+			String email = readString(buffer);
+			int birthEpochDay = buffer.getInt();
+			double baseSalary = buffer.getDouble();
+			int depId = buffer.getInt();
+			String depName = readString(buffer);
+			Department dep = map.computeIfAbsent(depId, x -> new Department(depId, names.get(depName)));
+			list.add(new SellerRow(id, name, email, birthEpochDay, baseSalary, dep));
+		}
+		return size == 0 ? null : Collections.unmodifiableList(list);
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
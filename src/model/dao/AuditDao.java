@@ -0,0 +1,10 @@
+package model.dao;
+
+import java.util.List;
+
+import model.entities.AuditEntry;
+
+public interface AuditDao {
+
+	void insertAll(List<AuditEntry> list);
+}
@@ -1,16 +1,233 @@
 package model.dao;
 
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+import db.ConnectionSource;
 import db.DB;
+import db.DbException;
+import db.IdSequence;
+import db.Migrations;
+import db.ShardMap;
+import diagnostics.Diagnostics;
+import diagnostics.Log;
+import model.dao.impl.ApiClient;
+import model.dao.impl.AuditDaoJDBC;
+import model.dao.impl.AuditDaoMemory;
+import model.dao.impl.DepartmentDaoHttp;
 import model.dao.impl.DepartmentDaoJDBC;
+import model.dao.impl.DepartmentDaoMemory;
+import model.dao.impl.MemoryStore;
+import model.dao.impl.SellerDaoHttp;
 import model.dao.impl.SellerDaoJDBC;
+import model.dao.impl.SellerDaoMemory;
+import model.dao.impl.SellerSyncDaoJDBC;
+import model.dao.impl.SellerSyncDaoMemory;
+import model.dao.impl.ShardedDepartmentDao;
+import model.dao.impl.ShardedSellerDao;
 
 public class DaoFactory {
 
+	private static boolean initialized = false;
+
+	private static ApiClient api = null;
+
+	private static SellerDao shardedSellers = null;
+
 	public static SellerDao createSellerDao() {
-		return new SellerDaoJDBC(DB.getConnection());
+		return Diagnostics.trace(SellerDao.class, createSellerDaoImpl());
 	}
-	
+
 	public static DepartmentDao createDepartmentDao() {
-		return new DepartmentDaoJDBC(DB.getConnection());
+		return Diagnostics.trace(DepartmentDao.class, createDepartmentDaoImpl());
+	}
+
+	public static AuditDao createAuditDao() {
+		return Diagnostics.trace(AuditDao.class, createAuditDaoImpl());
+	}
+
+	public static SellerSyncDao createSellerSyncDao() {
+		return Diagnostics.trace(SellerSyncDao.class, createSellerSyncDaoImpl());
+	}
+
+	private static SellerDao createSellerDaoImpl() {
+		initialize();
+		switch (DB.getBackend()) {
+		case "mysql":
+		case "h2":
+			return DB.getShardMap() != null ? shardedSellers() : new SellerDaoJDBC(connectionSource());
+		case "memory":
+			return new SellerDaoMemory(MemoryStore.getInstance());
+		case "remote":
+			return new SellerDaoHttp(api());
+		default:
+			throw new DbException("Unknown backend: " + DB.getBackend());
+		}
+	}
+	
+	private static DepartmentDao createDepartmentDaoImpl() {
+		initialize();
+		switch (DB.getBackend()) {
+		case "mysql":
+		case "h2":
+			return DB.getShardMap() != null ? shardedDepartments() : new DepartmentDaoJDBC(connectionSource());
+		case "memory":
+			return new DepartmentDaoMemory(MemoryStore.getInstance());
+		case "remote":
+			return new DepartmentDaoHttp(api());
+		default:
+			throw new DbException("Unknown backend: " + DB.getBackend());
+		}
+	}
+
+	/* Com shard.urls a trilha de auditoria fica no shard 0, junto com a referncia dos departamentos.
+	   Sem shards ela usa uma conexo prpria: a transao de cada lote no mexe no autocommit da conexo
+	   compartilhada pelas telas */
+	private static AuditDao createAuditDaoImpl() {
+		initialize();
+		switch (DB.getBackend()) {
+		case "mysql":
+		case "h2":
+			ShardMap shards = DB.getShardMap();
+			return new AuditDaoJDBC(Diagnostics.timed(shards != null ? shards.getSource(0)
+					: DB.getDedicatedConnectionSource()));
+		case "memory":
+			return new AuditDaoMemory(MemoryStore.getInstance());
+		case "remote":
+			// O servidor audita as gravaes que recebe, com o usurio autenticado (server.apiKeys)
+			throw new DbException("The audit trail is written by the server on the remote backend");
+		default:
+			throw new DbException("Unknown backend: " + DB.getBackend());
+		}
+	}
+
+	private static SellerSyncDao createSellerSyncDaoImpl() {
+		initialize();
+		switch (DB.getBackend()) {
+		case "mysql":
+		case "h2":
+			if (DB.getShardMap() != null) {
+				throw new DbException("Roster sync is not available with sharded sellers (shard.urls)");
+			}
+			return new SellerSyncDaoJDBC(Diagnostics.timed(DB.getDedicatedConnectionSource()));
+		case "memory":
+			return new SellerSyncDaoMemory(MemoryStore.getInstance());
+		case "remote":
+			// A carga do RH roda junto ao banco, no pelos clientes da API
+			throw new DbException("Roster sync is not available on the remote backend");
+		default:
+			throw new DbException("Unknown backend: " + DB.getBackend());
+		}
+	}
+
+	// Mede a espera por conexo para os eventos do JFR (DaoCallEvent)
+	private static ConnectionSource connectionSource() {
+		return Diagnostics.timed(DB.getConnectionSource());
+	}
+
+	/* Ordem dos nomes no ORDER BY Name do backend: a collation padro do MySQL (tambm atrs da API)
+	   no diferencia maisculas; o H2 e o backend em memria comparam os caracteres */
+	public static Comparator<String> getNameOrder() {
+		String backend = DB.getBackend();
+		return backend.equals("mysql") || backend.equals("remote") ? String.CASE_INSENSITIVE_ORDER
+				: Comparator.naturalOrder();
+	}
+
+	// Um nico DAO para todos os servios:  ele que gera os ids sem repetio entre os shards
+	private static synchronized SellerDao shardedSellers() {
+		if (shardedSellers == null) {
+			ShardMap shards = DB.getShardMap();
+			List<SellerDao> list = new ArrayList<>();
+			for (int i = 0; i < shards.size(); i++) {
+				list.add(new SellerDaoJDBC(Diagnostics.timed(shards.getSource(i))));
+			}
+			IdSequence sequence = new IdSequence(shards.getSource(0), "seller");
+			int blockSize = Integer.parseInt(DB.getProperties().getProperty("shard.idBlockSize", "100"));
+			shardedSellers = new ShardedSellerDao(shards, list, sequence, blockSize, getNameOrder());
+		}
+		return shardedSellers;
+	}
+
+	private static DepartmentDao shardedDepartments() {
+		ShardMap shards = DB.getShardMap();
+		List<DepartmentDao> list = new ArrayList<>();
+		for (int i = 0; i < shards.size(); i++) {
+			list.add(new DepartmentDaoJDBC(Diagnostics.timed(shards.getSource(i))));
+		}
+		return new ShardedDepartmentDao(list, shardedSellers());
+	}
+
+	// Com shard.urls o esquema  preparado em cada shard
+	private static void prepareSchema(boolean embedded) {
+		ShardMap shards = DB.getShardMap();
+		if (shards == null) {
+			prepareSchema(DB.getConnectionSource(), embedded);
+			return;
+		}
+		for (int i = 0; i < shards.size(); i++) {
+			prepareSchema(shards.getSource(i), embedded);
+		}
+	}
+
+	/* Banco embutido ou schema.autoMigrate=true: aplica as migraes pendentes.
+	   Nos demais casos s avisa o que falta; o MySQL de produo  migrado com Main --migrate */
+	private static void prepareSchema(ConnectionSource source, boolean embedded) {
+		boolean migrate = embedded || Boolean.parseBoolean(DB.getProperties().getProperty("schema.autoMigrate", "false"));
+		Connection conn = null;
+		try {
+			conn = source.getConnection();
+			if (migrate) {
+				Migrations.migrate(conn);
+			}
+			for (String warning : Migrations.check(conn)) {
+				Log.LOGGER.warning(warning);
+			}
+		}
+		catch (DbException e) {
+			if (embedded) {
+				throw e;
+			}
+			// Banco fora do ar na inicializao: a aplicao abre assim mesmo, com a cpia local
+			Log.LOGGER.warning("Schema check skipped: " + e.getMessage());
+		}
+		finally {
+			if (conn != null) {
+				source.release(conn);
+			}
+		}
+	}
+
+	// Um nico HttpClient para todos os DAOs do backend remote
+	private static synchronized ApiClient api() {
+		if (api == null) {
+			api = new ApiClient(DB.getProperties());
+		}
+		return api;
+	}
+
+	// Os backends de teste (h2 e memory) criam o esquema e so populados na primeira utilizao
+	private static synchronized void initialize() {
+		if (initialized) {
+			return;
+		}
+		initialized = true;
+		String backend = DB.getBackend();
+		if (DB.isJdbcBackend()) {
+			prepareSchema(backend.equals("h2"));
+		}
+		if (backend.equals("mysql") || backend.equals("remote")) {
+			return;
+		}
+		DepartmentDao departmentDao = createDepartmentDao();
+		if (departmentDao.findStamp().getRowCount() == 0) {
+			Properties props = DB.getProperties();
+			new DataGenerator(Long.parseLong(props.getProperty("seed.random", "42"))).populate(
+					departmentDao, createSellerDao(),
+					Integer.parseInt(props.getProperty("seed.departments", "4")),
+					Integer.parseInt(props.getProperty("seed.sellers", "50")));
+		}
 	}
 }
@@ -0,0 +1,133 @@
+package model.dao;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+Gera departamentos e vendedores fictcios com distribuies prximas s de produo:
+- nomes e sobrenomes escolhidos com frequncia decrescente (os mais comuns se repetem mais)
+- tamanho dos departamentos seguindo uma distribuio de Zipf (poucos departamentos grandes)
+- salrio base com distribuio log-normal (mediana em torno de 3000)
+- idade com distribuio normal em torno de 38 anos, limitada entre 18 e 70
+*/
+public class DataGenerator {
+
+	private static final String[] FIRST_NAMES = { "Ana", "Bruno", "Carla", "Daniel", "Eduarda", "Felipe", "Gabriela",
+			"Heitor", "Isabela", "Joo", "Larissa", "Marcos", "Natlia", "Otvio", "Paula", "Rafael", "Sofia",
+			"Thiago", "Vitria", "William" };
+
+	private static final String[] LAST_NAMES = { "Silva", "Santos", "Oliveira", "Souza", "Lima", "Pereira",
+			"Ferreira", "Costa", "Rodrigues", "Almeida", "Nascimento", "Carvalho", "Gomes", "Martins", "Arajo" };
+
+	private static final String[] EMAIL_DOMAINS = { "gmail.com", "hotmail.com", "outlook.com", "yahoo.com.br",
+			"uol.com.br" };
+
+	private static final String[] DEPARTMENT_NAMES = { "Computers", "Electronics", "Fashion", "Books", "Garden",
+			"Toys", "Sports", "Music", "Health", "Automotive" };
+
+	private static final int BATCH_SIZE = 1000;
+
+	private final Random random;
+
+	private final double[] firstNameWeights = zipf(FIRST_NAMES.length, 0.8);
+	private final double[] lastNameWeights = zipf(LAST_NAMES.length, 1.0);
+	private final double[] domainWeights = zipf(EMAIL_DOMAINS.length, 1.2);
+	private double[] departmentWeights = new double[0];
+
+	public DataGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	public List<Department> departments(int count) {
+		List<Department> list = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String name = DEPARTMENT_NAMES[i % DEPARTMENT_NAMES.length];
+			list.add(new Department(null, i < DEPARTMENT_NAMES.length ? name : name + " " + (i / DEPARTMENT_NAMES.length + 1)));
+		}
+		return list;
+	}
+
+	public Seller seller(int sequence, List<Department> departments) {
+		String first = FIRST_NAMES[pick(firstNameWeights)];
+		String last = LAST_NAMES[pick(lastNameWeights)];
+		String name = first + " " + last;
+		String email = (toAscii(first) + "." + toAscii(last) + sequence + "@" + EMAIL_DOMAINS[pick(domainWeights)])
+				.toLowerCase();
+
+		int age = (int) Math.max(18, Math.min(70, Math.round(38 + random.nextGaussian() * 10)));
+		LocalDate birth = LocalDate.now().minusYears(age).minusDays(random.nextInt(365));
+		Date birthDate = Date.from(birth.atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+		double baseSalary = Math.round(Math.exp(Math.log(3000) + random.nextGaussian() * 0.45) * 100) / 100.0;
+
+		if (departmentWeights.length != departments.size()) {
+			departmentWeights = zipf(departments.size(), 1.0);
+		}
+		Department dep = departments.get(pick(departmentWeights));
+		return new Seller(null, name, email, birthDate, baseSalary, dep);
+	}
+
+	// Insere os dados pelos DAOs, funcionando com qualquer backend
+	public void populate(DepartmentDao departmentDao, SellerDao sellerDao, int departmentCount, int sellerCount) {
+		List<Department> departments = departments(departmentCount);
+		// department.Name  nico (migrao 9): numa segunda carga os departamentos de mesmo nome so reaproveitados
+		Map<String, Department> existing = new HashMap<>();
+		for (Department dep : departmentDao.findAll()) {
+			existing.put(dep.getName(), dep);
+		}
+		for (int i = 0; i < departments.size(); i++) {
+			Department found = existing.get(departments.get(i).getName());
+			if (found != null) {
+				departments.set(i, found);
+			}
+			else {
+				departmentDao.insert(departments.get(i));
+			}
+		}
+		// A sequncia (parte do email) continua a partir do maior Id, pois seller.Email  nico
+		int offset = sellerDao.findStamp().getMaxId();
+		List<Seller> batch = new ArrayList<>(BATCH_SIZE);
+		for (int i = 1; i <= sellerCount; i++) {
+			batch.add(seller(offset + i, departments));
+			if (batch.size() == BATCH_SIZE || i == sellerCount) {
+				sellerDao.insertAll(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	// Pesos acumulados de uma distribuio de Zipf com o expoente informado
+	// Joo -> Joao: o endereo de email no leva acentos
+	private static String toAscii(String text) {
+		return Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+	}
+
+	private static double[] zipf(int size, double exponent) {
+		double[] cumulative = new double[size];
+		double total = 0;
+		for (int i = 0; i < size; i++) {
+			total += 1.0 / Math.pow(i + 1, exponent);
+			cumulative[i] = total;
+		}
+		for (int i = 0; i < size; i++) {
+			cumulative[i] /= total;
+		}
+		return cumulative;
+	}
+
+	private int pick(double[] cumulative) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+	}
+}
@@ -1,8 +1,10 @@
 package model.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import model.entities.Department;
+import model.entities.TableStamp;
 
 public interface DepartmentDao {
 
@@ -10,5 +12,8 @@ public interface DepartmentDao {
 	void update(Department obj);
 	void deleteById(Integer id);
 	Department findById(Integer id);
+	List<Department> findByIds(Collection<Integer> ids);
 	List<Department> findAll();
+	TableStamp findStamp();
+	boolean existsByName(String name, Integer excludeId);
 }
@@ -1,16 +1,34 @@
 package model.dao;
 
+import java.util.Collection;
 import java.util.List;
 
+import model.dto.DepartmentStats;
+import model.dto.SellerRow;
 import model.entities.Department;
 import model.entities.Seller;
+import model.entities.TableStamp;
 
 public interface SellerDao {
 
 	void insert(Seller obj);
-	void update(Seller obj);
-	void deleteById(Integer id);
+	// Incluso do write-behind: a chave  gravada com o vendedor, e findIdByWriteKey diz depois se ela entrou
+	void insert(Seller obj, String writeKey);
+	Integer findIdByWriteKey(String writeKey);
+	void insertAll(List<Seller> list);
+	// As gravaes devolvem as linhas como estavam antes delas (null ou vazio para as que no existiam)
+	SellerRow update(Seller obj);
+	SellerRow deleteById(Integer id);
 	Seller findById(Integer id);
+	List<Seller> findByIds(Collection<Integer> ids);
 	List<Seller> findAll();
 	List<Seller> findByDepartment(Department department);
+	List<SellerRow> findAllRows();
+	List<SellerRow> findRowsByDepartment(Department department);
+	List<SellerRow> findRowsByIds(Collection<Integer> ids);
+	List<SellerRow> deleteByIds(Collection<Integer> ids);
+	List<SellerRow> updateDepartment(Collection<Integer> ids, Department department);
+	TableStamp findStamp();
+	boolean existsByEmail(String email, Integer excludeId);
+	List<DepartmentStats> findDepartmentStats();
 }
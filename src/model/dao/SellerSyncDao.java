@@ -0,0 +1,15 @@
+package model.dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import model.entities.Seller;
+
+public interface SellerSyncDao {
+
+	void createSchema();
+	Map<Integer, Long> findHashes();
+	void upsertAll(List<Seller> list, List<Long> hashes);
+	void deleteByIds(Collection<Integer> ids);
+}
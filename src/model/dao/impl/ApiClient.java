@@ -0,0 +1,116 @@
+package model.dao.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+
+import db.DbConnectionException;
+import db.DbException;
+import db.DbIntegrityException;
+import model.exceptions.JsonException;
+import model.json.Json;
+
+/*
+Cliente da API do servidor (application.server.ApiServer), usado pelos DAOs do backend remote.
+Falhas de rede viram DbConnectionException, para que a camada de resilincia trate o servidor
+fora do ar como trata o banco fora do ar; os erros devolvidos pelo servidor voltam como DbException.
+*/
+public class ApiClient {
+
+	private final HttpClient client;
+	private final String baseUrl;
+	private final Duration timeout;
+	private final String apiKey;
+
+	public ApiClient(Properties props) {
+		String url = props.getProperty("server.url", "http://localhost:8080/api");
+		this.baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+		this.timeout = Duration.ofMillis(Long.parseLong(props.getProperty("server.timeoutMillis", "30000")));
+		this.apiKey = props.getProperty("server.apiKey", "").trim();
+		// O HttpServer do JDK s fala HTTP/1.1; evita a tentativa de upgrade para HTTP/2 em cada conexo
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofMillis(Long.parseLong(props.getProperty("server.connectTimeoutMillis", "2000"))))
+				.build();
+	}
+
+	public Object get(String path) {
+		return send("GET", path, null);
+	}
+
+	public Object post(String path, Object body) {
+		return send("POST", path, body);
+	}
+
+	public Object put(String path, Object body) {
+		return send("PUT", path, body);
+	}
+
+	public Object delete(String path) {
+		return send("DELETE", path, null);
+	}
+
+	// Retorna null quando o servidor responde 404
+	private Object send(String method, String path, Object body) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+				.timeout(timeout)
+				.header("Accept", "application/json");
+		// Identifica o usurio no servidor, que grava a auditoria em nome dele
+		if (!apiKey.isEmpty()) {
+			builder.header("Authorization", "Bearer " + apiKey);
+		}
+		if (body == null) {
+			builder.method(method, HttpRequest.BodyPublishers.noBody());
+		}
+		else {
+			builder.header("Content-Type", "application/json; charset=utf-8");
+			builder.method(method, HttpRequest.BodyPublishers.ofString(Json.write(body), StandardCharsets.UTF_8));
+		}
+		HttpResponse<String> response;
+		try {
+			response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+		}
+		catch (IOException e) {
+			throw new DbConnectionException("Server unavailable: " + e.getMessage());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for the server");
+		}
+		int status = response.statusCode();
+		if (status == 404) {
+			return null;
+		}
+		if (status >= 400) {
+			throw error(status, response.body());
+		}
+		return response.body().isEmpty() ? null : Json.parse(response.body());
+	}
+
+	private static RuntimeException error(int status, String body) {
+		String message = "Server error " + status;
+		try {
+			Object error = Json.parseObject(body).get("error");
+			if (error != null) {
+				message = error.toString();
+			}
+		}
+		catch (JsonException e) {
+			// corpo sem JSON: mantm a mensagem genrica
+		}
+		switch (status) {
+		case 409:
+			return new DbIntegrityException(message);
+		case 502:
+		case 503:
+			return new DbConnectionException(message);
+		default:
+			return new DbException(message);
+		}
+	}
+}
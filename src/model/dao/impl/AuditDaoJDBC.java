@@ -0,0 +1,83 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import db.ConnectionSource;
+import db.DB;
+import db.DbException;
+import model.dao.AuditDao;
+import model.entities.AuditEntry;
+
+public class AuditDaoJDBC implements AuditDao {
+
+	private ConnectionSource source;
+
+	public AuditDaoJDBC(ConnectionSource source) {
+		this.source = source;
+	}
+
+	// Um nico INSERT em lote por chamada (rewriteBatchedStatements no MySQL), em uma transao:
+	// um registro recusado no deixa metade do lote gravada
+	@Override
+	public void insertAll(List<AuditEntry> list) {
+		if (list.isEmpty()) {
+			return;
+		}
+		Connection conn = source.getConnection();
+		PreparedStatement st = null;
+		try {
+			conn.setAutoCommit(false);
+			st = DB.prepare(conn, "AuditDao.insertAll",
+					"INSERT INTO audit_log "
+					+ "(Entity, EntityId, Action, UserName, ChangedAt, OldValues, NewValues) "
+					+ "VALUES "
+					+ "(?, ?, ?, ?, ?, ?, ?)");
+
+			for (AuditEntry entry : list) {
+				st.setString(1, entry.getEntity());
+				st.setInt(2, entry.getEntityId());
+				st.setString(3, entry.getAction().name());
+				st.setString(4, entry.getUser());
+				st.setTimestamp(5, new Timestamp(entry.getChangedAt().getTime()));
+				st.setString(6, entry.getOldValues());
+				st.setString(7, entry.getNewValues());
+				st.addBatch();
+			}
+
+			st.executeBatch();
+			conn.commit();
+		}
+		catch (SQLException e) {
+			rollback(conn);
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			restoreAutoCommit(conn);
+			source.release(conn);
+		}
+	}
+
+	private static void rollback(Connection conn) {
+		try {
+			conn.rollback();
+		}
+		catch (SQLException e) {
+			// mantm a exceo original
+		}
+	}
+
+	// Chamado no finally: uma falha aqui no pode esconder a exceo original
+	private static void restoreAutoCommit(Connection conn) {
+		try {
+			conn.setAutoCommit(true);
+		}
+		catch (SQLException e) {
+			// a conexo quebrada  descartada pela origem
+		}
+	}
+}
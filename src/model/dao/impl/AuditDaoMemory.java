@@ -0,0 +1,20 @@
+package model.dao.impl;
+
+import java.util.List;
+
+import model.dao.AuditDao;
+import model.entities.AuditEntry;
+
+public class AuditDaoMemory implements AuditDao {
+
+	private MemoryStore store;
+
+	public AuditDaoMemory(MemoryStore store) {
+		this.store = store;
+	}
+
+	@Override
+	public void insertAll(List<AuditEntry> list) {
+		store.audit.addAll(list);
+	}
+}
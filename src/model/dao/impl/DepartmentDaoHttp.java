@@ -0,0 +1,69 @@
+package model.dao.impl;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.dao.DepartmentDao;
+import model.entities.Department;
+import model.entities.TableStamp;
+import model.json.JsonMapper;
+
+public class DepartmentDaoHttp implements DepartmentDao {
+
+	private ApiClient api;
+
+	public DepartmentDaoHttp(ApiClient api) {
+		this.api = api;
+	}
+
+	@Override
+	public void insert(Department obj) {
+		Department saved = JsonMapper.toDepartment(api.post("/departments", JsonMapper.toMap(obj)));
+		obj.setId(saved.getId());
+		obj.markClean();
+	}
+
+	@Override
+	public void update(Department obj) {
+		if (obj.getDirtyFields().isEmpty()) {
+			return;
+		}
+		api.put("/departments/" + obj.getId(), JsonMapper.toMap(obj));
+		obj.markClean();
+	}
+
+	@Override
+	public void deleteById(Integer id) {
+		api.delete("/departments/" + id);
+	}
+
+	@Override
+	public Department findById(Integer id) {
+		return JsonMapper.toDepartment(api.get("/departments/" + id));
+	}
+
+	@Override
+	public List<Department> findByIds(Collection<Integer> ids) {
+		return JsonMapper.toDepartments(api.post("/departments/find", Map.of("ids", ids)));
+	}
+
+	@Override
+	public List<Department> findAll() {
+		return JsonMapper.toDepartments(api.get("/departments"));
+	}
+
+	@Override
+	public TableStamp findStamp() {
+		return JsonMapper.toStamp(api.get("/departments/stamp"));
+	}
+
+	@Override
+	public boolean existsByName(String name, Integer excludeId) {
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("name", name);
+		body.put("excludeId", excludeId);
+		return Boolean.TRUE.equals(api.post("/departments/exists", body));
+	}
+}
@@ -5,29 +5,34 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import db.ConnectionSource;
 import db.DB;
 import db.DbException;
 import db.DbIntegrityException;
 import model.dao.DepartmentDao;
 import model.entities.Department;
+import model.entities.TableStamp;
 
 public class DepartmentDaoJDBC implements DepartmentDao {
 
-	private Connection conn;
+	private ConnectionSource source;
 	
-	public DepartmentDaoJDBC(Connection conn) {
-		this.conn = conn;
+	public DepartmentDaoJDBC(ConnectionSource source) {
+		this.source = source;
 	}
 	
 	@Override
 	public Department findById(Integer id) {
+		Connection conn = source.getReadConnection();
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
-			st = conn.prepareStatement(
+			st = DB.prepare(conn, "DepartmentDao.findById",
 				"SELECT * FROM department WHERE Id = ?");
 			st.setInt(1, id);
 			rs = st.executeQuery();
@@ -35,6 +40,7 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 				Department obj = new Department();
 				obj.setId(rs.getInt("Id"));
 				obj.setName(rs.getString("Name"));
+				obj.markClean();
 				return obj;
 			}
 			return null;
@@ -45,15 +51,52 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			source.release(conn);
 		}
 	}
 
+	@Override
+	public List<Department> findByIds(Collection<Integer> ids) {
+		List<Department> list = new ArrayList<>(ids.size());
+		for (List<Integer> chunk : DB.chunks(ids)) {
+			Connection conn = source.getReadConnection();
+			PreparedStatement st = null;
+			ResultSet rs = null;
+			try {
+				st = DB.prepare(conn, "DepartmentDao.findByIds",
+					"SELECT * FROM department WHERE Id IN (" + DB.placeholders(chunk.size()) + ")");
+				int i = 1;
+				for (Integer id : chunk) {
+					st.setInt(i++, id);
+				}
+				rs = st.executeQuery();
+				while (rs.next()) {
+					Department obj = new Department();
+					obj.setId(rs.getInt("Id"));
+					obj.setName(rs.getString("Name"));
+					obj.markClean();
+					list.add(obj);
+				}
+			}
+			catch (SQLException e) {
+				throw new DbException(e.getMessage());
+			}
+			finally {
+				DB.closeStatement(st);
+				DB.closeResultSet(rs);
+				source.release(conn);
+			}
+		}
+		return list;
+	}
+
 	@Override
 	public List<Department> findAll() {
+		Connection conn = source.getReadConnection();
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
-			st = conn.prepareStatement(
+			st = DB.prepare(conn, "DepartmentDao.findAll",
 				"SELECT * FROM department ORDER BY Name");
 			rs = st.executeQuery();
 
@@ -63,6 +106,7 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 				Department obj = new Department();
 				obj.setId(rs.getInt("Id"));
 				obj.setName(rs.getString("Name"));
+				obj.markClean();
 				list.add(obj);
 			}
 			return list;
@@ -73,30 +117,42 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			source.release(conn);
 		}
 	}
 
 	@Override
 	public void insert(Department obj) {
+		Connection conn = source.getConnection();
 		PreparedStatement st = null;
+		// Id j definido: cpia do departamento nos demais shards (ShardedDepartmentDao)
+		boolean withId = obj.getId() != null;
 		try {
-			st = conn.prepareStatement(
-				"INSERT INTO department " +
+			st = DB.prepare(conn, "DepartmentDao.insert",
+				withId
+				? "INSERT INTO department (Name, Id) VALUES (?, ?)"
+				: "INSERT INTO department " +
 				"(Name) " +
 				"VALUES " +
 				"(?)", 
 				Statement.RETURN_GENERATED_KEYS);
 
 			st.setString(1, obj.getName());
+			if (withId) {
+				st.setInt(2, obj.getId());
+			}
 
 			int rowsAffected = st.executeUpdate();
 			
 			if (rowsAffected > 0) {
-				ResultSet rs = st.getGeneratedKeys();
-				if (rs.next()) {
-					int id = rs.getInt(1);
-					obj.setId(id);
+				if (!withId) {
+					ResultSet rs = st.getGeneratedKeys();
+					if (rs.next()) {
+						int id = rs.getInt(1);
+						obj.setId(id);
+					}
 				}
+				obj.markClean();
 			}
 			else {
 				throw new DbException("Unexpected error! No rows affected!");
@@ -107,14 +163,20 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		} 
 		finally {
 			DB.closeStatement(st);
+			source.release(conn);
 		}
 	}
 
 	@Override
 	public void update(Department obj) {
+		// Nenhum campo alterado: evita a ida ao banco
+		if (obj.getDirtyFields().isEmpty()) {
+			return;
+		}
+		Connection conn = source.getConnection();
 		PreparedStatement st = null;
 		try {
-			st = conn.prepareStatement(
+			st = DB.prepare(conn, "DepartmentDao.update",
 				"UPDATE department " +
 				"SET Name = ? " +
 				"WHERE Id = ?");
@@ -123,20 +185,23 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 			st.setInt(2, obj.getId());
 
 			st.executeUpdate();
+			obj.markClean();
 		}
 		catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		} 
 		finally {
 			DB.closeStatement(st);
+			source.release(conn);
 		}
 	}
 
 	@Override
 	public void deleteById(Integer id) {
+		Connection conn = source.getConnection();
 		PreparedStatement st = null;
 		try {
-			st = conn.prepareStatement(
+			st = DB.prepare(conn, "DepartmentDao.deleteById",
 				"DELETE FROM department WHERE Id = ?");
 
 			st.setInt(1, id);
@@ -148,6 +213,55 @@ public class DepartmentDaoJDBC implements DepartmentDao {
 		} 
 		finally {
 			DB.closeStatement(st);
+			source.release(conn);
+		}
+	}
+
+	@Override
+	public TableStamp findStamp() {
+		Connection conn = source.getReadConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "DepartmentDao.findStamp",
+					"SELECT COUNT(*) AS Total, MAX(Id) AS MaxId, MAX(UpdatedAt) AS LastUpdate FROM department");
+			
+			rs = st.executeQuery();
+			rs.next();
+			Timestamp lastUpdate = rs.getTimestamp("LastUpdate");
+			return new TableStamp(rs.getLong("Total"), rs.getInt("MaxId"), lastUpdate == null ? 0 : lastUpdate.getTime());
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
+		}
+	}
+
+	// Consulta pelo ndice uq_department_name; excludeId  o registro sendo editado (null para um novo)
+	@Override
+	public boolean existsByName(String name, Integer excludeId) {
+		Connection conn = source.getReadConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "DepartmentDao.existsByName",
+					"SELECT 1 FROM department WHERE Name = ? AND Id <> ? LIMIT 1");
+			st.setString(1, name);
+			st.setInt(2, excludeId == null ? 0 : excludeId);
+			rs = st.executeQuery();
+			return rs.next();
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
 		}
 	}
 }
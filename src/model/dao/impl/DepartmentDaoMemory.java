@@ -0,0 +1,90 @@
+package model.dao.impl;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import db.DbException;
+import db.DbIntegrityException;
+import model.dao.DepartmentDao;
+import model.entities.Department;
+import model.entities.TableStamp;
+
+public class DepartmentDaoMemory implements DepartmentDao {
+
+	private MemoryStore store;
+
+	public DepartmentDaoMemory(MemoryStore store) {
+		this.store = store;
+	}
+
+	@Override
+	public void insert(Department obj) {
+		obj.setId(store.departmentSequence.incrementAndGet());
+		store.departments.put(obj.getId(), copy(obj));
+		obj.markClean();
+	}
+
+	@Override
+	public void update(Department obj) {
+		if (obj.getDirtyFields().isEmpty()) {
+			return;
+		}
+		if (store.departments.replace(obj.getId(), copy(obj)) == null) {
+			throw new DbException("Department not found: " + obj.getId());
+		}
+		store.departmentUpdates.incrementAndGet();
+		obj.markClean();
+	}
+
+	@Override
+	public void deleteById(Integer id) {
+		boolean referenced = store.sellers.values().stream()
+				.anyMatch(seller -> seller.getDepartment().getId().equals(id));
+		if (referenced) {
+			throw new DbIntegrityException("Cannot delete department " + id + ": it still has sellers");
+		}
+		store.departments.remove(id);
+	}
+
+	@Override
+	public Department findById(Integer id) {
+		Department obj = store.departments.get(id);
+		return obj == null ? null : copy(obj);
+	}
+
+	@Override
+	public List<Department> findByIds(Collection<Integer> ids) {
+		return ids.stream().distinct()
+				.map(store.departments::get)
+				.filter(obj -> obj != null)
+				.map(DepartmentDaoMemory::copy)
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public List<Department> findAll() {
+		return store.departments.values().stream()
+				.map(DepartmentDaoMemory::copy)
+				.sorted(Comparator.comparing(Department::getName))
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public TableStamp findStamp() {
+		return TableStamp.of(store.departments.keySet(), store.departmentUpdates.get());
+	}
+
+	@Override
+	public boolean existsByName(String name, Integer excludeId) {
+		return store.departments.values().stream()
+				.anyMatch(obj -> obj.getName().equalsIgnoreCase(name) && !obj.getId().equals(excludeId));
+	}
+
+	static Department copy(Department obj) {
+		Department result = new Department(obj.getId(), obj.getName());
+		result.markClean();
+		return result;
+	}
+}
@@ -0,0 +1,36 @@
+package model.dao.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.entities.AuditEntry;
+import model.entities.Department;
+import model.entities.Seller;
+
+// Armazenamento em memria compartilhado pelos DAOs do backend "memory"
+public class MemoryStore {
+
+	private static final MemoryStore instance = new MemoryStore();
+
+	final ConcurrentMap<Integer, Department> departments = new ConcurrentHashMap<>();
+	final ConcurrentMap<Integer, Seller> sellers = new ConcurrentHashMap<>();
+	final ConcurrentMap<Integer, Long> sellerHashes = new ConcurrentHashMap<>();
+	// Chaves das incluses do write-behind, no lugar da coluna seller.WriteKey
+	final ConcurrentMap<String, Integer> sellerWriteKeys = new ConcurrentHashMap<>();
+	final Queue<AuditEntry> audit = new ConcurrentLinkedQueue<>();
+
+	final AtomicInteger departmentSequence = new AtomicInteger();
+	final AtomicInteger sellerSequence = new AtomicInteger();
+
+	// Contadores de alteraes, no lugar do UpdatedAt das tabelas (TableStamp.getLastUpdate)
+	final AtomicLong departmentUpdates = new AtomicLong();
+	final AtomicLong sellerUpdates = new AtomicLong();
+
+	public static MemoryStore getInstance() {
+		return instance;
+	}
+}
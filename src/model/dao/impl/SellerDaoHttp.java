@@ -0,0 +1,152 @@
+package model.dao.impl;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.dao.SellerDao;
+import model.dto.DepartmentStats;
+import model.dto.SellerRow;
+import model.entities.Department;
+import model.entities.Seller;
+import model.entities.TableStamp;
+import model.json.JsonMapper;
+
+public class SellerDaoHttp implements SellerDao {
+
+	private ApiClient api;
+
+	public SellerDaoHttp(ApiClient api) {
+		this.api = api;
+	}
+
+	@Override
+	public void insert(Seller obj) {
+		Seller saved = JsonMapper.toSeller(api.post("/sellers", JsonMapper.toMap(obj)));
+		obj.setId(saved.getId());
+		obj.markClean();
+	}
+
+	// O servidor grava a chave com o vendedor; repetido com a mesma chave, devolve o j includo
+	@Override
+	public void insert(Seller obj, String writeKey) {
+		Map<String, Object> body = JsonMapper.toMap(obj);
+		body.put("writeKey", writeKey);
+		Seller saved = JsonMapper.toSeller(api.post("/sellers", body));
+		obj.setId(saved.getId());
+		obj.markClean();
+	}
+
+	@Override
+	public Integer findIdByWriteKey(String writeKey) {
+		return JsonMapper.toInteger(api.post("/sellers/findByWriteKey", Map.of("writeKey", writeKey)));
+	}
+
+	@Override
+	public void insertAll(List<Seller> list) {
+		if (list.isEmpty()) {
+			return;
+		}
+		List<Integer> ids = JsonMapper.toIntegers(api.post("/sellers/batch", JsonMapper.toList(list)));
+		for (int i = 0; i < list.size() && i < ids.size(); i++) {
+			list.get(i).setId(ids.get(i));
+			list.get(i).markClean();
+		}
+	}
+
+	/* Envia somente os campos alterados; o servidor grava apenas essas colunas.
+	   As linhas anteriores ficam no servidor (null ou vazio nas gravaes): os totais por departamento
+	   do cliente se corrigem na revalidao (stats.revalidateMillis) */
+	@Override
+	public SellerRow update(Seller obj) {
+		Set<String> dirty = obj.getDirtyFields();
+		if (dirty.isEmpty()) {
+			return null;
+		}
+		Map<String, Object> all = JsonMapper.toMap(obj);
+		Map<String, Object> changes = new LinkedHashMap<>();
+		for (String field : dirty) {
+			changes.put(field, all.get(field));
+		}
+		api.put("/sellers/" + obj.getId(), changes);
+		obj.markClean();
+		return null;
+	}
+
+	@Override
+	public SellerRow deleteById(Integer id) {
+		api.delete("/sellers/" + id);
+		return null;
+	}
+
+	@Override
+	public Seller findById(Integer id) {
+		return JsonMapper.toSeller(api.get("/sellers/" + id));
+	}
+
+	@Override
+	public List<Seller> findByIds(Collection<Integer> ids) {
+		return JsonMapper.toSellers(api.post("/sellers/find", Map.of("ids", ids)));
+	}
+
+	@Override
+	public List<Seller> findAll() {
+		return JsonMapper.toSellers(api.get("/sellers"));
+	}
+
+	@Override
+	public List<Seller> findByDepartment(Department department) {
+		return JsonMapper.toSellers(api.get("/sellers?departmentId=" + department.getId()));
+	}
+
+	@Override
+	public List<SellerRow> findAllRows() {
+		return JsonMapper.toRows(api.get("/sellers/rows"));
+	}
+
+	@Override
+	public List<SellerRow> findRowsByDepartment(Department department) {
+		return JsonMapper.toRows(api.get("/sellers/rows?departmentId=" + department.getId()));
+	}
+
+	@Override
+	public List<SellerRow> findRowsByIds(Collection<Integer> ids) {
+		return JsonMapper.toRows(api.post("/sellers/findRows", Map.of("ids", ids)));
+	}
+
+	@Override
+	public List<SellerRow> deleteByIds(Collection<Integer> ids) {
+		if (!ids.isEmpty()) {
+			api.post("/sellers/delete", Map.of("ids", ids));
+		}
+		return List.of();
+	}
+
+	@Override
+	public List<SellerRow> updateDepartment(Collection<Integer> ids, Department department) {
+		if (!ids.isEmpty()) {
+			api.post("/sellers/move", Map.of("ids", ids, "departmentId", department.getId()));
+		}
+		return List.of();
+	}
+
+	@Override
+	public TableStamp findStamp() {
+		return JsonMapper.toStamp(api.get("/sellers/stamp"));
+	}
+
+	@Override
+	public boolean existsByEmail(String email, Integer excludeId) {
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("email", email);
+		body.put("excludeId", excludeId);
+		return Boolean.TRUE.equals(api.post("/sellers/exists", body));
+	}
+
+	@Override
+	public List<DepartmentStats> findDepartmentStats() {
+		return JsonMapper.toDepartmentStats(api.get("/sellers/stats"));
+	}
+}
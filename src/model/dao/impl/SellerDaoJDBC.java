@@ -4,53 +4,115 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
 
-import com.mysql.jdbc.Statement;
-
+import db.ConnectionSource;
 import db.DB;
 import db.DbException;
 import model.dao.SellerDao;
+import model.dto.DepartmentStats;
+import model.dto.SellerRow;
+import model.dto.StringPool;
 import model.entities.Department;
 import model.entities.Seller;
+import model.entities.TableStamp;
 
 public class SellerDaoJDBC implements SellerDao {
 
-	private Connection conn;
+	// Somente as colunas exibidas nas listas
+	private static final Map<String, String> COLUMNS = Map.of(
+			"name", "Name",
+			"email", "Email",
+			"birthDate", "BirthDate",
+			"baseSalary", "BaseSalary",
+			"department", "DepartmentId");
+
+	private static final String ROW_COLUMNS =
+			"SELECT seller.Id, seller.Name, seller.Email, seller.BirthDate, seller.BaseSalary, "
+			+ "seller.DepartmentId, department.Name as DepName "
+			+ "FROM seller INNER JOIN department "
+			+ "ON seller.DepartmentId = department.Id ";
+
+	private static final String INSERT =
+			"INSERT INTO seller "
+			+ "(Name, Email, BirthDate, BaseSalary, DepartmentId) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?, ?)";
+
+	// Id j definido (gerado pelo ShardedSellerDao): grava o Id informado em vez do auto incremento
+	private static final String INSERT_WITH_ID =
+			"INSERT INTO seller "
+			+ "(Name, Email, BirthDate, BaseSalary, DepartmentId, Id) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?, ?, ?)";
+
+	// Incluso do write-behind: a chave entra no mesmo INSERT, ento ou os dois foram gravados ou nenhum
+	private static final String INSERT_WITH_KEY =
+			"INSERT INTO seller "
+			+ "(Name, Email, BirthDate, BaseSalary, DepartmentId, WriteKey) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?, ?, ?)";
+
+	private static final String INSERT_WITH_ID_AND_KEY =
+			"INSERT INTO seller "
+			+ "(Name, Email, BirthDate, BaseSalary, DepartmentId, Id, WriteKey) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?, ?, ?, ?)";
+
+	private ConnectionSource source;
 	
-	public SellerDaoJDBC(Connection conn) {
-		this.conn = conn;
+	public SellerDaoJDBC(ConnectionSource source) {
+		this.source = source;
 	}
 	
 	@Override
 	public void insert(Seller obj) {
+		insert(obj, null);
+	}
+
+	@Override
+	public void insert(Seller obj, String writeKey) {
+		Connection conn = source.getConnection();
 		PreparedStatement st = null;
+		boolean withId = obj.getId() != null;
+		boolean withKey = writeKey != null;
 		try {
-			st = conn.prepareStatement(
-					"INSERT INTO seller "
-					+ "(Name, Email, BirthDate, BaseSalary, DepartmentId) "
-					+ "VALUES "
-					+ "(?, ?, ?, ?, ?)",
-					Statement.RETURN_GENERATED_KEYS);
+			String sql = withId ? (withKey ? INSERT_WITH_ID_AND_KEY : INSERT_WITH_ID) : (withKey ? INSERT_WITH_KEY : INSERT);
+			st = DB.prepare(conn, "SellerDao.insert", sql, Statement.RETURN_GENERATED_KEYS);
 			
 			st.setString(1, obj.getName());
 			st.setString(2, obj.getEmail());
 			st.setDate(3, new java.sql.Date(obj.getBirthDate().getTime()));
 			st.setDouble(4, obj.getBaseSalary());
 			st.setInt(5, obj.getDepartment().getId());
+			int i = 6;
+			if (withId) {
+				st.setInt(i++, obj.getId());
+			}
+			if (withKey) {
+				st.setString(i, writeKey);
+			}
 			
 			int rowsAffected = st.executeUpdate();
 			
 			if (rowsAffected > 0) {
-				ResultSet rs = st.getGeneratedKeys();
-				if (rs.next()) {
-					int id = rs.getInt(1);
-					obj.setId(id);
+				if (!withId) {
+					ResultSet rs = st.getGeneratedKeys();
+					if (rs.next()) {
+						int id = rs.getInt(1);
+						obj.setId(id);
+					}
+					DB.closeResultSet(rs);
 				}
-				DB.closeResultSet(rs);
+				obj.markClean();
 			}
 			else {
 				throw new DbException("Unexpected error! No rows affected!");
@@ -61,59 +123,141 @@ public class SellerDaoJDBC implements SellerDao {
 		}
 		finally {
 			DB.closeStatement(st);
+			source.release(conn);
 		}
 	}
 
 	@Override
-	public void update(Seller obj) {
+	public void insertAll(List<Seller> list) {
+		if (list.isEmpty()) {
+			return;
+		}
+		Connection conn = source.getConnection();
 		PreparedStatement st = null;
+		ResultSet rs = null;
+		// Todos com Id definido ou nenhum
+		boolean withId = list.get(0).getId() != null;
 		try {
-			st = conn.prepareStatement(
-					"UPDATE seller "
-					+ "SET Name = ?, Email = ?, BirthDate = ?, BaseSalary = ?, DepartmentId = ? "
-					+ "WHERE Id = ?");
+			st = DB.prepare(conn, "SellerDao.insertAll", withId ? INSERT_WITH_ID : INSERT,
+					Statement.RETURN_GENERATED_KEYS);
 			
-			st.setString(1, obj.getName());
-			st.setString(2, obj.getEmail());
-			st.setDate(3, new java.sql.Date(obj.getBirthDate().getTime()));
-			st.setDouble(4, obj.getBaseSalary());
-			st.setInt(5, obj.getDepartment().getId());
-			st.setInt(6, obj.getId());
+			for (Seller obj : list) {
+				st.setString(1, obj.getName());
+				st.setString(2, obj.getEmail());
+				st.setDate(3, new java.sql.Date(obj.getBirthDate().getTime()));
+				st.setDouble(4, obj.getBaseSalary());
+				st.setInt(5, obj.getDepartment().getId());
+				if (withId) {
+					st.setInt(6, obj.getId());
+				}
+				st.addBatch();
+			}
+			
+			st.executeBatch();
 			
-			st.executeUpdate();
+			if (withId) {
+				list.forEach(Seller::markClean);
+				return;
+			}
+			rs = st.getGeneratedKeys();
+			for (Seller obj : list) {
+				if (!rs.next()) {
+					break;
+				}
+				obj.setId(rs.getInt(1));
+				obj.markClean();
+			}
 		}
 		catch (SQLException e) {
 			throw new DbException(e.getMessage());
 		}
 		finally {
 			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
 		}
 	}
 
 	@Override
-	public void deleteById(Integer id) {
-		PreparedStatement st = null;
-		try {
-			st = conn.prepareStatement("DELETE FROM seller WHERE Id = ?");
-			
-			st.setInt(1, id);
-			
-			st.executeUpdate();
-		}
-		catch (SQLException e) {
-			throw new DbException(e.getMessage());
-		}
-		finally {
-			DB.closeStatement(st);
+	public SellerRow update(Seller obj) {
+		// Envia somente as colunas alteradas; se nada mudou, no vai ao banco
+		Set<String> dirty = obj.getDirtyFields();
+		if (dirty.isEmpty()) {
+			return null;
 		}
+		List<SellerRow> previous = inTransaction(conn -> {
+			List<SellerRow> rows = lockRows(conn, List.of(obj.getId()));
+			PreparedStatement st = null;
+			try {
+				StringJoiner columns = new StringJoiner(", ");
+				for (String field : dirty) {
+					columns.add(COLUMNS.get(field) + " = ?");
+				}
+				st = DB.prepare(conn, "SellerDao.update",
+						"UPDATE seller "
+						+ "SET " + columns + " "
+						+ "WHERE Id = ?");
+				
+				int i = 1;
+				for (String field : dirty) {
+					switch (field) {
+					case "name":
+						st.setString(i++, obj.getName());
+						break;
+					case "email":
+						st.setString(i++, obj.getEmail());
+						break;
+					case "birthDate":
+						st.setDate(i++, new java.sql.Date(obj.getBirthDate().getTime()));
+						break;
+					case "baseSalary":
+						st.setDouble(i++, obj.getBaseSalary());
+						break;
+					case "department":
+						st.setInt(i++, obj.getDepartment().getId());
+						break;
+					}
+				}
+				st.setInt(i, obj.getId());
+				
+				st.executeUpdate();
+			}
+			finally {
+				DB.closeStatement(st);
+			}
+			return rows;
+		});
+		obj.markClean();
+		return previous.isEmpty() ? null : previous.get(0);
+	}
+
+	@Override
+	public SellerRow deleteById(Integer id) {
+		List<SellerRow> previous = inTransaction(conn -> {
+			List<SellerRow> rows = lockRows(conn, List.of(id));
+			PreparedStatement st = null;
+			try {
+				st = DB.prepare(conn, "SellerDao.deleteById", "DELETE FROM seller WHERE Id = ?");
+				
+				st.setInt(1, id);
+				
+				st.executeUpdate();
+			}
+			finally {
+				DB.closeStatement(st);
+			}
+			return rows;
+		});
+		return previous.isEmpty() ? null : previous.get(0);
 	}
 
 	@Override
 	public Seller findById(Integer id) {
+		Connection conn = source.getReadConnection();
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
-			st = conn.prepareStatement(
+			st = DB.prepare(conn, "SellerDao.findById",
 					"SELECT seller.*,department.Name as DepName "
 					+ "FROM seller INNER JOIN department "
 					+ "ON seller.DepartmentId = department.Id "
@@ -134,9 +278,52 @@ public class SellerDaoJDBC implements SellerDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			source.release(conn);
 		}
 	}
 
+	@Override
+	public List<Seller> findByIds(Collection<Integer> ids) {
+		List<Seller> list = new ArrayList<>(ids.size());
+		Map<Integer, Department> map = new HashMap<>();
+		for (List<Integer> chunk : DB.chunks(ids)) {
+			Connection conn = source.getReadConnection();
+			PreparedStatement st = null;
+			ResultSet rs = null;
+			try {
+				st = DB.prepare(conn, "SellerDao.findByIds",
+						"SELECT seller.*,department.Name as DepName "
+						+ "FROM seller INNER JOIN department "
+						+ "ON seller.DepartmentId = department.Id "
+						+ "WHERE seller.Id IN (" + DB.placeholders(chunk.size()) + ")");
+				
+				int i = 1;
+				for (Integer id : chunk) {
+					st.setInt(i++, id);
+				}
+				
+				rs = st.executeQuery();
+				while (rs.next()) {
+					Department dep = map.get(rs.getInt("DepartmentId"));
+					if (dep == null) {
+						dep = instantiateDepartment(rs);
+						map.put(rs.getInt("DepartmentId"), dep);
+					}
+					list.add(instantiateSeller(rs, dep));
+				}
+			}
+			catch (SQLException e) {
+				throw new DbException(e.getMessage());
+			}
+			finally {
+				DB.closeStatement(st);
+				DB.closeResultSet(rs);
+				source.release(conn);
+			}
+		}
+		return list;
+	}
+
 	private Seller instantiateSeller(ResultSet rs, Department dep) throws SQLException {
 		Seller obj = new Seller();
 		obj.setId(rs.getInt("Id"));
@@ -146,6 +333,7 @@ public class SellerDaoJDBC implements SellerDao {
 		// obj.setBirthDate(rs.getDate("BirthDate"));
 		obj.setBirthDate(new java.util.Date(rs.getTimestamp("BirthDate").getTime()));
 		obj.setDepartment(dep);
+		obj.markClean();
 		return obj;
 	}
 
@@ -153,15 +341,17 @@ public class SellerDaoJDBC implements SellerDao {
 		Department dep = new Department();
 		dep.setId(rs.getInt("DepartmentId"));
 		dep.setName(rs.getString("DepName"));
+		dep.markClean();
 		return dep;
 	}
 
 	@Override
 	public List<Seller> findAll() {
+		Connection conn = source.getReadConnection();
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
-			st = conn.prepareStatement(
+			st = DB.prepare(conn, "SellerDao.findAll",
 					"SELECT seller.*,department.Name as DepName "
 					+ "FROM seller INNER JOIN department "
 					+ "ON seller.DepartmentId = department.Id "
@@ -192,15 +382,17 @@ public class SellerDaoJDBC implements SellerDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			source.release(conn);
 		}
 	}
 
 	@Override
 	public List<Seller> findByDepartment(Department department) {
+		Connection conn = source.getReadConnection();
 		PreparedStatement st = null;
 		ResultSet rs = null;
 		try {
-			st = conn.prepareStatement(
+			st = DB.prepare(conn, "SellerDao.findByDepartment",
 					"SELECT seller.*,department.Name as DepName "
 					+ "FROM seller INNER JOIN department "
 					+ "ON seller.DepartmentId = department.Id "
@@ -234,6 +426,353 @@ public class SellerDaoJDBC implements SellerDao {
 		finally {
 			DB.closeStatement(st);
 			DB.closeResultSet(rs);
+			source.release(conn);
+		}
+	}
+
+	@Override
+	public List<SellerRow> findAllRows() {
+		Connection conn = source.getReadConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "SellerDao.findAllRows", ROW_COLUMNS + "ORDER BY Name");
+			
+			rs = st.executeQuery();
+			return instantiateRows(rs);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
+		}
+	}
+
+	@Override
+	public List<SellerRow> findRowsByDepartment(Department department) {
+		Connection conn = source.getReadConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "SellerDao.findRowsByDepartment",
+					ROW_COLUMNS + "WHERE DepartmentId = ? ORDER BY Name");
+			
+			st.setInt(1, department.getId());
+			
+			rs = st.executeQuery();
+			return instantiateRows(rs);
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
+		}
+	}
+
+	@Override
+	public List<SellerRow> findRowsByIds(Collection<Integer> ids) {
+		List<SellerRow> list = new ArrayList<>(ids.size());
+		for (List<Integer> chunk : DB.chunks(ids)) {
+			Connection conn = source.getReadConnection();
+			PreparedStatement st = null;
+			ResultSet rs = null;
+			try {
+				st = DB.prepare(conn, "SellerDao.findRowsByIds",
+						ROW_COLUMNS + "WHERE seller.Id IN (" + DB.placeholders(chunk.size()) + ")");
+				
+				int i = 1;
+				for (Integer id : chunk) {
+					st.setInt(i++, id);
+				}
+				
+				rs = st.executeQuery();
+				list.addAll(instantiateRows(rs));
+			}
+			catch (SQLException e) {
+				throw new DbException(e.getMessage());
+			}
+			finally {
+				DB.closeStatement(st);
+				DB.closeResultSet(rs);
+				source.release(conn);
+			}
+		}
+		return list;
+	}
+
+	private List<SellerRow> instantiateRows(ResultSet rs) throws SQLException {
+		List<SellerRow> list = new ArrayList<>();
+		Map<Integer, Department> map = new HashMap<>();
+		StringPool names = new StringPool();
+		
+		while (rs.next()) {
+			
+			Department dep = map.get(rs.getInt("DepartmentId"));
+			
+			// As linhas s exibem o departamento: sem o snapshot de instantiateDepartment
+			if (dep == null) {
+				dep = new Department(rs.getInt("DepartmentId"), names.get(rs.getString("DepName")));
+				map.put(rs.getInt("DepartmentId"), dep);
+			}
+			
+			list.add(instantiateRow(rs, dep, names));
+		}
+		return list;
+	}
+
+	private SellerRow instantiateRow(ResultSet rs, Department dep, StringPool names) throws SQLException {
+		// getObject: um salrio nulo continua ausente na linha em vez de virar 0.0
+		Double baseSalary = rs.getObject("BaseSalary", Double.class);
+		return new SellerRow(rs.getInt("Id"), names.get(rs.getString("Name")), rs.getString("Email"),
+				SellerRow.toEpochDay(rs.getTimestamp("BirthDate")), SellerRow.toSalary(baseSalary), dep);
+	}
+
+	/* Linhas como esto no banco principal, travadas at o fim da transao da gravao: so os valores
+	   anteriores que vo nos eventos. S a tabela seller  travada (sem o JOIN), e o departamento vem
+	   apenas com o Id */
+	private List<SellerRow> lockRows(Connection conn, Collection<Integer> ids) throws SQLException {
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "SellerDao.lockRows",
+					"SELECT Id, Name, Email, BirthDate, BaseSalary, DepartmentId "
+					+ "FROM seller "
+					+ "WHERE Id IN (" + DB.placeholders(ids.size()) + ") FOR UPDATE");
+			
+			int i = 1;
+			for (Integer id : ids) {
+				st.setInt(i++, id);
+			}
+			
+			rs = st.executeQuery();
+			List<SellerRow> list = new ArrayList<>();
+			Map<Integer, Department> map = new HashMap<>();
+			StringPool names = new StringPool();
+			while (rs.next()) {
+				Department dep = map.computeIfAbsent(rs.getInt("DepartmentId"), id -> new Department(id, null));
+				list.add(instantiateRow(rs, dep, names));
+			}
+			return list;
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+		}
+	}
+
+	// Blocos de in.chunkSize ids, todos na mesma transao: ou todos so excludos ou nenhum
+	@Override
+	public List<SellerRow> deleteByIds(Collection<Integer> ids) {
+		if (ids.isEmpty()) {
+			return List.of();
+		}
+		return inTransaction(conn -> {
+			List<SellerRow> previous = new ArrayList<>(ids.size());
+			for (List<Integer> chunk : DB.chunks(ids)) {
+				previous.addAll(lockRows(conn, chunk));
+				PreparedStatement st = null;
+				try {
+					st = DB.prepare(conn, "SellerDao.deleteByIds",
+							"DELETE FROM seller WHERE Id IN (" + DB.placeholders(chunk.size()) + ")");
+					
+					int i = 1;
+					for (Integer id : chunk) {
+						st.setInt(i++, id);
+					}
+					
+					st.executeUpdate();
+				}
+				finally {
+					DB.closeStatement(st);
+				}
+			}
+			return previous;
+		});
+	}
+
+	@Override
+	public List<SellerRow> updateDepartment(Collection<Integer> ids, Department department) {
+		if (ids.isEmpty()) {
+			return List.of();
+		}
+		return inTransaction(conn -> {
+			List<SellerRow> previous = new ArrayList<>(ids.size());
+			for (List<Integer> chunk : DB.chunks(ids)) {
+				previous.addAll(lockRows(conn, chunk));
+				PreparedStatement st = null;
+				try {
+					st = DB.prepare(conn, "SellerDao.updateDepartment",
+							"UPDATE seller "
+							+ "SET DepartmentId = ? "
+							+ "WHERE Id IN (" + DB.placeholders(chunk.size()) + ")");
+					
+					st.setInt(1, department.getId());
+					int i = 2;
+					for (Integer id : chunk) {
+						st.setInt(i++, id);
+					}
+					
+					st.executeUpdate();
+				}
+				finally {
+					DB.closeStatement(st);
+				}
+			}
+			return previous;
+		});
+	}
+
+	/* Executa o trabalho em uma transao. Na conexo compartilhada do desktop as transaes das vrias
+	   threads so feitas uma de cada vez, para que uma no faa commit ou rollback do trabalho da outra */
+	private <T> T inTransaction(Work<T> work) {
+		Connection conn = source.getConnection();
+		synchronized (conn) {
+			try {
+				conn.setAutoCommit(false);
+				T result = work.run(conn);
+				conn.commit();
+				return result;
+			}
+			catch (SQLException e) {
+				rollback(conn);
+				throw new DbException(e.getMessage());
+			}
+			catch (RuntimeException e) {
+				rollback(conn);
+				throw e;
+			}
+			finally {
+				restoreAutoCommit(conn);
+				source.release(conn);
+			}
+		}
+	}
+
+	private static void rollback(Connection conn) {
+		try {
+			conn.rollback();
+		}
+		catch (SQLException e) {
+			// mantm a exceo original
+		}
+	}
+
+	// Chamado no finally: uma falha aqui no pode esconder a exceo original
+	private static void restoreAutoCommit(Connection conn) {
+		try {
+			conn.setAutoCommit(true);
+		}
+		catch (SQLException e) {
+			// a conexo quebrada  descartada pela origem
+		}
+	}
+
+	private interface Work<T> {
+		T run(Connection conn) throws SQLException;
+	}
+
+	@Override
+	public TableStamp findStamp() {
+		Connection conn = source.getReadConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "SellerDao.findStamp",
+					"SELECT COUNT(*) AS Total, MAX(Id) AS MaxId, MAX(UpdatedAt) AS LastUpdate FROM seller");
+			
+			rs = st.executeQuery();
+			rs.next();
+			Timestamp lastUpdate = rs.getTimestamp("LastUpdate");
+			return new TableStamp(rs.getLong("Total"), rs.getInt("MaxId"), lastUpdate == null ? 0 : lastUpdate.getTime());
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
+		}
+	}
+
+	// No banco principal: logo depois de uma queda a rplica pode ainda no ter a incluso
+	@Override
+	public Integer findIdByWriteKey(String writeKey) {
+		Connection conn = source.getConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "SellerDao.findIdByWriteKey", "SELECT Id FROM seller WHERE WriteKey = ?");
+			st.setString(1, writeKey);
+			rs = st.executeQuery();
+			return rs.next() ? rs.getInt("Id") : null;
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
+		}
+	}
+
+	// Consulta pelo ndice uq_seller_email; excludeId  o registro sendo editado (null para um novo)
+	@Override
+	public boolean existsByEmail(String email, Integer excludeId) {
+		Connection conn = source.getReadConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "SellerDao.existsByEmail",
+					"SELECT 1 FROM seller WHERE Email = ? AND Id <> ? LIMIT 1");
+			st.setString(1, email);
+			st.setInt(2, excludeId == null ? 0 : excludeId);
+			rs = st.executeQuery();
+			return rs.next();
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
+		}
+	}
+
+	// Uma nica consulta agregada para todos os departamentos
+	@Override
+	public List<DepartmentStats> findDepartmentStats() {
+		Connection conn = source.getReadConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "SellerDao.findDepartmentStats",
+					"SELECT DepartmentId, COUNT(*) AS Headcount, SUM(BaseSalary) AS Payroll "
+					+ "FROM seller "
+					+ "GROUP BY DepartmentId");
+			
+			rs = st.executeQuery();
+			List<DepartmentStats> list = new ArrayList<>();
+			while (rs.next()) {
+				list.add(new DepartmentStats(rs.getInt("DepartmentId"), rs.getInt("Headcount"), rs.getDouble("Payroll")));
+			}
+			return list;
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
 		}
 	}
 }
@@ -0,0 +1,225 @@
+package model.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import db.DbException;
+import db.DbIntegrityException;
+import model.dao.SellerDao;
+import model.dto.DepartmentStats;
+import model.dto.SellerRow;
+import model.dto.StringPool;
+import model.entities.Department;
+import model.entities.Seller;
+import model.entities.TableStamp;
+
+public class SellerDaoMemory implements SellerDao {
+
+	private MemoryStore store;
+
+	public SellerDaoMemory(MemoryStore store) {
+		this.store = store;
+	}
+
+	@Override
+	public void insert(Seller obj) {
+		checkDepartment(obj.getDepartment());
+		obj.setId(store.sellerSequence.incrementAndGet());
+		store.sellers.put(obj.getId(), copy(obj));
+		obj.markClean();
+	}
+
+	@Override
+	public synchronized void insert(Seller obj, String writeKey) {
+		if (writeKey == null) {
+			insert(obj);
+			return;
+		}
+		if (store.sellerWriteKeys.containsKey(writeKey)) {
+			throw new DbIntegrityException("Write key already used: " + writeKey);
+		}
+		insert(obj);
+		store.sellerWriteKeys.put(writeKey, obj.getId());
+	}
+
+	@Override
+	public Integer findIdByWriteKey(String writeKey) {
+		Integer id = store.sellerWriteKeys.get(writeKey);
+		return id != null && store.sellers.containsKey(id) ? id : null;
+	}
+
+	@Override
+	public void insertAll(List<Seller> list) {
+		for (Seller obj : list) {
+			insert(obj);
+		}
+	}
+
+	@Override
+	public SellerRow update(Seller obj) {
+		if (obj.getDirtyFields().isEmpty()) {
+			return null;
+		}
+		checkDepartment(obj.getDepartment());
+		Seller previous = store.sellers.replace(obj.getId(), copy(obj));
+		if (previous == null) {
+			throw new DbException("Seller not found: " + obj.getId());
+		}
+		store.sellerUpdates.incrementAndGet();
+		obj.markClean();
+		return toRow(previous);
+	}
+
+	@Override
+	public SellerRow deleteById(Integer id) {
+		Seller previous = store.sellers.remove(id);
+		store.sellerHashes.remove(id);
+		return previous == null ? null : toRow(previous);
+	}
+
+	@Override
+	public Seller findById(Integer id) {
+		Seller obj = store.sellers.get(id);
+		return obj == null ? null : read(obj);
+	}
+
+	@Override
+	public List<Seller> findByIds(Collection<Integer> ids) {
+		return ids.stream().distinct()
+				.map(store.sellers::get)
+				.filter(obj -> obj != null)
+				.map(this::read)
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public List<Seller> findAll() {
+		return sorted(store.sellers.values().stream());
+	}
+
+	@Override
+	public List<Seller> findByDepartment(Department department) {
+		return sorted(store.sellers.values().stream()
+				.filter(obj -> obj.getDepartment().getId().equals(department.getId())));
+	}
+
+	@Override
+	public List<SellerRow> findAllRows() {
+		return toRows(findAll());
+	}
+
+	@Override
+	public List<SellerRow> findRowsByDepartment(Department department) {
+		return toRows(findByDepartment(department));
+	}
+
+	@Override
+	public List<SellerRow> findRowsByIds(Collection<Integer> ids) {
+		return toRows(findByIds(ids));
+	}
+
+	// Cada Seller lido tem a sua cpia do departamento; as linhas compartilham uma por Id, como no JDBC
+	private static List<SellerRow> toRows(List<Seller> list) {
+		Map<Integer, Department> departments = new HashMap<>();
+		StringPool names = new StringPool();
+		return list.stream()
+				.map(obj -> toRow(obj, names.get(obj.getName()), departments.computeIfAbsent(
+						obj.getDepartment().getId(), id -> new Department(id, names.get(obj.getDepartment().getName())))))
+				.collect(Collectors.toList());
+	}
+
+	private static SellerRow toRow(Seller obj) {
+		return toRow(obj, obj.getName(), obj.getDepartment());
+	}
+
+	private static SellerRow toRow(Seller obj, String name, Department department) {
+		return new SellerRow(obj.getId(), name, obj.getEmail(), obj.getBirthDate(), obj.getBaseSalary(), department);
+	}
+
+	@Override
+	public List<SellerRow> deleteByIds(Collection<Integer> ids) {
+		List<SellerRow> previous = new ArrayList<>();
+		for (Integer id : ids) {
+			Seller obj = store.sellers.remove(id);
+			store.sellerHashes.remove(id);
+			if (obj != null) {
+				previous.add(toRow(obj));
+			}
+		}
+		return previous;
+	}
+
+	@Override
+	public List<SellerRow> updateDepartment(Collection<Integer> ids, Department department) {
+		checkDepartment(department);
+		List<SellerRow> previous = new ArrayList<>();
+		for (Integer id : ids) {
+			store.sellers.computeIfPresent(id, (key, obj) -> {
+				previous.add(toRow(obj));
+				Seller changed = copy(obj);
+				changed.setDepartment(DepartmentDaoMemory.copy(department));
+				return changed;
+			});
+		}
+		store.sellerUpdates.incrementAndGet();
+		return previous;
+	}
+
+	@Override
+	public TableStamp findStamp() {
+		return TableStamp.of(store.sellers.keySet(), store.sellerUpdates.get());
+	}
+
+	@Override
+	public boolean existsByEmail(String email, Integer excludeId) {
+		return store.sellers.values().stream()
+				.anyMatch(obj -> obj.getEmail().equalsIgnoreCase(email) && !obj.getId().equals(excludeId));
+	}
+
+	@Override
+	public List<DepartmentStats> findDepartmentStats() {
+		Map<Integer, DepartmentStats> stats = new LinkedHashMap<>();
+		for (Seller obj : store.sellers.values()) {
+			int departmentId = obj.getDepartment().getId();
+			stats.put(departmentId, stats.getOrDefault(departmentId, new DepartmentStats(departmentId, 0, 0.0))
+					.plus(1, obj.getBaseSalary()));
+		}
+		return List.copyOf(stats.values());
+	}
+
+	private List<Seller> sorted(Stream<Seller> stream) {
+		return stream.map(this::read)
+				.sorted(Comparator.comparing(Seller::getName))
+				.collect(Collectors.toList());
+	}
+
+	private void checkDepartment(Department department) {
+		if (department == null || !store.departments.containsKey(department.getId())) {
+			throw new DbException("Department not found: " + (department == null ? null : department.getId()));
+		}
+	}
+
+	// Devolve uma cpia com o nome atual do departamento, como faria o JOIN do JDBC
+	private Seller read(Seller obj) {
+		Seller result = copy(obj);
+		Department dep = store.departments.get(obj.getDepartment().getId());
+		if (dep != null) {
+			result.setDepartment(DepartmentDaoMemory.copy(dep));
+		}
+		result.markClean();
+		return result;
+	}
+
+	private static Seller copy(Seller obj) {
+		return new Seller(obj.getId(), obj.getName(), obj.getEmail(), new Date(obj.getBirthDate().getTime()),
+				obj.getBaseSalary(), DepartmentDaoMemory.copy(obj.getDepartment()));
+	}
+}
@@ -0,0 +1,167 @@
+package model.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import db.ConnectionSource;
+import db.DB;
+import db.DbException;
+import db.Migrations;
+import model.dao.SellerSyncDao;
+import model.entities.Seller;
+
+public class SellerSyncDaoJDBC implements SellerSyncDao {
+
+	private ConnectionSource source;
+
+	public SellerSyncDaoJDBC(ConnectionSource source) {
+		this.source = source;
+	}
+
+	@Override
+	public void createSchema() {
+		Connection conn = source.getConnection();
+		try {
+			Migrations.migrate(conn);
+		}
+		finally {
+			source.release(conn);
+		}
+	}
+
+	// Vendedores sem hash gravado (criados pela aplicao) voltam com hash 0 e so sempre reenviados
+	@Override
+	public Map<Integer, Long> findHashes() {
+		Connection conn = source.getConnection();
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		try {
+			st = DB.prepare(conn, "SellerSyncDao.findHashes",
+					"SELECT seller.Id, seller_sync.ContentHash "
+					+ "FROM seller LEFT JOIN seller_sync "
+					+ "ON seller_sync.SellerId = seller.Id");
+			
+			rs = st.executeQuery();
+			Map<Integer, Long> map = new HashMap<>();
+			while (rs.next()) {
+				map.put(rs.getInt(1), rs.getLong(2));
+			}
+			return map;
+		}
+		catch (SQLException e) {
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeResultSet(rs);
+			source.release(conn);
+		}
+	}
+
+	@Override
+	public void upsertAll(List<Seller> list, List<Long> hashes) {
+		if (list.isEmpty()) {
+			return;
+		}
+		Connection conn = source.getConnection();
+		PreparedStatement st = null;
+		PreparedStatement stHash = null;
+		try {
+			conn.setAutoCommit(false);
+			st = DB.prepare(conn, "SellerSyncDao.upsertAll",
+					"INSERT INTO seller "
+					+ "(Id, Name, Email, BirthDate, BaseSalary, DepartmentId) "
+					+ "VALUES "
+					+ "(?, ?, ?, ?, ?, ?) "
+					+ "ON DUPLICATE KEY UPDATE "
+					+ "Name = VALUES(Name), Email = VALUES(Email), BirthDate = VALUES(BirthDate), "
+					+ "BaseSalary = VALUES(BaseSalary), DepartmentId = VALUES(DepartmentId)");
+			stHash = DB.prepare(conn, "SellerSyncDao.upsertAll",
+					"INSERT INTO seller_sync "
+					+ "(SellerId, ContentHash) "
+					+ "VALUES "
+					+ "(?, ?) "
+					+ "ON DUPLICATE KEY UPDATE ContentHash = VALUES(ContentHash)");
+			
+			for (int i = 0; i < list.size(); i++) {
+				Seller obj = list.get(i);
+				st.setInt(1, obj.getId());
+				st.setString(2, obj.getName());
+				st.setString(3, obj.getEmail());
+				st.setDate(4, new java.sql.Date(obj.getBirthDate().getTime()));
+				st.setDouble(5, obj.getBaseSalary());
+				st.setInt(6, obj.getDepartment().getId());
+				st.addBatch();
+				
+				stHash.setInt(1, obj.getId());
+				stHash.setLong(2, hashes.get(i));
+				stHash.addBatch();
+			}
+			
+			st.executeBatch();
+			stHash.executeBatch();
+			conn.commit();
+		}
+		catch (SQLException e) {
+			rollback(conn);
+			throw new DbException(e.getMessage());
+		}
+		finally {
+			DB.closeStatement(st);
+			DB.closeStatement(stHash);
+			restoreAutoCommit(conn);
+			source.release(conn);
+		}
+	}
+
+	@Override
+	public void deleteByIds(Collection<Integer> ids) {
+		for (List<Integer> chunk : DB.chunks(ids)) {
+			Connection conn = source.getConnection();
+			PreparedStatement st = null;
+			try {
+				st = DB.prepare(conn, "SellerSyncDao.deleteByIds",
+						"DELETE FROM seller WHERE Id IN (" + DB.placeholders(chunk.size()) + ")");
+				
+				int i = 1;
+				for (Integer id : chunk) {
+					st.setInt(i++, id);
+				}
+				
+				st.executeUpdate();
+			}
+			catch (SQLException e) {
+				throw new DbException(e.getMessage());
+			}
+			finally {
+				DB.closeStatement(st);
+				source.release(conn);
+			}
+		}
+	}
+
+	private static void rollback(Connection conn) {
+		try {
+			conn.rollback();
+		}
+		catch (SQLException e) {
+			// mantm a exceo original
+		}
+	}
+
+	// Chamado no finally: uma falha aqui no pode esconder a exceo original
+	private static void restoreAutoCommit(Connection conn) {
+		try {
+			conn.setAutoCommit(true);
+		}
+		catch (SQLException e) {
+			// a conexo quebrada  descartada pela origem
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package model.dao.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import db.DbException;
+import model.dao.SellerSyncDao;
+import model.entities.Department;
+import model.entities.Seller;
+
+public class SellerSyncDaoMemory implements SellerSyncDao {
+
+	private MemoryStore store;
+
+	public SellerSyncDaoMemory(MemoryStore store) {
+		this.store = store;
+	}
+
+	@Override
+	public void createSchema() {
+	}
+
+	@Override
+	public Map<Integer, Long> findHashes() {
+		Map<Integer, Long> map = new HashMap<>();
+		for (Integer id : store.sellers.keySet()) {
+			map.put(id, store.sellerHashes.getOrDefault(id, 0L));
+		}
+		return map;
+	}
+
+	@Override
+	public void upsertAll(List<Seller> list, List<Long> hashes) {
+		for (int i = 0; i < list.size(); i++) {
+			Seller obj = list.get(i);
+			Department dep = store.departments.get(obj.getDepartment().getId());
+			if (dep == null) {
+				throw new DbException("Department not found: " + obj.getDepartment().getId());
+			}
+			store.sellers.put(obj.getId(), new Seller(obj.getId(), obj.getName(), obj.getEmail(),
+					obj.getBirthDate(), obj.getBaseSalary(), DepartmentDaoMemory.copy(dep)));
+			store.sellerHashes.put(obj.getId(), hashes.get(i));
+			store.sellerSequence.accumulateAndGet(obj.getId(), Math::max);
+		}
+		store.sellerUpdates.incrementAndGet();
+	}
+
+	@Override
+	public void deleteByIds(Collection<Integer> ids) {
+		store.sellers.keySet().removeAll(ids);
+		store.sellerHashes.keySet().removeAll(ids);
+	}
+}
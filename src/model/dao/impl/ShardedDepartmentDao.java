@@ -0,0 +1,89 @@
+package model.dao.impl;
+
+import java.util.Collection;
+import java.util.List;
+
+import db.DbIntegrityException;
+import model.dao.DepartmentDao;
+import model.dao.SellerDao;
+import model.entities.Department;
+import model.entities.TableStamp;
+
+/*
+Departamentos com os vendedores divididos em shards: a tabela  copiada em todos os shards, para a
+chave estrangeira e a juno das listas de vendedores. As leituras usam o shard 0; as gravaes vo
+para todos, e o Id gerado no shard 0  repetido nos demais.
+*/
+public class ShardedDepartmentDao implements DepartmentDao {
+
+	private final List<DepartmentDao> shards;
+	private final SellerDao sellers;
+
+	public ShardedDepartmentDao(List<DepartmentDao> shards, SellerDao sellers) {
+		this.shards = shards;
+		this.sellers = sellers;
+	}
+
+	@Override
+	public void insert(Department obj) {
+		shards.get(0).insert(obj);
+		for (int i = 1; i < shards.size(); i++) {
+			try {
+				shards.get(i).insert(new Department(obj.getId(), obj.getName()));
+			}
+			catch (RuntimeException e) {
+				// Desfaz nos shards j gravados para no deixar o departamento pela metade
+				for (int j = i - 1; j >= 0; j--) {
+					shards.get(j).deleteById(obj.getId());
+				}
+				obj.setId(null);
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	public void update(Department obj) {
+		// Cada shard recebe uma cpia: o update de um shard marca o objeto como gravado
+		for (DepartmentDao shard : shards) {
+			shard.update(obj.copy());
+		}
+		obj.markClean();
+	}
+
+	// Verifica antes em todos os shards, para no apagar de alguns e parar na chave estrangeira de outro
+	@Override
+	public void deleteById(Integer id) {
+		if (!sellers.findRowsByDepartment(new Department(id, null)).isEmpty()) {
+			throw new DbIntegrityException("Cannot delete department " + id + ": it still has sellers");
+		}
+		for (DepartmentDao shard : shards) {
+			shard.deleteById(id);
+		}
+	}
+
+	@Override
+	public Department findById(Integer id) {
+		return shards.get(0).findById(id);
+	}
+
+	@Override
+	public List<Department> findByIds(Collection<Integer> ids) {
+		return shards.get(0).findByIds(ids);
+	}
+
+	@Override
+	public List<Department> findAll() {
+		return shards.get(0).findAll();
+	}
+
+	@Override
+	public TableStamp findStamp() {
+		return shards.get(0).findStamp();
+	}
+
+	@Override
+	public boolean existsByName(String name, Integer excludeId) {
+		return shards.get(0).existsByName(name, excludeId);
+	}
+}
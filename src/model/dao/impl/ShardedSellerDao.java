@@ -0,0 +1,407 @@
+package model.dao.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import db.Cancellation;
+import db.DbIntegrityException;
+import db.IdSequence;
+import db.ShardMap;
+import model.dao.SellerDao;
+import model.dto.DepartmentStats;
+import model.dto.SellerRow;
+import model.entities.Department;
+import model.entities.Seller;
+import model.entities.TableStamp;
+
+/*
+Vendedores divididos entre vrios bancos (ShardMap, configurado em shard.urls).
+- shard.key=id: findById, findByIds e as gravaes vo direto ao shard Id % shards
+- shard.key=department: findByDepartment e findRowsByDepartment vo direto ao shard do departamento;
+  trocar o vendedor de departamento o move para o shard do novo departamento
+- as demais leituras consultam todos os shards em paralelo; as listas, j ordenadas por Name em cada
+  shard, so intercaladas (merge de k listas) em vez de reordenadas
+- os ids vm de uma sequncia no shard 0 (IdSequence), reservados em blocos de shard.idBlockSize:
+  duas instncias do programa nunca geram o mesmo id
+- o ndice nico de Email vale s dentro de cada shard; insert, insertAll e update consultam os demais
+  shards antes de gravar, mas duas gravaes simultneas do mesmo email em shards diferentes ainda podem
+  passar as duas
+*/
+public class ShardedSellerDao implements SellerDao {
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "shard");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final ShardMap map;
+	private final List<SellerDao> shards;
+	private final Comparator<Seller> sellerOrder;
+	private final Comparator<SellerRow> rowOrder;
+
+	// Shard dos vendedores novos com shard.key=id (rodzio)
+	private final AtomicInteger nextShard = new AtomicInteger();
+	private final IdSequence sequence;
+	private final int blockSize;
+	// Ids reservados e ainda no usados, por shard (shard.key=department: todos na fila 0)
+	private final List<Deque<Integer>> freeIds = new ArrayList<>();
+
+	// nameOrder: a mesma ordem do ORDER BY Name dos bancos (collation), para que o merge fique ordenado
+	public ShardedSellerDao(ShardMap map, List<SellerDao> shards, IdSequence sequence, int blockSize,
+			Comparator<String> nameOrder) {
+		this.map = map;
+		this.shards = shards;
+		this.sequence = sequence;
+		this.blockSize = Math.max(blockSize, map.size());
+		for (int i = 0; i < map.size(); i++) {
+			freeIds.add(new ArrayDeque<>());
+		}
+		this.sellerOrder = Comparator.comparing(Seller::getName, nameOrder);
+		this.rowOrder = Comparator.comparing(SellerRow::getName, nameOrder);
+	}
+
+	@Override
+	public void insert(Seller obj) {
+		insert(obj, null);
+	}
+
+	@Override
+	public void insert(Seller obj, String writeKey) {
+		requireUniqueEmail(obj.getEmail(), null);
+		int shard = newShard(obj);
+		obj.setId(nextId(shard));
+		try {
+			shards.get(shard).insert(obj, writeKey);
+		}
+		catch (RuntimeException e) {
+			obj.setId(null);
+			throw e;
+		}
+	}
+
+	@Override
+	public void insertAll(List<Seller> list) {
+		Set<String> emails = new HashSet<>();
+		for (Seller obj : list) {
+			if (!emails.add(obj.getEmail().toLowerCase())) {
+				throw new DbIntegrityException("Duplicate email in batch: " + obj.getEmail());
+			}
+			requireUniqueEmail(obj.getEmail(), null);
+		}
+		List<List<Seller>> groups = groups();
+		for (Seller obj : list) {
+			int shard = newShard(obj);
+			obj.setId(nextId(shard));
+			groups.get(shard).add(obj);
+		}
+		scatter(i -> {
+			try {
+				shards.get(i).insertAll(groups.get(i));
+			}
+			catch (RuntimeException e) {
+				groups.get(i).forEach(obj -> obj.setId(null));
+				throw e;
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public SellerRow update(Seller obj) {
+		if (obj.getDirtyFields().contains("email")) {
+			requireUniqueEmail(obj.getEmail(), obj.getId());
+		}
+		if (!map.isByDepartment()) {
+			return shards.get(map.byId(obj.getId())).update(obj);
+		}
+		int target = map.byDepartment(obj.getDepartment().getId());
+		Seller snapshot = obj.getSnapshot();
+		int current = snapshot != null && snapshot.getDepartment() != null
+				? map.byDepartment(snapshot.getDepartment().getId())
+				: locate(obj.getId());
+		if (current == target || current < 0) {
+			return shards.get(target).update(obj);
+		}
+		List<Seller> moved = new ArrayList<>();
+		moved.add(obj.withSnapshot(null));
+		List<SellerRow> previous = move(moved, current, target);
+		obj.markClean();
+		return previous.isEmpty() ? null : previous.get(0);
+	}
+
+	@Override
+	public SellerRow deleteById(Integer id) {
+		if (!map.isByDepartment()) {
+			return shards.get(map.byId(id)).deleteById(id);
+		}
+		for (SellerRow row : scatter(i -> shards.get(i).deleteById(id))) {
+			if (row != null) {
+				return row;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Seller findById(Integer id) {
+		if (!map.isByDepartment()) {
+			return shards.get(map.byId(id)).findById(id);
+		}
+		for (Seller obj : scatter(i -> shards.get(i).findById(id))) {
+			if (obj != null) {
+				return obj;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public List<Seller> findByIds(Collection<Integer> ids) {
+		List<List<Integer>> groups = groupIds(ids);
+		return scatter(i -> groups.get(i).isEmpty() ? new ArrayList<Seller>() : shards.get(i).findByIds(groups.get(i)))
+				.stream().flatMap(List::stream).collect(Collectors.toList());
+	}
+
+	@Override
+	public List<Seller> findAll() {
+		return merge(scatter(i -> shards.get(i).findAll()), sellerOrder);
+	}
+
+	@Override
+	public List<Seller> findByDepartment(Department department) {
+		if (map.isByDepartment()) {
+			return shards.get(map.byDepartment(department.getId())).findByDepartment(department);
+		}
+		return merge(scatter(i -> shards.get(i).findByDepartment(department)), sellerOrder);
+	}
+
+	@Override
+	public List<SellerRow> findAllRows() {
+		return merge(scatter(i -> shards.get(i).findAllRows()), rowOrder);
+	}
+
+	@Override
+	public List<SellerRow> findRowsByDepartment(Department department) {
+		if (map.isByDepartment()) {
+			return shards.get(map.byDepartment(department.getId())).findRowsByDepartment(department);
+		}
+		return merge(scatter(i -> shards.get(i).findRowsByDepartment(department)), rowOrder);
+	}
+
+	@Override
+	public List<SellerRow> findRowsByIds(Collection<Integer> ids) {
+		List<List<Integer>> groups = groupIds(ids);
+		return scatter(i -> groups.get(i).isEmpty() ? new ArrayList<SellerRow>() : shards.get(i).findRowsByIds(groups.get(i)))
+				.stream().flatMap(List::stream).collect(Collectors.toList());
+	}
+
+	@Override
+	public List<SellerRow> deleteByIds(Collection<Integer> ids) {
+		List<List<Integer>> groups = groupIds(ids);
+		return scatter(i -> shards.get(i).deleteByIds(groups.get(i)))
+				.stream().flatMap(List::stream).collect(Collectors.toList());
+	}
+
+	@Override
+	public List<SellerRow> updateDepartment(Collection<Integer> ids, Department department) {
+		if (!map.isByDepartment()) {
+			List<List<Integer>> groups = groupIds(ids);
+			return scatter(i -> shards.get(i).updateDepartment(groups.get(i), department))
+					.stream().flatMap(List::stream).collect(Collectors.toList());
+		}
+		// Os vendedores que esto em outro shard mudam de banco junto com o departamento
+		int target = map.byDepartment(department.getId());
+		List<List<Seller>> found = scatter(i -> shards.get(i).findByIds(ids));
+		List<SellerRow> previous = new ArrayList<>();
+		for (int i = 0; i < found.size(); i++) {
+			List<Seller> list = found.get(i);
+			if (i == target) {
+				previous.addAll(shards.get(i).updateDepartment(
+						list.stream().map(Seller::getId).collect(Collectors.toList()), department));
+			}
+			else if (!list.isEmpty()) {
+				List<Seller> moved = new ArrayList<>();
+				for (Seller obj : list) {
+					Seller copy = obj.withSnapshot(null);
+					copy.setDepartment(department);
+					moved.add(copy);
+				}
+				previous.addAll(move(moved, i, target));
+			}
+		}
+		return previous;
+	}
+
+	@Override
+	public TableStamp findStamp() {
+		long rows = 0;
+		int maxId = 0;
+		long lastUpdate = 0;
+		for (TableStamp stamp : scatter(i -> shards.get(i).findStamp())) {
+			rows += stamp.getRowCount();
+			maxId = Math.max(maxId, stamp.getMaxId());
+			lastUpdate = Math.max(lastUpdate, stamp.getLastUpdate());
+		}
+		return new TableStamp(rows, maxId, lastUpdate);
+	}
+
+	@Override
+	public Integer findIdByWriteKey(String writeKey) {
+		for (Integer id : scatter(i -> shards.get(i).findIdByWriteKey(writeKey))) {
+			if (id != null) {
+				return id;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean existsByEmail(String email, Integer excludeId) {
+		return scatter(i -> shards.get(i).existsByEmail(email, excludeId)).contains(Boolean.TRUE);
+	}
+
+	// Com shard.key=id um departamento tem vendedores em vrios shards: os totais so somados
+	@Override
+	public List<DepartmentStats> findDepartmentStats() {
+		Map<Integer, DepartmentStats> stats = new LinkedHashMap<>();
+		for (List<DepartmentStats> list : scatter(i -> shards.get(i).findDepartmentStats())) {
+			for (DepartmentStats item : list) {
+				stats.merge(item.getDepartmentId(), item, (a, b) -> new DepartmentStats(a.getDepartmentId(),
+						a.getHeadcount() + b.getHeadcount(), a.getPayroll() + b.getPayroll()));
+			}
+		}
+		return new ArrayList<>(stats.values());
+	}
+
+	private int newShard(Seller obj) {
+		return map.isByDepartment()
+				? map.byDepartment(obj.getDepartment().getId())
+				: Math.floorMod(nextShard.getAndIncrement(), map.size());
+	}
+
+	// Cada shard s tem a sua parte do ndice nico: os demais so consultados antes de gravar
+	private void requireUniqueEmail(String email, Integer excludeId) {
+		if (email != null && existsByEmail(email, excludeId)) {
+			throw new DbIntegrityException("Email already in use: " + email);
+		}
+	}
+
+	// Com shard.key=id o Id escolhido tambm precisa apontar para o shard: cada bloco reservado 
+	// repartido entre as filas dos shards
+	private synchronized int nextId(int shard) {
+		Deque<Integer> queue = freeIds.get(map.isByDepartment() ? 0 : shard);
+		while (queue.isEmpty()) {
+			int first = sequence.reserve(blockSize, () -> findStamp().getMaxId() + 1);
+			for (int id = first; id < first + blockSize; id++) {
+				freeIds.get(map.isByDepartment() ? 0 : map.byId(id)).add(id);
+			}
+		}
+		return queue.poll();
+	}
+
+	// Shard onde o vendedor est (shard.key=department); -1 se no estiver em nenhum
+	private int locate(Integer id) {
+		List<Seller> found = scatter(i -> shards.get(i).findById(id));
+		for (int i = 0; i < found.size(); i++) {
+			if (found.get(i) != null) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/* Grava no destino antes de apagar na origem: uma falha no meio deixa o vendedor repetido, no perdido.
+	   Devolve as linhas como estavam na origem */
+	private List<SellerRow> move(List<Seller> list, int from, int to) {
+		shards.get(to).insertAll(list);
+		return shards.get(from).deleteByIds(list.stream().map(Seller::getId).collect(Collectors.toList()));
+	}
+
+	private List<List<Integer>> groupIds(Collection<Integer> ids) {
+		List<List<Integer>> groups = groups();
+		for (Integer id : ids) {
+			if (map.isByDepartment()) {
+				groups.forEach(group -> group.add(id));
+			}
+			else {
+				groups.get(map.byId(id)).add(id);
+			}
+		}
+		return groups;
+	}
+
+	private <T> List<List<T>> groups() {
+		List<List<T>> groups = new ArrayList<>();
+		for (int i = 0; i < map.size(); i++) {
+			groups.add(new ArrayList<>());
+		}
+		return groups;
+	}
+
+	// Executa em todos os shards em paralelo; o cancelamento da operao atual (QueryHandle) vale para todos
+	private <R> List<R> scatter(IntFunction<R> work) {
+		Cancellation cancellation = Cancellation.current();
+		List<CompletableFuture<R>> futures = new ArrayList<>();
+		for (int i = 0; i < map.size(); i++) {
+			int shard = i;
+			futures.add(CompletableFuture.supplyAsync(() -> cancellation == null
+					? work.apply(shard)
+					: cancellation.call(() -> work.apply(shard)), executor));
+		}
+		List<R> results = new ArrayList<>();
+		for (CompletableFuture<R> future : futures) {
+			try {
+				results.add(future.join());
+			}
+			catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+		return results;
+	}
+
+	// Merge de k listas j ordenadas: O(n log k), sem reordenar o resultado inteiro
+	static <T> List<T> merge(List<List<T>> lists, Comparator<? super T> order) {
+		int total = 0;
+		for (List<T> list : lists) {
+			total += list.size();
+		}
+		List<T> result = new ArrayList<>(total);
+		int[] position = new int[lists.size()];
+		PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, lists.size()),
+				(a, b) -> order.compare(lists.get(a).get(position[a]), lists.get(b).get(position[b])));
+		for (int i = 0; i < lists.size(); i++) {
+			if (!lists.get(i).isEmpty()) {
+				heads.add(i);
+			}
+		}
+		while (!heads.isEmpty()) {
+			int i = heads.poll();
+			result.add(lists.get(i).get(position[i]++));
+			if (position[i] < lists.get(i).size()) {
+				heads.add(i);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,42 @@
+package model.dto;
+
+import java.io.Serializable;
+
+// Quantidade de vendedores e soma dos salrios base de um departamento
+public class DepartmentStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int departmentId;
+	private final int headcount;
+	private final double payroll;
+
+	public DepartmentStats(int departmentId, int headcount, double payroll) {
+		this.departmentId = departmentId;
+		this.headcount = headcount;
+		this.payroll = payroll;
+	}
+
+	public int getDepartmentId() {
+		return departmentId;
+	}
+
+	public int getHeadcount() {
+		return headcount;
+	}
+
+	public double getPayroll() {
+		return payroll;
+	}
+
+	// Soma (ou, com sign = -1, subtrai) um vendedor com o salrio informado
+	public DepartmentStats plus(int sign, double baseSalary) {
+		return new DepartmentStats(departmentId, headcount + sign, payroll + sign * baseSalary);
+	}
+
+	@Override
+	public String toString() {
+		return "DepartmentStats [departmentId=" + departmentId + ", headcount=" + headcount + ", payroll=" + payroll
+				+ "]";
+	}
+}
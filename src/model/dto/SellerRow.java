@@ -0,0 +1,137 @@
+package model.dto;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+Projeo de Seller apenas com as colunas exibidas na lista de vendedores.
+Pensada para listas grandes e somente leitura: campos primitivos, data de nascimento em dias desde
+1970-01-01 (epoch day) e Department compartilhado entre as linhas. Data e salrio ausentes tm
+marcas prprias e voltam como null. Os getters devolvem os tipos usados pela TableView (Integer, Date, Double).
+*/
+public class SellerRow implements Serializable {
+
+	private static final long serialVersionUID = 2L;
+
+	// Marca de data de nascimento no informada
+	private static final int NO_DATE = Integer.MIN_VALUE;
+
+	// Marca de salrio no informado (NaN nunca vem do banco nem do formulrio)
+	private static final double NO_SALARY = Double.NaN;
+
+	private final int id;
+	private final String name;
+	private final String email;
+	private final int birthEpochDay;
+	private final double baseSalary;
+
+	private final Department department;
+
+	public SellerRow(int id, String name, String email, int birthEpochDay, double baseSalary, Department department) {
+		this.id = id;
+		this.name = name;
+		this.email = email;
+		this.birthEpochDay = birthEpochDay;
+		this.baseSalary = baseSalary;
+		this.department = department;
+	}
+
+	public SellerRow(Integer id, String name, String email, Date birthDate, Double baseSalary, Department department) {
+		this(requireId(id), name, email, toEpochDay(birthDate), toSalary(baseSalary), department);
+	}
+
+	// Linha sem id no tem como ser localizada na lista nem nos eventos
+	private static int requireId(Integer id) {
+		if (id == null) {
+			throw new IllegalArgumentException("SellerRow requires an id");
+		}
+		return id;
+	}
+
+	public static SellerRow of(Seller obj) {
+		return new SellerRow(obj.getId(), obj.getName(), obj.getEmail(), obj.getBirthDate(), obj.getBaseSalary(),
+				obj.getDepartment());
+	}
+
+	public static int toEpochDay(Date date) {
+		if (date == null) {
+			return NO_DATE;
+		}
+		return (int) date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+	}
+
+	public static double toSalary(Double baseSalary) {
+		return baseSalary == null ? NO_SALARY : baseSalary;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	// Cria a Date a cada chamada; para clculos use getBirthEpochDay
+	public Date getBirthDate() {
+		if (birthEpochDay == NO_DATE) {
+			return null;
+		}
+		return Date.from(LocalDate.ofEpochDay(birthEpochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
+	public int getBirthEpochDay() {
+		return birthEpochDay;
+	}
+
+	public Double getBaseSalary() {
+		if (Double.isNaN(baseSalary)) {
+			return null;
+		}
+		return baseSalary;
+	}
+
+	public Department getDepartment() {
+		return department;
+	}
+
+	public SellerRow withDepartment(Department department) {
+		return new SellerRow(id, name, email, birthEpochDay, baseSalary, department);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + id;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SellerRow other = (SellerRow) obj;
+		return id == other.id;
+	}
+
+	@Override
+	public String toString() {
+		return "SellerRow [id=" + id + ", name=" + name + ", email=" + email + ", birthDate="
+				+ (birthEpochDay == NO_DATE ? null : LocalDate.ofEpochDay(birthEpochDay)) + ", baseSalary="
+				+ getBaseSalary() + ", department=" + department + "]";
+	}
+}
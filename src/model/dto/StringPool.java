@@ -0,0 +1,26 @@
+package model.dto;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Deduplicao de textos repetidos durante a montagem de uma lista grande (nomes de vendedores e
+de departamentos). Usado por carga e descartado no fim; diferente de String.intern, no mantm
+nada vivo depois disso.
+*/
+public class StringPool {
+
+	private final Map<String, String> pool = new HashMap<>();
+
+	public String get(String str) {
+		if (str == null) {
+			return null;
+		}
+		String shared = pool.putIfAbsent(str, str);
+		return shared == null ? str : shared;
+	}
+
+	public int size() {
+		return pool.size();
+	}
+}
@@ -0,0 +1,38 @@
+package model.dto;
+
+public class SyncResult {
+
+	private int inserted;
+	private int updated;
+	private int deleted;
+	private int unchanged;
+
+	public SyncResult(int inserted, int updated, int deleted, int unchanged) {
+		this.inserted = inserted;
+		this.updated = updated;
+		this.deleted = deleted;
+		this.unchanged = unchanged;
+	}
+
+	public int getInserted() {
+		return inserted;
+	}
+
+	public int getUpdated() {
+		return updated;
+	}
+
+	public int getDeleted() {
+		return deleted;
+	}
+
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	@Override
+	public String toString() {
+		return "SyncResult [inserted=" + inserted + ", updated=" + updated + ", deleted=" + deleted + ", unchanged="
+				+ unchanged + "]";
+	}
+}
@@ -0,0 +1,65 @@
+package model.entities;
+
+import java.io.Serializable;
+import java.util.Date;
+
+// Uma alterao registrada na trilha de auditoria; os valores antigos e novos so objetos Json
+public class AuditEntry implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Action { INSERT, UPDATE, DELETE }
+
+	private final String entity;
+	private final int entityId;
+	private final Action action;
+	private final String user;
+	private final Date changedAt;
+	private final String oldValues;
+	private final String newValues;
+
+	public AuditEntry(String entity, int entityId, Action action, String user, Date changedAt, String oldValues,
+			String newValues) {
+		this.entity = entity;
+		this.entityId = entityId;
+		this.action = action;
+		this.user = user;
+		this.changedAt = changedAt;
+		this.oldValues = oldValues;
+		this.newValues = newValues;
+	}
+
+	public String getEntity() {
+		return entity;
+	}
+
+	public int getEntityId() {
+		return entityId;
+	}
+
+	public Action getAction() {
+		return action;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public Date getChangedAt() {
+		return changedAt;
+	}
+
+	public String getOldValues() {
+		return oldValues;
+	}
+
+	public String getNewValues() {
+		return newValues;
+	}
+
+	@Override
+	public String toString() {
+		return "AuditEntry [entity=" + entity + ", entityId=" + entityId + ", action=" + action + ", user=" + user
+				+ ", changedAt=" + changedAt + ", oldValues=" + oldValues + ", newValues=" + newValues + "]";
+	}
+}
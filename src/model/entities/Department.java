@@ -1,6 +1,9 @@
 package model.entities;
 
 import java.io.Serializable;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
 
 public class Department implements Serializable {
 
@@ -9,6 +12,9 @@ public class Department implements Serializable {
 	private Integer id;
 	private String name;
 	
+	// Valores lidos do banco, usados para descobrir quais campos foram alterados
+	private transient Department snapshot;
+	
 	public Department() {
 	}
 
@@ -33,6 +39,29 @@ public class Department implements Serializable {
 		this.name = name;
 	}
 
+	public void markClean() {
+		snapshot = new Department(id, name);
+	}
+
+	// Campos alterados desde a leitura do banco; sem snapshot todos so considerados alterados
+	public Set<String> getDirtyFields() {
+		Set<String> fields = new LinkedHashSet<>();
+		if (snapshot == null || !Objects.equals(name, snapshot.name)) {
+			fields.add("name");
+		}
+		return fields;
+	}
+
+	public Department getSnapshot() {
+		return snapshot;
+	}
+
+	public Department copy() {
+		Department obj = new Department(id, name);
+		obj.snapshot = snapshot;
+		return obj;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -2,6 +2,9 @@ package model.entities;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
 
 public class Seller implements Serializable {
 
@@ -15,6 +18,9 @@ public class Seller implements Serializable {
 	
 	private Department department;
 	
+	// Valores lidos do banco, usados para descobrir quais campos foram alterados
+	private transient Seller snapshot;
+	
 	public Seller() {
 	}
 
@@ -75,6 +81,54 @@ public class Seller implements Serializable {
 		this.department = department;
 	}
 
+	public void markClean() {
+		snapshot = new Seller(id, name, email, birthDate == null ? null : new Date(birthDate.getTime()), baseSalary,
+				department);
+	}
+
+	public boolean isTracked() {
+		return snapshot != null;
+	}
+
+	// Campos alterados desde a leitura do banco; sem snapshot todos so considerados alterados
+	public Set<String> getDirtyFields() {
+		Set<String> fields = new LinkedHashSet<>();
+		if (snapshot == null || !Objects.equals(name, snapshot.name)) {
+			fields.add("name");
+		}
+		if (snapshot == null || !Objects.equals(email, snapshot.email)) {
+			fields.add("email");
+		}
+		if (snapshot == null || !Objects.equals(birthDate, snapshot.birthDate)) {
+			fields.add("birthDate");
+		}
+		if (snapshot == null || !Objects.equals(baseSalary, snapshot.baseSalary)) {
+			fields.add("baseSalary");
+		}
+		if (snapshot == null || !Objects.equals(department, snapshot.department)) {
+			fields.add("department");
+		}
+		return fields;
+	}
+
+	public Seller getSnapshot() {
+		return snapshot;
+	}
+
+	// Cpia que mantm o snapshot, para que o formulrio altere a cpia e no o original
+	public Seller copy() {
+		Seller obj = new Seller(id, name, email, birthDate, baseSalary, department);
+		obj.snapshot = snapshot;
+		return obj;
+	}
+
+	// Cpia com os valores deste objeto e os campos alterados calculados em relao a outro snapshot
+	public Seller withSnapshot(Seller snapshot) {
+		Seller obj = new Seller(id, name, email, birthDate, baseSalary, department);
+		obj.snapshot = snapshot;
+		return obj;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
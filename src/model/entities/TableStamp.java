@@ -0,0 +1,70 @@
+package model.entities;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/*
+Resumo de uma tabela para saber se uma cpia local ainda vale sem reler as linhas: quantidade e maior Id
+mudam com incluses e excluses; lastUpdate (maior UpdatedAt, em milissegundos) muda com as alteraes.
+*/
+public class TableStamp implements Serializable {
+
+	private static final long serialVersionUID = 2L;
+
+	private long rowCount;
+	private int maxId;
+	private long lastUpdate;
+	
+	public TableStamp(long rowCount, int maxId, long lastUpdate) {
+		this.rowCount = rowCount;
+		this.maxId = maxId;
+		this.lastUpdate = lastUpdate;
+	}
+
+	public static TableStamp of(Collection<Integer> ids, long lastUpdate) {
+		int max = 0;
+		for (Integer id : ids) {
+			max = Math.max(max, id);
+		}
+		return new TableStamp(ids.size(), max, lastUpdate);
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public int getMaxId() {
+		return maxId;
+	}
+
+	public long getLastUpdate() {
+		return lastUpdate;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (int) (rowCount ^ (rowCount >>> 32));
+		result = prime * result + maxId;
+		result = prime * result + (int) (lastUpdate ^ (lastUpdate >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		TableStamp other = (TableStamp) obj;
+		return rowCount == other.rowCount && maxId == other.maxId && lastUpdate == other.lastUpdate;
+	}
+
+	@Override
+	public String toString() {
+		return "TableStamp [rowCount=" + rowCount + ", maxId=" + maxId + ", lastUpdate=" + lastUpdate + "]";
+	}
+}
@@ -0,0 +1,88 @@
+package model.events;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Alterao em uma ou mais linhas de uma tabela; o tpico  a classe da entidade (Seller, Department)
+public class DataChangeEvent implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Kind {
+		INSERTED, UPDATED, DELETED
+	}
+
+	private final Class<?> topic;
+	private final Kind kind;
+	private final List<Integer> ids;
+	// Valores das linhas antes da alterao (ex.: SellerRow), por id; informados por quem gravou no banco
+	private final Map<Integer, ?> previous;
+	// Valores depois da alterao, quando quem gravou j os conhece (ex.: mudana de departamento)
+	private final Map<Integer, ?> current;
+
+	public DataChangeEvent(Class<?> topic, Kind kind, Collection<Integer> ids) {
+		this(topic, kind, ids, Map.of());
+	}
+
+	public DataChangeEvent(Class<?> topic, Kind kind, Collection<Integer> ids, Map<Integer, ?> previous) {
+		this(topic, kind, ids, previous, Map.of());
+	}
+
+	public DataChangeEvent(Class<?> topic, Kind kind, Collection<Integer> ids, Map<Integer, ?> previous,
+			Map<Integer, ?> current) {
+		this.topic = topic;
+		this.kind = kind;
+		this.ids = List.copyOf(ids);
+		this.previous = Map.copyOf(previous);
+		this.current = Map.copyOf(current);
+	}
+
+	public DataChangeEvent(Class<?> topic, Kind kind, Integer id) {
+		this(topic, kind, Collections.singletonList(id));
+	}
+
+	public Class<?> getTopic() {
+		return topic;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public List<Integer> getIds() {
+		return ids;
+	}
+
+	// null quando o valor anterior no foi informado
+	public Object getPrevious(Integer id) {
+		return previous.get(id);
+	}
+
+	// null quando o valor novo no foi informado (quem recebe l do banco)
+	public Object getCurrent(Integer id) {
+		return current.get(id);
+	}
+
+	// Ids afetados por eventos de um dos tipos informados, sem repetio
+	public static Set<Integer> idsOf(List<DataChangeEvent> events, Kind... kinds) {
+		Set<Integer> set = new LinkedHashSet<>();
+		for (DataChangeEvent event : events) {
+			for (Kind kind : kinds) {
+				if (event.kind == kind) {
+					set.addAll(event.ids);
+				}
+			}
+		}
+		return set;
+	}
+
+	@Override
+	public String toString() {
+		return "DataChangeEvent [topic=" + topic.getSimpleName() + ", kind=" + kind + ", ids=" + ids + "]";
+	}
+}
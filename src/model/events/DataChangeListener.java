@@ -0,0 +1,14 @@
+package model.events;
+
+import java.util.List;
+
+/*
+Interface implementada por quem precisa ser atualizado quando os dados de uma tabela mudam.
+O EventBus guarda apenas uma referncia fraca ao listener, portanto ele no impede que a tela
+seja coletada. As alteraes feitas em sequncia chegam juntas, em uma nica chamada.
+*/
+public interface DataChangeListener {
+
+	void onDataChanged(List<DataChangeEvent> events);
+
+}
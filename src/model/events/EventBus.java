@@ -0,0 +1,140 @@
+package model.events;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+import diagnostics.EventDispatchEvent;
+import diagnostics.Log;
+
+/*
+Barramento central de eventos de alterao de dados, no lugar das listas de DataChangeListener
+que cada formulrio mantinha.
+- as inscries so fracas: uma tela fechada  coletada mesmo que esquea de cancelar a inscrio
+- os eventos de um tpico publicados antes da prxima entrega so agrupados e entregues em uma
+  nica chamada (na interface, tudo o que acontece dentro de um pulso do JavaFX vira uma notificao)
+- os inscritos de interface recebem os eventos pelo executor definido em setUiExecutor
+  (Platform::runLater); os demais recebem em uma thread prpria, fora da thread do JavaFX
+*/
+public class EventBus {
+
+	private static final Map<Class<?>, Topic> topics = new ConcurrentHashMap<>();
+
+	private static final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "event-bus");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// Sem interface grfica (ex.: modo servidor) os inscritos de interface tambm so atendidos em segundo plano
+	private static volatile Executor uiExecutor = background;
+
+	// Erro em um inscrito: por padro vai para o log (Log); a interface troca por um alerta
+	private static volatile BiConsumer<DataChangeListener, RuntimeException> errorHandler = (listener, e) -> Log.LOGGER
+			.log(Level.WARNING, "Event listener " + listener.getClass().getName() + " failed", e);
+
+	public static void setUiExecutor(Executor executor) {
+		uiExecutor = executor;
+	}
+
+	public static void setErrorHandler(BiConsumer<DataChangeListener, RuntimeException> handler) {
+		errorHandler = handler;
+	}
+
+	public static void subscribe(Class<?> topic, DataChangeListener listener, boolean ui) {
+		Topic t = topic(topic);
+		unsubscribe(topic, listener);
+		(ui ? t.ui : t.background).subscriptions.add(new WeakReference<>(listener));
+	}
+
+	public static void unsubscribe(Class<?> topic, DataChangeListener listener) {
+		Topic t = topic(topic);
+		t.ui.subscriptions.removeIf(ref -> ref.get() == null || ref.get() == listener);
+		t.background.subscriptions.removeIf(ref -> ref.get() == null || ref.get() == listener);
+	}
+
+	public static void publish(DataChangeEvent event) {
+		Topic t = topic(event.getTopic());
+		t.ui.offer(event, uiExecutor);
+		t.background.offer(event, background);
+	}
+
+	private static Topic topic(Class<?> topic) {
+		return topics.computeIfAbsent(topic, k -> new Topic());
+	}
+
+	private static class Topic {
+
+		private final Lane ui = new Lane(true);
+		private final Lane background = new Lane(false);
+	}
+
+	private static class Lane {
+
+		private final boolean ui;
+		private final CopyOnWriteArrayList<WeakReference<DataChangeListener>> subscriptions = new CopyOnWriteArrayList<>();
+		private List<DataChangeEvent> pending = new ArrayList<>();
+		private boolean scheduled = false;
+
+		Lane(boolean ui) {
+			this.ui = ui;
+		}
+
+		// Agenda uma entrega s para o primeiro evento; os seguintes pegam carona nela
+		void offer(DataChangeEvent event, Executor executor) {
+			if (subscriptions.isEmpty()) {
+				return;
+			}
+			synchronized (this) {
+				pending.add(event);
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+			executor.execute(this::deliver);
+		}
+
+		private void deliver() {
+			List<DataChangeEvent> events;
+			synchronized (this) {
+				events = pending;
+				pending = new ArrayList<>();
+				scheduled = false;
+			}
+			List<DataChangeEvent> batch = List.copyOf(events);
+			for (WeakReference<DataChangeListener> ref : subscriptions) {
+				DataChangeListener listener = ref.get();
+				if (listener == null) {
+					subscriptions.remove(ref);
+					continue;
+				}
+				EventDispatchEvent event = new EventDispatchEvent();
+				event.begin();
+				try {
+					listener.onDataChanged(batch);
+				}
+				catch (RuntimeException e) {
+					// um inscrito com erro no impede a entrega aos demais
+					errorHandler.accept(listener, e);
+				}
+				event.end();
+				if (event.shouldCommit()) {
+					event.topic = batch.get(0).getTopic().getSimpleName();
+					event.listener = listener.getClass().getName();
+					event.events = batch.size();
+					event.ui = ui;
+					event.commit();
+				}
+			}
+		}
+	}
+}
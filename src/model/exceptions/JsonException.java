@@ -0,0 +1,10 @@
+package model.exceptions;
+
+public class JsonException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public JsonException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,307 @@
+package model.json;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.exceptions.JsonException;
+
+/*
+Leitura e escrita de JSON sem dependncias externas, suficiente para a API do servidor.
+Objetos viram Map<String, Object>, arrays viram List<Object>, nmeros inteiros viram Long
+e os demais nmeros viram Double.
+*/
+public class Json {
+
+	public static String write(Object value) {
+		StringBuilder sb = new StringBuilder();
+		write(sb, value);
+		return sb.toString();
+	}
+
+	public static Object parse(String text) {
+		Parser parser = new Parser(text);
+		Object value = parser.value();
+		parser.skipWhitespace();
+		if (parser.pos < text.length()) {
+			throw parser.error("Unexpected content");
+		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static Map<String, Object> parseObject(String text) {
+		Object value = parse(text);
+		if (!(value instanceof Map)) {
+			throw new JsonException("Expected a JSON object");
+		}
+		return (Map<String, Object>) value;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static List<Object> parseArray(String text) {
+		Object value = parse(text);
+		if (!(value instanceof List)) {
+			throw new JsonException("Expected a JSON array");
+		}
+		return (List<Object>) value;
+	}
+
+	private static boolean isNonFinite(Object value) {
+		return (value instanceof Double && !Double.isFinite((Double) value))
+				|| (value instanceof Float && !Float.isFinite((Float) value));
+	}
+
+	private static void write(StringBuilder sb, Object value) {
+		if (value == null) {
+			sb.append("null");
+		}
+		else if (value instanceof String) {
+			writeString(sb, (String) value);
+		}
+		else if (isNonFinite(value)) {
+			// NaN e Infinity no existem em JSON: saem como null, como no JSON.stringify
+			sb.append("null");
+		}
+		else if (value instanceof Number || value instanceof Boolean) {
+			sb.append(value);
+		}
+		else if (value instanceof Map) {
+			sb.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				writeString(sb, String.valueOf(entry.getKey()));
+				sb.append(':');
+				write(sb, entry.getValue());
+			}
+			sb.append('}');
+		}
+		else if (value instanceof Collection) {
+			sb.append('[');
+			boolean first = true;
+			for (Object item : (Collection<?>) value) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				write(sb, item);
+			}
+			sb.append(']');
+		}
+		else {
+			throw new JsonException("Unsupported type: " + value.getClass().getName());
+		}
+	}
+
+	private static void writeString(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				}
+				else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+	private static class Parser {
+
+		private final String text;
+		private int pos = 0;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		Object value() {
+			skipWhitespace();
+			if (pos >= text.length()) {
+				throw error("Unexpected end of input");
+			}
+			char c = text.charAt(pos);
+			switch (c) {
+			case '{':
+				return object();
+			case '[':
+				return array();
+			case '"':
+				return string();
+			case 't':
+				return literal("true", Boolean.TRUE);
+			case 'f':
+				return literal("false", Boolean.FALSE);
+			case 'n':
+				return literal("null", null);
+			default:
+				return number();
+			}
+		}
+
+		Map<String, Object> object() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			pos++;
+			skipWhitespace();
+			if (peek() == '}') {
+				pos++;
+				return map;
+			}
+			while (true) {
+				skipWhitespace();
+				if (peek() != '"') {
+					throw error("Expected a property name");
+				}
+				String key = string();
+				skipWhitespace();
+				expect(':');
+				map.put(key, value());
+				skipWhitespace();
+				if (peek() == ',') {
+					pos++;
+					continue;
+				}
+				expect('}');
+				return map;
+			}
+		}
+
+		List<Object> array() {
+			List<Object> list = new ArrayList<>();
+			pos++;
+			skipWhitespace();
+			if (peek() == ']') {
+				pos++;
+				return list;
+			}
+			while (true) {
+				list.add(value());
+				skipWhitespace();
+				if (peek() == ',') {
+					pos++;
+					continue;
+				}
+				expect(']');
+				return list;
+			}
+		}
+
+		String string() {
+			pos++;
+			StringBuilder sb = new StringBuilder();
+			while (true) {
+				if (pos >= text.length()) {
+					throw error("Unterminated string");
+				}
+				char c = text.charAt(pos++);
+				if (c == '"') {
+					return sb.toString();
+				}
+				if (c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				char e = text.charAt(pos++);
+				switch (e) {
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'b':
+					sb.append('\b');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'u':
+					sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+					pos += 4;
+					break;
+				default:
+					sb.append(e);
+				}
+			}
+		}
+
+		Object number() {
+			int start = pos;
+			boolean decimal = false;
+			while (pos < text.length()) {
+				char c = text.charAt(pos);
+				if (c == '.' || c == 'e' || c == 'E') {
+					decimal = true;
+				}
+				else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+					break;
+				}
+				pos++;
+			}
+			String token = text.substring(start, pos);
+			try {
+				return decimal ? (Object) Double.valueOf(token) : (Object) Long.valueOf(token);
+			}
+			catch (NumberFormatException e) {
+				throw error("Invalid number '" + token + "'");
+			}
+		}
+
+		Object literal(String word, Object value) {
+			if (!text.startsWith(word, pos)) {
+				throw error("Invalid literal");
+			}
+			pos += word.length();
+			return value;
+		}
+
+		void skipWhitespace() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		char peek() {
+			return pos < text.length() ? text.charAt(pos) : 0;
+		}
+
+		void expect(char c) {
+			if (peek() != c) {
+				throw error("Expected '" + c + "'");
+			}
+			pos++;
+		}
+
+		JsonException error(String msg) {
+			return new JsonException(msg + " at position " + pos);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package model.json;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.dto.DepartmentStats;
+import model.dto.SellerRow;
+import model.dto.StringPool;
+import model.entities.AuditEntry;
+import model.entities.Department;
+import model.entities.Seller;
+import model.entities.TableStamp;
+
+// Converso das entidades para os mapas do Json e vice-versa; datas trafegam em milissegundos
+public class JsonMapper {
+
+	public static Map<String, Object> toMap(Department obj) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("id", obj.getId());
+		map.put("name", obj.getName());
+		return map;
+	}
+
+	public static Map<String, Object> toMap(Seller obj) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("id", obj.getId());
+		map.put("name", obj.getName());
+		map.put("email", obj.getEmail());
+		map.put("birthDate", obj.getBirthDate() == null ? null : obj.getBirthDate().getTime());
+		map.put("baseSalary", obj.getBaseSalary());
+		map.put("department", obj.getDepartment() == null ? null : toMap(obj.getDepartment()));
+		return map;
+	}
+
+	public static Map<String, Object> toMap(SellerRow obj) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("id", obj.getId());
+		map.put("name", obj.getName());
+		map.put("email", obj.getEmail());
+		map.put("birthDate", obj.getBirthDate() == null ? null : obj.getBirthDate().getTime());
+		map.put("baseSalary", obj.getBaseSalary());
+		map.put("department", obj.getDepartment() == null ? null : toMap(obj.getDepartment()));
+		return map;
+	}
+
+	public static Map<String, Object> toMap(TableStamp obj) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("rowCount", obj.getRowCount());
+		map.put("maxId", obj.getMaxId());
+		map.put("lastUpdate", obj.getLastUpdate());
+		return map;
+	}
+
+	public static Map<String, Object> toMap(DepartmentStats obj) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("departmentId", obj.getDepartmentId());
+		map.put("headcount", obj.getHeadcount());
+		map.put("payroll", obj.getPayroll());
+		return map;
+	}
+
+	public static Map<String, Object> toMap(AuditEntry obj) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("entity", obj.getEntity());
+		map.put("entityId", obj.getEntityId());
+		map.put("action", obj.getAction().name());
+		map.put("user", obj.getUser());
+		map.put("changedAt", obj.getChangedAt().getTime());
+		map.put("oldValues", obj.getOldValues());
+		map.put("newValues", obj.getNewValues());
+		return map;
+	}
+
+	public static List<Object> toList(Collection<?> list) {
+		List<Object> result = new ArrayList<>(list.size());
+		for (Object obj : list) {
+			if (obj instanceof Seller) {
+				result.add(toMap((Seller) obj));
+			}
+			else if (obj instanceof SellerRow) {
+				result.add(toMap((SellerRow) obj));
+			}
+			else if (obj instanceof Department) {
+				result.add(toMap((Department) obj));
+			}
+			else if (obj instanceof AuditEntry) {
+				result.add(toMap((AuditEntry) obj));
+			}
+			else if (obj instanceof DepartmentStats) {
+				result.add(toMap((DepartmentStats) obj));
+			}
+			else {
+				result.add(obj);
+			}
+		}
+		return result;
+	}
+
+	public static Department toDepartment(Object value) {
+		if (value == null) {
+			return null;
+		}
+		Map<?, ?> map = (Map<?, ?>) value;
+		Department obj = new Department(toInteger(map.get("id")), (String) map.get("name"));
+		obj.markClean();
+		return obj;
+	}
+
+	public static Seller toSeller(Object value) {
+		if (value == null) {
+			return null;
+		}
+		Map<?, ?> map = (Map<?, ?>) value;
+		Seller obj = new Seller(toInteger(map.get("id")), (String) map.get("name"), (String) map.get("email"),
+				toDate(map.get("birthDate")), toDouble(map.get("baseSalary")), toDepartment(map.get("department")));
+		obj.markClean();
+		return obj;
+	}
+
+	public static TableStamp toStamp(Object value) {
+		Map<?, ?> map = (Map<?, ?>) value;
+		return new TableStamp(((Number) map.get("rowCount")).longValue(), toInteger(map.get("maxId")),
+				map.get("lastUpdate") == null ? 0 : ((Number) map.get("lastUpdate")).longValue());
+	}
+
+	public static List<Department> toDepartments(Object value) {
+		List<Department> list = new ArrayList<>();
+		for (Object item : (List<?>) value) {
+			list.add(toDepartment(item));
+		}
+		return list;
+	}
+
+	// Vendedores do mesmo departamento compartilham a mesma instncia de Department
+	public static List<Seller> toSellers(Object value) {
+		Map<Integer, Department> departments = new HashMap<>();
+		List<Seller> list = new ArrayList<>();
+		for (Object item : (List<?>) value) {
+			Seller obj = toSeller(item);
+			obj.setDepartment(shared(departments, obj.getDepartment()));
+			obj.markClean();
+			list.add(obj);
+		}
+		return list;
+	}
+
+	public static List<SellerRow> toRows(Object value) {
+		Map<Integer, Department> departments = new HashMap<>();
+		StringPool names = new StringPool();
+		List<SellerRow> list = new ArrayList<>();
+		for (Object item : (List<?>) value) {
+			Map<?, ?> map = (Map<?, ?>) item;
+			list.add(new SellerRow(toInteger(map.get("id")), names.get((String) map.get("name")),
+					(String) map.get("email"), toDate(map.get("birthDate")), toDouble(map.get("baseSalary")),
+					shared(departments, toDepartment(map.get("department")))));
+		}
+		return list;
+	}
+
+	public static List<Integer> toIntegers(Object value) {
+		List<Integer> list = new ArrayList<>();
+		for (Object item : (List<?>) value) {
+			list.add(toInteger(item));
+		}
+		return list;
+	}
+
+	public static List<AuditEntry> toAuditEntries(Object value) {
+		List<AuditEntry> list = new ArrayList<>();
+		for (Object item : (List<?>) value) {
+			Map<?, ?> map = (Map<?, ?>) item;
+			list.add(new AuditEntry((String) map.get("entity"), toInteger(map.get("entityId")),
+					AuditEntry.Action.valueOf((String) map.get("action")), (String) map.get("user"),
+					toDate(map.get("changedAt")), (String) map.get("oldValues"), (String) map.get("newValues")));
+		}
+		return list;
+	}
+
+	public static List<DepartmentStats> toDepartmentStats(Object value) {
+		List<DepartmentStats> list = new ArrayList<>();
+		for (Object item : (List<?>) value) {
+			Map<?, ?> map = (Map<?, ?>) item;
+			list.add(new DepartmentStats(toInteger(map.get("departmentId")), toInteger(map.get("headcount")),
+					toDouble(map.get("payroll"))));
+		}
+		return list;
+	}
+
+	public static Integer toInteger(Object value) {
+		return value == null ? null : ((Number) value).intValue();
+	}
+
+	private static Double toDouble(Object value) {
+		return value == null ? null : ((Number) value).doubleValue();
+	}
+
+	private static Date toDate(Object value) {
+		return value == null ? null : new Date(((Number) value).longValue());
+	}
+
+	private static Department shared(Map<Integer, Department> departments, Department dep) {
+		if (dep == null) {
+			return null;
+		}
+		return departments.computeIfAbsent(dep.getId(), id -> dep);
+	}
+}
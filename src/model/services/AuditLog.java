@@ -0,0 +1,362 @@
+package model.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import db.DB;
+import db.DbConnectionException;
+import db.DbUnavailableException;
+import db.Resilience;
+import diagnostics.Log;
+import diagnostics.Metrics;
+import model.dao.AuditDao;
+import model.dao.DaoFactory;
+import model.entities.AuditEntry;
+import model.entities.AuditEntry.Action;
+import model.json.Json;
+import model.json.JsonMapper;
+
+/*
+Trilha de auditoria das alteraes feitas pelos servios (quem, quando, valores antigos e novos).
+Quem salva s enfileira a alterao; uma thread grava as alteraes em lotes na tabela audit_log.
+- a fila  limitada (audit.capacity) e no usa locks: a vaga  reservada com compareAndSet
+- fila cheia (banco lento ou fora do ar): a alterao vai para um dirio local (audit.spillFile), sem
+  esperar e sem ir ao banco na thread de quem salva; o writer envia o dirio quando a fila esvaziar
+- lotes de at audit.batchSize, gravados quando o lote enche ou a cada audit.flushMillis
+- lote recusado pelo banco por outro motivo que no a conexo: as alteraes so gravadas uma a uma,
+  e s as recusadas de novo vo para audit.spillFile.rejected, para conferncia manual
+- uma linha ilegvel do dirio local tambm vai para audit.spillFile.rejected, sem travar o envio das outras
+- ao encerrar com o banco fora do ar, o que estiver pendente tambm vai para o dirio local
+S se perde uma alterao se nem o dirio local puder ser gravado (audit_entries_dropped_total).
+No servidor da API o usurio  o chamador autenticado da requisio (setCaller); no backend remote
+quem audita  o servidor, e o cliente no grava nada.
+*/
+public class AuditLog {
+
+	private static final Queue<AuditEntry> queue = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger depth = new AtomicInteger();
+
+	// Usurio da requisio atual no servidor da API; null fora dele
+	private static final ThreadLocal<String> caller = new ThreadLocal<>();
+
+	// Serializa as gravaes e a troca de nome do dirio local
+	private static final Object spillLock = new Object();
+
+	private static AuditDao dao = null;
+	private static Thread writer = null;
+	private static volatile boolean stopping = false;
+
+	private static String user;
+	private static int capacity;
+	private static int batchSize;
+	private static long flushNanos;
+	private static Path spill;
+
+	public static void inserted(Class<?> entity, int id, Map<String, Object> values) {
+		record(entity, id, Action.INSERT, null, values);
+	}
+
+	// Grava s os campos que mudaram
+	public static void updated(Class<?> entity, int id, Map<String, Object> before, Map<String, Object> after) {
+		if (before == null) {
+			record(entity, id, Action.UPDATE, null, after);
+			return;
+		}
+		Map<String, Object> oldValues = new LinkedHashMap<>();
+		Map<String, Object> newValues = new LinkedHashMap<>();
+		for (Map.Entry<String, Object> field : after.entrySet()) {
+			Object old = before.get(field.getKey());
+			if (!Objects.equals(old, field.getValue())) {
+				oldValues.put(field.getKey(), old);
+				newValues.put(field.getKey(), field.getValue());
+			}
+		}
+		if (!newValues.isEmpty()) {
+			record(entity, id, Action.UPDATE, oldValues, newValues);
+		}
+	}
+
+	public static void deleted(Class<?> entity, int id, Map<String, Object> values) {
+		record(entity, id, Action.DELETE, values, null);
+	}
+
+	// Usurio autenticado da requisio em andamento nesta thread (ApiServer); null para voltar ao padro
+	public static void setCaller(String user) {
+		if (user == null) {
+			caller.remove();
+		}
+		else {
+			caller.set(user);
+		}
+	}
+
+	// Alteraes ainda no gravadas
+	public static int getDepth() {
+		return depth.get();
+	}
+
+	// Grava o que estiver na fila; chamado ao encerrar a aplicao
+	public static void shutdown() {
+		Thread current;
+		synchronized (AuditLog.class) {
+			current = writer;
+			stopping = true;
+		}
+		if (current == null) {
+			return;
+		}
+		LockSupport.unpark(current);
+		try {
+			current.join(TimeUnit.NANOSECONDS.toMillis(flushNanos) + 5000);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void record(Class<?> entity, int id, Action action, Map<String, Object> oldValues,
+			Map<String, Object> newValues) {
+		// O servidor j auditou a gravao, com o usurio autenticado
+		if (DB.getBackend().equals("remote")) {
+			return;
+		}
+		start();
+		String who = caller.get() != null ? caller.get() : user;
+		AuditEntry entry = new AuditEntry(entity.getSimpleName(), id, action, who, new Date(),
+				oldValues == null ? null : Json.write(oldValues), newValues == null ? null : Json.write(newValues));
+		if (offer(entry)) {
+			return;
+		}
+		// Fila cheia: quem salva (talvez a thread do JavaFX) no espera pelo banco
+		Metrics.counter("audit_spilled_total", "Audit entries sent to the local spill file").increment();
+		spill(Collections.singletonList(entry), spill);
+	}
+
+	// Reserva a vaga antes de enfileirar, para que a fila nunca passe de audit.capacity
+	private static boolean offer(AuditEntry entry) {
+		int size;
+		do {
+			size = depth.get();
+			if (size >= capacity) {
+				return false;
+			}
+		} while (!depth.compareAndSet(size, size + 1));
+		queue.offer(entry);
+		if (size + 1 >= batchSize) {
+			LockSupport.unpark(writer);
+		}
+		return true;
+	}
+
+	private static synchronized void start() {
+		if (writer != null) {
+			return;
+		}
+		Properties props = DB.getProperties();
+		user = props.getProperty("audit.user", "").isBlank() ? System.getProperty("user.name")
+				: props.getProperty("audit.user").trim();
+		capacity = Integer.parseInt(props.getProperty("audit.capacity", "10000"));
+		batchSize = Integer.parseInt(props.getProperty("audit.batchSize", "200"));
+		flushNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(props.getProperty("audit.flushMillis", "1000")));
+		spill = Paths.get(props.getProperty("audit.spillFile", "audit-spill.journal"));
+		dao = DaoFactory.createAuditDao();
+		Metrics.gauge("audit_queue_depth", "Audit entries waiting to be written", depth::get);
+		stopping = false;
+		writer = new Thread(AuditLog::runWriter, "audit-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private static void runWriter() {
+		List<AuditEntry> batch = new ArrayList<>(batchSize);
+		while (true) {
+			if (batch.isEmpty()) {
+				if (depth.get() < batchSize && !stopping) {
+					LockSupport.parkNanos(flushNanos);
+				}
+				AuditEntry entry;
+				while (batch.size() < batchSize && (entry = queue.poll()) != null) {
+					depth.decrementAndGet();
+					batch.add(entry);
+				}
+				if (batch.isEmpty()) {
+					// Fila vazia: hora de enviar o que ficou no dirio local
+					if (!sendSpilled() && stopping) {
+						return;
+					}
+					continue;
+				}
+			}
+			try {
+				write(batch);
+				batch.clear();
+			}
+			catch (DbConnectionException | DbUnavailableException e) {
+				// Banco fora do ar: o lote fica guardado, e quando a fila encher o resto vai para o dirio local
+				if (stopping) {
+					spillPending(batch);
+					return;
+				}
+				LockSupport.parkNanos(flushNanos);
+			}
+			catch (RuntimeException e) {
+				writeOneByOne(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	// Um registro invlido no leva o lote inteiro junto
+	private static void writeOneByOne(List<AuditEntry> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			List<AuditEntry> single = batch.subList(i, i + 1);
+			try {
+				write(single);
+			}
+			catch (DbConnectionException | DbUnavailableException e) {
+				spill(batch.subList(i, batch.size()), spill);
+				return;
+			}
+			catch (RuntimeException e) {
+				Metrics.counter("audit_entries_rejected_total", "Audit entries refused by the database").increment();
+				Log.LOGGER.warning("Audit entry refused (" + e.getMessage() + "), kept in " + rejected());
+				spill(single, rejected());
+			}
+		}
+	}
+
+	// Encerrando sem banco: o lote atual e o resto da fila vo para o dirio local
+	private static void spillPending(List<AuditEntry> batch) {
+		List<AuditEntry> list = new ArrayList<>(batch);
+		AuditEntry entry;
+		while ((entry = queue.poll()) != null) {
+			depth.decrementAndGet();
+			list.add(entry);
+		}
+		spill(list, spill);
+	}
+
+	private static Path rejected() {
+		return spill.toAbsolutePath().resolveSibling(spill.getFileName() + ".rejected");
+	}
+
+	private static Path sending() {
+		return spill.toAbsolutePath().resolveSibling(spill.getFileName() + ".sending");
+	}
+
+	// Uma alterao por linha, no formato da API (JsonMapper)
+	private static void spill(List<AuditEntry> list, Path file) {
+		StringBuilder text = new StringBuilder();
+		for (AuditEntry entry : list) {
+			text.append(Json.write(JsonMapper.toMap(entry))).append('\n');
+		}
+		synchronized (spillLock) {
+			try {
+				Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND);
+			}
+			catch (IOException e) {
+				dropped(list, e.getMessage());
+			}
+		}
+	}
+
+	// Linha do dirio que no pde ser lida: vai como est para audit.spillFile.rejected
+	private static void rejectLine(String line, String message) {
+		Metrics.counter("audit_entries_rejected_total", "Audit entries refused by the database").increment();
+		Log.LOGGER.warning("Audit spill line unreadable (" + message + "), kept in " + rejected());
+		synchronized (spillLock) {
+			try {
+				Files.write(rejected(), (line + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND);
+			}
+			catch (IOException e) {
+				Metrics.counter("audit_entries_dropped_total",
+						"Audit entries lost: not even the spill file was written").increment();
+				Log.LOGGER.warning("Audit spill line lost: " + e.getMessage());
+			}
+		}
+	}
+
+	/* Envia o dirio local em lotes; retorna false se no havia nada a enviar ou o banco ainda est fora.
+	   O dirio  renomeado antes (novas alteraes vo para um arquivo novo) e regravado a cada lote
+	   enviado, para que uma falha no meio no repita as alteraes j gravadas */
+	private static boolean sendSpilled() {
+		Path sending = sending();
+		List<String> lines;
+		try {
+			synchronized (spillLock) {
+				if (!Files.exists(sending)) {
+					if (!Files.exists(spill)) {
+						return false;
+					}
+					Files.move(spill, sending, StandardCopyOption.ATOMIC_MOVE);
+				}
+			}
+			lines = new ArrayList<>(Files.readAllLines(sending, StandardCharsets.UTF_8));
+			lines.removeIf(String::isBlank);
+			while (!lines.isEmpty()) {
+				List<String> chunk = lines.subList(0, Math.min(batchSize, lines.size()));
+				List<AuditEntry> entries = new ArrayList<>();
+				for (String line : chunk) {
+					try {
+						entries.addAll(JsonMapper.toAuditEntries(Collections.singletonList(Json.parseObject(line))));
+					}
+					catch (RuntimeException e) {
+						// Uma linha ilegvel no trava o envio das outras
+						rejectLine(line, e.getMessage());
+					}
+				}
+				try {
+					write(entries);
+				}
+				catch (DbConnectionException | DbUnavailableException e) {
+					return false;
+				}
+				catch (RuntimeException e) {
+					writeOneByOne(entries);
+				}
+				chunk.clear();
+				Files.write(sending, lines, StandardCharsets.UTF_8);
+			}
+			Files.delete(sending);
+			return true;
+		}
+		catch (IOException | RuntimeException e) {
+			// Dirio que no pde ser lido ou regravado: fica no disco, e as prximas alteraes vo para um arquivo novo
+			Log.LOGGER.warning("Audit spill file not sent: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static void write(List<AuditEntry> batch) {
+		long start = System.nanoTime();
+		Resilience.writeInternal(() -> dao.insertAll(batch));
+		Metrics.timer("audit_batch_seconds", "Audit batch insert time").recordSince(start);
+		Metrics.counter("audit_entries_written_total", "Audit entries written").add(batch.size());
+	}
+
+	private static void dropped(List<AuditEntry> list, String message) {
+		Metrics.counter("audit_entries_dropped_total", "Audit entries lost: not even the spill file was written")
+				.add(list.size());
+		Log.LOGGER.warning("Audit entries lost (" + list.size() + "): " + message);
+	}
+}
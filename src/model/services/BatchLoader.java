@@ -0,0 +1,98 @@
+package model.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/*
+Agrupa as buscas por chave feitas em uma janela curta de tempo (ou at a chamada de flush)
+e as executa em uma nica consulta. Chaves repetidas so buscadas uma s vez e
+cada chamador recebe o seu prprio CompletableFuture, com a sua prpria cpia do valor
+quando copy for informado (os valores so objetos alterveis, ex.: Seller).
+*/
+public class BatchLoader<K, V> {
+
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "batch-loader");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Function<Collection<K>, Map<K, V>> batchFunction;
+	private final long windowMillis;
+	private final int maxBatchSize;
+	private final UnaryOperator<V> copy;
+
+	private Map<K, List<CompletableFuture<V>>> pending = new LinkedHashMap<>();
+
+	public BatchLoader(Function<Collection<K>, Map<K, V>> batchFunction, long windowMillis, int maxBatchSize) {
+		this(batchFunction, windowMillis, maxBatchSize, null);
+	}
+
+	public BatchLoader(Function<Collection<K>, Map<K, V>> batchFunction, long windowMillis, int maxBatchSize,
+			UnaryOperator<V> copy) {
+		this.batchFunction = batchFunction;
+		this.windowMillis = windowMillis;
+		this.maxBatchSize = maxBatchSize;
+		this.copy = copy;
+	}
+
+	public CompletableFuture<V> load(K key) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		boolean full;
+		synchronized (this) {
+			boolean first = pending.isEmpty();
+			pending.computeIfAbsent(key, k -> new ArrayList<>()).add(future);
+			full = pending.size() >= maxBatchSize;
+			if (first && !full) {
+				scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (full) {
+			scheduler.execute(this::flush);
+		}
+		return future;
+	}
+
+	// Dispara as buscas pendentes sem esperar a janela, em segundo plano (ex.: ao final de um pulso do JavaFX)
+	public void flushAsync() {
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return;
+			}
+		}
+		scheduler.execute(this::flush);
+	}
+
+	// Dispara imediatamente as buscas pendentes, na thread de quem chamou
+	public void flush() {
+		Map<K, List<CompletableFuture<V>>> batch;
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			pending = new LinkedHashMap<>();
+		}
+		try {
+			Map<K, V> result = batchFunction.apply(batch.keySet());
+			batch.forEach((key, futures) -> {
+				V value = result.get(key);
+				for (int i = 0; i < futures.size(); i++) {
+					futures.get(i).complete(i == 0 || value == null || copy == null ? value : copy.apply(value));
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			batch.values().forEach(futures -> futures.forEach(f -> f.completeExceptionally(e)));
+		}
+	}
+}
@@ -1,30 +1,162 @@
 package model.services;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import db.DB;
+import db.DbCancelledException;
+import db.DbException;
+import db.Resilience;
+import diagnostics.Metrics;
+import model.cache.DepartmentStatsCache;
+import model.cache.ReferenceDataCache;
 import model.dao.DaoFactory;
 import model.dao.DepartmentDao;
+import model.dto.DepartmentStats;
 import model.entities.Department;
+import model.entities.TableStamp;
+import model.events.DataChangeEvent;
+import model.events.DataChangeEvent.Kind;
+import model.events.EventBus;
+import model.json.JsonMapper;
 
 public class DepartmentService {
 	
+	private static BatchLoader<Integer, Department> loader = null;
+	private static DepartmentStatsCache stats = null;
+	
 	private DepartmentDao dao = DaoFactory.createDepartmentDao();
 
 	public List<Department> findAll() {
-		return dao.findAll();
+		try {
+			TableStamp stamp = Resilience.read(dao::findStamp);
+			List<Department> list = Resilience.read(dao::findAll);
+			ReferenceDataCache.putDepartments(list, stamp);
+			return list;
+		}
+		catch (DbCancelledException e) {
+			throw e;
+		}
+		catch (DbException e) {
+			// Sem banco, continua funcionando somente leitura com a cpia local
+			List<Department> cached = ReferenceDataCache.getDepartments();
+			if (cached == null) {
+				throw e;
+			}
+			ReferenceDataCache.setOffline(true);
+			return cached;
+		}
+	}
+	
+	// Verses cancelveis das leituras feitas pelas telas (ver QueryHandle)
+	public QueryHandle<List<Department>> findAllAsync() {
+		return QueryHandle.start(this::findAll);
+	}
+	
+	public QueryHandle<List<Department>> revalidateAsync() {
+		return QueryHandle.start(this::revalidate);
+	}
+	
+	public Department findById(Integer id) {
+		return Resilience.read(() -> dao.findById(id));
+	}
+	
+	public TableStamp findStamp() {
+		return Resilience.read(dao::findStamp);
+	}
+	
+	public List<Department> findByIds(Collection<Integer> ids) {
+		return Resilience.read(() -> dao.findByIds(ids));
+	}
+	
+	// Buscas por id feitas ao mesmo tempo so agrupadas em um nico findByIds
+	public CompletableFuture<Department> loadById(Integer id) {
+		return loader().load(id);
+	}
+	
+	// Chamado ao final de cada pulso do JavaFX: as buscas feitas durante o pulso seguem juntas.
+	// Nada  criado aqui, para no abrir o banco na thread do JavaFX
+	public static synchronized void flushLoads() {
+		if (loader != null) {
+			loader.flushAsync();
+		}
+	}
+	
+	private static synchronized BatchLoader<Integer, Department> loader() {
+		if (loader == null) {
+			DepartmentService service = new DepartmentService();
+			loader = new BatchLoader<>(
+					ids -> service.findByIds(ids).stream().collect(Collectors.toMap(Department::getId, Function.identity())),
+					Long.parseLong(DB.getProperties().getProperty("batch.windowMillis", "2")), 500, Department::copy);
+		}
+		return loader;
+	}
+	
+	// Quantidade de vendedores e folha de pagamento por departamento (ausente: nenhum vendedor)
+	public Map<Integer, DepartmentStats> findStats() {
+		return stats().get();
+	}
+	
+	private static synchronized DepartmentStatsCache stats() {
+		if (stats == null) {
+			stats = new DepartmentStatsCache(DaoFactory.createSellerDao());
+		}
+		return stats;
+	}
+	
+	public List<Department> findCached() {
+		List<Department> list = ReferenceDataCache.getDepartments();
+		Metrics.cacheRequest("reference_departments", list != null);
+		return list;
+	}
+	
+	// Retorna a lista atualizada do banco, ou null se a cpia local ainda for vlida
+	public List<Department> revalidate() {
+		try {
+			TableStamp stamp = Resilience.read(dao::findStamp);
+			boolean unchanged = stamp.equals(ReferenceDataCache.getDepartmentStamp());
+			Metrics.cacheRevalidation("reference_departments", unchanged);
+			if (unchanged) {
+				return null;
+			}
+			return findAll();
+		}
+		catch (DbCancelledException e) {
+			throw e;
+		}
+		catch (DbException e) {
+			ReferenceDataCache.setOffline(true);
+			return null;
+		}
+	}
+	
+	// Outro departamento j usa o nome? excludeId  o departamento sendo editado (null se for novo)
+	public boolean isNameTaken(String name, Integer excludeId) {
+		return Resilience.read(() -> dao.existsByName(name, excludeId));
 	}
 	
 	public void saveOrUpdate(Department obj) {
 		if (obj.getId() == null) {
-			dao.insert(obj);
+			Resilience.write(() -> dao.insert(obj));
+			AuditLog.inserted(Department.class, obj.getId(), JsonMapper.toMap(obj));
+			EventBus.publish(new DataChangeEvent(Department.class, Kind.INSERTED, obj.getId()));
 		}
-		else {
-			dao.update(obj);
+		else if (!obj.getDirtyFields().isEmpty()) {
+			Map<String, Object> before = obj.getSnapshot() != null ? JsonMapper.toMap(obj.getSnapshot()) : null;
+			Resilience.write(() -> dao.update(obj));
+			AuditLog.updated(Department.class, obj.getId(), before, JsonMapper.toMap(obj));
+			EventBus.publish(new DataChangeEvent(Department.class, Kind.UPDATED, obj.getId()));
 		}
 	}
 	
 	public void remove(Department obj) {
-		dao.deleteById(obj.getId());
+		Resilience.write(() -> dao.deleteById(obj.getId()));
+		AuditLog.deleted(Department.class, obj.getId(), JsonMapper.toMap(obj));
+		EventBus.publish(new DataChangeEvent(Department.class, Kind.DELETED, obj.getId()));
 	}
 	
 }
@@ -0,0 +1,44 @@
+package model.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import db.Cancellation;
+
+/*
+Leitura em andamento devolvida pelos servios. cancel() interrompe o comando que est rodando
+no banco (Statement.cancel); o resultado termina ento com DbCancelledException.
+*/
+public class QueryHandle<T> {
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "query");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Cancellation cancellation = new Cancellation();
+	private final CompletableFuture<T> future;
+
+	private QueryHandle(Supplier<T> work) {
+		this.future = CompletableFuture.supplyAsync(() -> cancellation.call(work), executor);
+	}
+
+	public static <T> QueryHandle<T> start(Supplier<T> work) {
+		return new QueryHandle<>(work);
+	}
+
+	public CompletableFuture<T> getFuture() {
+		return future;
+	}
+
+	public void cancel() {
+		cancellation.cancel();
+	}
+
+	public boolean isCancelled() {
+		return cancellation.isCancelled();
+	}
+}
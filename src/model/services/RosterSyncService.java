@@ -0,0 +1,151 @@
+package model.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import db.DbException;
+import model.dao.DaoFactory;
+import model.dao.SellerSyncDao;
+import model.dto.SyncResult;
+import model.entities.Department;
+import model.entities.Seller;
+
+/*
+Sincronizao incremental da lista completa de vendedores enviada pelo RH.
+Cada linha do arquivo recebe um hash do seu contedo, comparado com o hash gravado em seller_sync:
+somente linhas novas ou alteradas so gravadas (INSERT ... ON DUPLICATE KEY UPDATE em lotes)
+e os vendedores ausentes do arquivo so removidos.
+Formato do arquivo (com cabealho): Id;Name;Email;BirthDate(yyyy-MM-dd);BaseSalary;DepartmentId
+*/
+public class RosterSyncService {
+
+	private static final int BATCH_SIZE = 1000;
+
+	private SellerSyncDao dao = DaoFactory.createSellerSyncDao();
+
+	public SyncResult sync(Path roster) {
+		// O arquivo inteiro  lido e validado antes da primeira gravao: um erro no deixa a carga pela metade
+		List<Seller> sellers = new ArrayList<>();
+		List<Long> lineHashes = new ArrayList<>();
+		read(roster, sellers, lineHashes);
+
+		dao.createSchema();
+		Map<Integer, Long> existing = dao.findHashes();
+
+		int inserted = 0;
+		int updated = 0;
+		int unchanged = 0;
+		List<Seller> batch = new ArrayList<>(BATCH_SIZE);
+		List<Long> hashes = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < sellers.size(); i++) {
+			Seller obj = sellers.get(i);
+			long hash = lineHashes.get(i);
+			// remove do mapa: o que sobrar no final no est no arquivo e deve ser apagado
+			Long current = existing.remove(obj.getId());
+			if (current == null) {
+				inserted++;
+			}
+			else if (current != hash) {
+				updated++;
+			}
+			else {
+				unchanged++;
+				continue;
+			}
+			batch.add(obj);
+			hashes.add(hash);
+			if (batch.size() == BATCH_SIZE) {
+				dao.upsertAll(batch, hashes);
+				batch.clear();
+				hashes.clear();
+			}
+		}
+		dao.upsertAll(batch, hashes);
+		dao.deleteByIds(existing.keySet());
+
+		return new SyncResult(inserted, updated, existing.size(), unchanged);
+	}
+
+	// L todas as linhas, recusando campos invlidos, ids ou emails repetidos e departamentos inexistentes
+	private static void read(Path roster, List<Seller> sellers, List<Long> hashes) {
+		Set<Integer> departments = new HashSet<>();
+		for (Department dep : DaoFactory.createDepartmentDao().findAll()) {
+			departments.add(dep.getId());
+		}
+		Map<Integer, Integer> lineById = new HashMap<>();
+		Map<String, Integer> lineByEmail = new HashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(roster, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isBlank()) {
+					continue;
+				}
+				Seller obj = parse(line, lineNumber);
+				Integer previous = lineById.put(obj.getId(), lineNumber);
+				if (previous != null) {
+					throw new DbException("Invalid roster line " + lineNumber + ": Id " + obj.getId()
+							+ " already used on line " + previous);
+				}
+				previous = lineByEmail.put(obj.getEmail().toLowerCase(), lineNumber);
+				if (previous != null) {
+					throw new DbException("Invalid roster line " + lineNumber + ": Email " + obj.getEmail()
+							+ " already used on line " + previous);
+				}
+				if (!departments.contains(obj.getDepartment().getId())) {
+					throw new DbException("Invalid roster line " + lineNumber + ": unknown DepartmentId "
+							+ obj.getDepartment().getId());
+				}
+				sellers.add(obj);
+				hashes.add(contentHash(line));
+			}
+		}
+		catch (IOException e) {
+			throw new DbException("Error reading roster: " + e.getMessage());
+		}
+	}
+
+	private static Seller parse(String line, int lineNumber) {
+		String[] fields = line.split(";", -1);
+		if (fields.length != 6) {
+			throw new DbException("Invalid roster line " + lineNumber + ": expected 6 fields");
+		}
+		try {
+			LocalDate birth = LocalDate.parse(fields[3].trim());
+			Date birthDate = Date.from(birth.atStartOfDay(ZoneId.systemDefault()).toInstant());
+			return new Seller(Integer.parseInt(fields[0].trim()), fields[1].trim(), fields[2].trim(), birthDate,
+					Double.parseDouble(fields[4].trim()), new Department(Integer.parseInt(fields[5].trim()), null));
+		}
+		catch (RuntimeException e) {
+			throw new DbException("Invalid roster line " + lineNumber + ": " + e.getMessage());
+		}
+	}
+
+	// FNV-1a de 64 bits sobre a linha normalizada
+	static long contentHash(String line) {
+		long hash = 0xcbf29ce484222325L;
+		for (String field : line.split(";", -1)) {
+			String value = field.trim();
+			for (int i = 0; i < value.length(); i++) {
+				hash ^= value.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			hash ^= 0x1f;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
@@ -1,30 +1,354 @@
 package model.services;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import db.DB;
+import db.DbCancelledException;
+import db.DbException;
+import db.Resilience;
+import diagnostics.Metrics;
+import model.cache.ReferenceDataCache;
 import model.dao.DaoFactory;
 import model.dao.SellerDao;
+import model.dto.SellerRow;
+import model.entities.Department;
 import model.entities.Seller;
+import model.entities.TableStamp;
+import model.events.DataChangeEvent;
+import model.events.DataChangeEvent.Kind;
+import model.events.EventBus;
+import model.json.JsonMapper;
 
 public class SellerService {
 	
+	private static BatchLoader<Integer, Seller> loader = null;
+	
+	private static SellerWriteQueue writeQueue = null;
+	
 	private SellerDao dao = DaoFactory.createSellerDao();
 
+	// Ordem da lista vinda do banco, para que as linhas alteradas entrem na mesma posio
+	public static Comparator<SellerRow> rowOrder() {
+		return Comparator.comparing(SellerRow::getName, DaoFactory.getNameOrder());
+	}
+	
 	public List<Seller> findAll() {
-		return dao.findAll();
+		return Resilience.read(dao::findAll);
+	}
+	
+	// Lista leve usada pela tela de vendedores; o Seller completo s  lido ao abrir o formulrio
+	public List<SellerRow> findAllRows() {
+		try {
+			TableStamp stamp = Resilience.read(dao::findStamp);
+			List<SellerRow> list = Resilience.read(dao::findAllRows);
+			ReferenceDataCache.putSellers(list, stamp);
+			return withPendingWrites(list);
+		}
+		catch (DbCancelledException e) {
+			throw e;
+		}
+		catch (DbException e) {
+			// Sem banco, continua funcionando somente leitura com a cpia local
+			List<SellerRow> cached = ReferenceDataCache.getSellers();
+			if (cached == null) {
+				throw e;
+			}
+			ReferenceDataCache.setOffline(true);
+			return cached;
+		}
+	}
+	
+	// Verses cancelveis das leituras feitas pelas telas (ver QueryHandle)
+	public QueryHandle<List<SellerRow>> findAllRowsAsync() {
+		return QueryHandle.start(this::findAllRows);
+	}
+	
+	public QueryHandle<List<SellerRow>> revalidateAsync() {
+		return QueryHandle.start(this::revalidate);
+	}
+	
+	public Seller findById(Integer id) {
+		SellerWriteQueue queue = getWriteQueue();
+		Seller pending = queue == null ? null : queue.find(id);
+		if (pending != null) {
+			return pending;
+		}
+		return Resilience.read(() -> dao.findById(id));
+	}
+	
+	public List<Seller> findByDepartment(Department department) {
+		return Resilience.read(() -> dao.findByDepartment(department));
+	}
+	
+	public List<SellerRow> findRowsByDepartment(Department department) {
+		return Resilience.read(() -> dao.findRowsByDepartment(department));
+	}
+	
+	public TableStamp findStamp() {
+		return Resilience.read(dao::findStamp);
+	}
+	
+	public List<Seller> findByIds(Collection<Integer> ids) {
+		return Resilience.read(() -> dao.findByIds(ids));
+	}
+	
+	// Linhas da lista somente dos vendedores informados, para atualizar a tela sem recarregar tudo
+	public List<SellerRow> findRowsByIds(Collection<Integer> ids) {
+		SellerWriteQueue queue = getWriteQueue();
+		if (queue == null) {
+			return Resilience.read(() -> dao.findRowsByIds(ids));
+		}
+		List<SellerRow> list = new ArrayList<>();
+		List<Integer> stored = new ArrayList<>();
+		for (Integer id : ids) {
+			Seller pending = queue.find(id);
+			if (pending != null) {
+				list.add(SellerRow.of(pending));
+			}
+			else if (id > 0) {
+				stored.add(id);
+			}
+		}
+		if (!stored.isEmpty()) {
+			list.addAll(Resilience.read(() -> dao.findRowsByIds(stored)));
+		}
+		return list;
+	}
+	
+	// Buscas por id feitas ao mesmo tempo so agrupadas em um nico findByIds
+	public CompletableFuture<Seller> loadById(Integer id) {
+		SellerWriteQueue queue = getWriteQueue();
+		Seller pending = queue == null ? null : queue.find(id);
+		if (pending != null) {
+			return CompletableFuture.completedFuture(pending);
+		}
+		return loader().load(id);
+	}
+	
+	// Chamado ao final de cada pulso do JavaFX: as buscas feitas durante o pulso seguem juntas.
+	// Nada  criado aqui, para no abrir o banco na thread do JavaFX
+	public static synchronized void flushLoads() {
+		if (loader != null) {
+			loader.flushAsync();
+		}
+	}
+	
+	private static synchronized BatchLoader<Integer, Seller> loader() {
+		if (loader == null) {
+			SellerService service = new SellerService();
+			loader = new BatchLoader<>(
+					ids -> service.findByIds(ids).stream().collect(Collectors.toMap(Seller::getId, Function.identity())),
+					Long.parseLong(DB.getProperties().getProperty("batch.windowMillis", "2")), 500, Seller::copy);
+		}
+		return loader;
+	}
+	
+	// Gravao adiada (writeBehind.enabled=true); null quando desligada ou no servidor da API
+	public static synchronized SellerWriteQueue getWriteQueue() {
+		Properties props = DB.getProperties();
+		if (writeQueue == null && Boolean.parseBoolean(props.getProperty("writeBehind.enabled", "false"))
+				&& !DB.isServerMode()) {
+			writeQueue = new SellerWriteQueue(DaoFactory.createSellerDao(),
+					Paths.get(props.getProperty("writeBehind.journal", "seller-writes.journal")),
+					Long.parseLong(props.getProperty("writeBehind.flushMillis", "500")));
+		}
+		return writeQueue;
+	}
+	
+	// As gravaes ainda no enviadas aparecem na lista como se j estivessem no banco, na posio
+	// da ordem da lista (a tela localiza as linhas por busca binria)
+	private static List<SellerRow> withPendingWrites(List<SellerRow> list) {
+		SellerWriteQueue queue = getWriteQueue();
+		if (queue == null || queue.size() == 0) {
+			return list;
+		}
+		Map<Integer, SellerRow> pendingRows = new LinkedHashMap<>();
+		for (Seller pending : queue.findAll()) {
+			pendingRows.put(pending.getId(), SellerRow.of(pending));
+		}
+		List<SellerRow> rows = new ArrayList<>(list);
+		rows.removeIf(row -> pendingRows.containsKey(row.getId()));
+		Comparator<SellerRow> order = rowOrder();
+		for (SellerRow row : pendingRows.values()) {
+			int index = Collections.binarySearch(rows, row, order);
+			rows.add(index < 0 ? -index - 1 : index, row);
+		}
+		return rows;
+	}
+	
+	public List<SellerRow> findCached() {
+		List<SellerRow> list = ReferenceDataCache.isSellersComplete() ? ReferenceDataCache.getSellers() : null;
+		Metrics.cacheRequest("reference_sellers", list != null);
+		return list;
+	}
+	
+	// Retorna a lista atualizada do banco, ou null se a cpia local ainda for vlida
+	public List<SellerRow> revalidate() {
+		try {
+			TableStamp stamp = Resilience.read(dao::findStamp);
+			boolean unchanged = stamp.equals(ReferenceDataCache.getSellerStamp());
+			Metrics.cacheRevalidation("reference_sellers", unchanged);
+			if (unchanged) {
+				return null;
+			}
+			return findAllRows();
+		}
+		catch (DbCancelledException e) {
+			throw e;
+		}
+		catch (DbException e) {
+			ReferenceDataCache.setOffline(true);
+			return null;
+		}
+	}
+	
+	// Outro vendedor j usa o email? Considera tambm as gravaes adiadas ainda no enviadas
+	public boolean isEmailTaken(String email, Integer excludeId) {
+		SellerWriteQueue queue = getWriteQueue();
+		if (queue != null) {
+			for (Seller pending : queue.findAll()) {
+				if (pending.getEmail().equalsIgnoreCase(email) && !pending.getId().equals(excludeId)) {
+					return true;
+				}
+			}
+		}
+		return Resilience.read(() -> dao.existsByEmail(email, excludeId));
 	}
 	
 	public void saveOrUpdate(Seller obj) {
+		SellerWriteQueue queue = getWriteQueue();
+		if (queue != null) {
+			// Grava no dirio e retorna; o envio ao banco  feito em segundo plano
+			if (obj.getId() != null && obj.getDirtyFields().isEmpty()) {
+				return;
+			}
+			int id = queue.enqueue(obj);
+			EventBus.publish(new DataChangeEvent(Seller.class, obj.getId() == null ? Kind.INSERTED : Kind.UPDATED, id));
+			return;
+		}
 		if (obj.getId() == null) {
-			dao.insert(obj);
+			Resilience.write(() -> dao.insert(obj));
+			AuditLog.inserted(Seller.class, obj.getId(), JsonMapper.toMap(obj));
+			EventBus.publish(new DataChangeEvent(Seller.class, Kind.INSERTED, obj.getId()));
 		}
-		else {
-			dao.update(obj);
+		else if (!obj.getDirtyFields().isEmpty()) {
+			// Valores antigos: o snapshot lido do banco, antes de o update marcar o objeto como gravado
+			Map<String, Object> before = obj.isTracked() ? JsonMapper.toMap(obj.getSnapshot()) : null;
+			SellerRow previous = Resilience.write(() -> dao.update(obj));
+			AuditLog.updated(Seller.class, obj.getId(), before, JsonMapper.toMap(obj));
+			EventBus.publish(new DataChangeEvent(Seller.class, Kind.UPDATED, List.of(obj.getId()), rowById(previous)));
 		}
 	}
 	
+	// Incluso enviada pelo write-behind de um cliente da API (POST /sellers com writeKey)
+	public void insert(Seller obj, String writeKey) {
+		Resilience.write(() -> dao.insert(obj, writeKey));
+		AuditLog.inserted(Seller.class, obj.getId(), JsonMapper.toMap(obj));
+		EventBus.publish(new DataChangeEvent(Seller.class, Kind.INSERTED, obj.getId()));
+	}
+	
+	// Id do vendedor includo com a chave; null se a incluso no chegou ao banco
+	public Integer findIdByWriteKey(String writeKey) {
+		return Resilience.read(() -> dao.findIdByWriteKey(writeKey));
+	}
+	
+	// Incluso em lote (POST /sellers/batch): um nico insertAll, auditado e publicado como os demais
+	public void insertAll(List<Seller> list) {
+		Resilience.write(() -> dao.insertAll(list));
+		for (Seller obj : list) {
+			AuditLog.inserted(Seller.class, obj.getId(), JsonMapper.toMap(obj));
+		}
+		EventBus.publish(new DataChangeEvent(Seller.class, Kind.INSERTED,
+				list.stream().map(Seller::getId).collect(Collectors.toList())));
+	}
+	
 	public void remove(Seller obj) {
-		dao.deleteById(obj.getId());
+		cancelPendingWrites(Collections.singletonList(obj.getId()));
+		// Id temporrio de uma incluso j enviada (write-behind): exclui pelo id real
+		Integer id = resolve(obj.getId());
+		SellerRow previous = Resilience.write(() -> dao.deleteById(id));
+		// Id negativo: incluso ainda no enviada ao banco, cancelada acima
+		if (id > 0) {
+			AuditLog.deleted(Seller.class, id, JsonMapper.toMap(obj));
+		}
+		EventBus.publish(new DataChangeEvent(Seller.class, Kind.DELETED, List.of(id), rowById(previous)));
+	}
+	
+	public void removeAll(List<SellerRow> list) {
+		List<Integer> ids = idsOf(list);
+		cancelPendingWrites(ids);
+		List<Integer> stored = ids.stream().map(SellerService::resolve).collect(Collectors.toList());
+		Map<Integer, SellerRow> previous = rowsById(Resilience.write(() -> dao.deleteByIds(stored)));
+		for (SellerRow row : list) {
+			Integer id = resolve(row.getId());
+			if (id > 0) {
+				AuditLog.deleted(Seller.class, id, JsonMapper.toMap(row));
+			}
+		}
+		EventBus.publish(new DataChangeEvent(Seller.class, Kind.DELETED, stored, previous));
+	}
+	
+	public void moveToDepartment(List<SellerRow> list, Department department) {
+		SellerWriteQueue queue = getWriteQueue();
+		// Com o write-behind, os vendedores com gravao pendente mudam na pendncia e no no banco
+		List<Integer> stored = queue == null ? idsOf(list) : queue.moveToDepartment(idsOf(list), department);
+		Map<Integer, SellerRow> previous = stored.isEmpty() ? Map.of()
+				: rowsById(Resilience.write(() -> dao.updateDepartment(stored, department)));
+		// As linhas novas vo no evento, j com o id real: a lista as aplica sem consultar o banco
+		Set<Integer> written = new HashSet<>(stored);
+		List<SellerRow> moved = new ArrayList<>();
+		for (SellerRow row : list) {
+			Integer id = resolve(row.getId());
+			moved.add(new SellerRow(id, row.getName(), row.getEmail(), row.getBirthDate(), row.getBaseSalary(),
+					department));
+			// As pendncias so auditadas quando forem enviadas ao banco
+			if (written.contains(id)) {
+				AuditLog.updated(Seller.class, id, JsonMapper.toMap(row), JsonMapper.toMap(row.withDepartment(department)));
+			}
+		}
+		EventBus.publish(new DataChangeEvent(Seller.class, Kind.UPDATED, idsOf(moved), previous, rowsById(moved)));
+	}
+	
+	private static void cancelPendingWrites(Collection<Integer> ids) {
+		SellerWriteQueue queue = getWriteQueue();
+		if (queue != null) {
+			queue.cancel(ids);
+		}
+	}
+	
+	private static Integer resolve(Integer id) {
+		SellerWriteQueue queue = getWriteQueue();
+		return queue == null ? id : queue.resolve(id);
+	}
+	
+	private static List<Integer> idsOf(List<SellerRow> list) {
+		return list.stream().map(SellerRow::getId).collect(Collectors.toList());
+	}
+	
+	/* Os valores anteriores dos eventos, que o DepartmentStatsCache subtrai dos totais, so as linhas
+	   devolvidas pela gravao: lidas no banco principal, na mesma transao. As linhas da tela podem
+	   estar desatualizadas (outro usurio mudou o salrio depois da carga) e deixariam os totais errados */
+	private static Map<Integer, SellerRow> rowById(SellerRow row) {
+		return row == null ? Map.of() : Map.of(row.getId(), row);
+	}
+	
+	private static Map<Integer, SellerRow> rowsById(List<SellerRow> list) {
+		Map<Integer, SellerRow> map = new LinkedHashMap<>();
+		list.forEach(row -> map.put(row.getId(), row));
+		return map;
 	}
 	
 }
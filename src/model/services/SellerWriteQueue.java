@@ -0,0 +1,469 @@
+package model.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import db.DbConnectionException;
+import db.DbException;
+import db.DbUnavailableException;
+import db.Resilience;
+import diagnostics.Log;
+import diagnostics.Metrics;
+import model.dao.SellerDao;
+import model.dto.SellerRow;
+import model.entities.Department;
+import model.entities.Seller;
+import model.events.DataChangeEvent;
+import model.events.DataChangeEvent.Kind;
+import model.events.EventBus;
+import model.json.Json;
+import model.json.JsonMapper;
+
+/*
+Gravao adiada (write-behind) dos vendedores salvos pelo formulrio (writeBehind.enabled=true).
+- cada gravao  anexada a um dirio local (writeBehind.journal) antes de retornar, e o dirio
+   relido na prxima inicializao se o programa fechar com gravaes pendentes
+- as alteraes pendentes de um mesmo vendedor so agrupadas: fica o valor mais recente e os campos
+  alterados so calculados contra a leitura original, ento o UPDATE final leva s o que mudou
+- vendedores novos recebem um id temporrio negativo at serem inseridos; depois disso o id temporrio
+  continua valendo (enqueue, find, resolve) para telas que ainda o guardam
+- o id real  anexado ao dirio assim que o INSERT termina, ento reler o dirio depois de uma queda
+  no insere o vendedor de novo: as pendncias do id temporrio viram alteraes do id real
+- antes do INSERT uma chave (writeKey)  anexada ao dirio e gravada junto com o vendedor: se a conexo
+  ou o programa cair depois do commit e antes de o id real chegar ao dirio, a nova tentativa encontra o
+  vendedor pela chave em vez de inseri-lo de novo
+- excludo enquanto o INSERT estava em andamento: o vendedor recm-inserido  excludo em seguida
+- uma thread envia as pendncias a cada writeBehind.flushMillis; falhas de conexo so repetidas na
+  prxima rodada, as demais (ex.: email duplicado) descartam a gravao e avisam os ouvintes
+*/
+public class SellerWriteQueue {
+
+	private final SellerDao dao;
+	private final Path journal;
+
+	// Chave: id do vendedor, ou id temporrio (negativo) para os que ainda no foram inseridos
+	private final LinkedHashMap<Integer, Seller> pending = new LinkedHashMap<>();
+	private int nextTemporaryId = -1;
+
+	// Ids temporrios j inseridos, com o id real que receberam
+	private final Map<Integer, Integer> insertedIds = new HashMap<>();
+
+	// Chave das incluses j tentadas, por id temporrio; sem resposta do banco, a incluso pode ter entrado
+	private final Map<Integer, String> writeKeys = new HashMap<>();
+
+	// Vendedores excludos enquanto eram inseridos; a excluso  enviada na prxima rodada
+	private final Set<Integer> pendingDeletes = new LinkedHashSet<>();
+
+	private final List<BiConsumer<Seller, RuntimeException>> failureListeners = new CopyOnWriteArrayList<>();
+
+	private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "write-behind");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public SellerWriteQueue(SellerDao dao, Path journal, long flushMillis) {
+		this.dao = dao;
+		this.journal = journal;
+		recover();
+		Metrics.gauge("write_behind_pending", "Seller saves waiting to be sent to the database", this::size);
+		worker.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void addFailureListener(BiConsumer<Seller, RuntimeException> listener) {
+		failureListeners.add(listener);
+	}
+
+	// Registra a gravao e retorna o id com que o vendedor aparece nas listas (temporrio se for novo)
+	public synchronized int enqueue(Seller obj) {
+		Integer key = resolve(obj.getId());
+		if (key == null) {
+			key = nextTemporaryId--;
+		}
+		Seller previous = pending.get(key);
+		Seller entry = obj.withSnapshot(previous != null ? previous.getSnapshot() : obj.getSnapshot());
+		entry.setId(key);
+		append(key, entry);
+		pending.put(key, entry);
+		return key;
+	}
+
+	// Cpia do valor pendente, para exibir ou editar; null se no houver gravao pendente
+	public synchronized Seller find(Integer id) {
+		Seller entry = pending.get(resolve(id));
+		return entry == null ? null : entry.copy();
+	}
+
+	// Id real de um vendedor j inserido a partir do id temporrio; os demais ids voltam como vieram
+	public synchronized Integer resolve(Integer id) {
+		if (id == null || id >= 0) {
+			return id;
+		}
+		return insertedIds.getOrDefault(id, id);
+	}
+
+	public synchronized List<Seller> findAll() {
+		List<Seller> list = new ArrayList<>();
+		for (Seller entry : pending.values()) {
+			list.add(entry.copy());
+		}
+		return list;
+	}
+
+	// Excluso de vendedores com gravao pendente: a excluso prevalece
+	public synchronized void cancel(Collection<Integer> ids) {
+		List<Integer> keys = new ArrayList<>();
+		for (Integer id : ids) {
+			keys.add(resolve(id));
+		}
+		if (pending.keySet().removeAll(keys)) {
+			compact();
+		}
+	}
+
+	/* Mudana de departamento em lote: os vendedores com gravao pendente (incluso ou alterao) mudam
+	   na prpria pendncia, que leva o novo departamento quando for enviada. Devolve os ids reais dos demais,
+	   que a mudana deve gravar no banco */
+	public synchronized List<Integer> moveToDepartment(Collection<Integer> ids, Department department) {
+		List<Integer> stored = new ArrayList<>();
+		for (Integer id : ids) {
+			Integer key = resolve(id);
+			Seller entry = pending.get(key);
+			if (entry == null) {
+				// Negativo sem pendncia: incluso cancelada, no h o que mudar
+				if (key > 0) {
+					stored.add(key);
+				}
+				continue;
+			}
+			// Um objeto novo, e no o da pendncia alterado: um envio em andamento percebe que ela mudou
+			Seller moved = entry.withSnapshot(entry.getSnapshot());
+			moved.setId(key);
+			moved.setDepartment(department);
+			append(key, moved);
+			pending.put(key, moved);
+		}
+		return stored;
+	}
+
+	public synchronized int size() {
+		return pending.size() + pendingDeletes.size();
+	}
+
+	// Envia as pendncias; chamado pela thread do write-behind e ao encerrar
+	public void flush() {
+		List<Map.Entry<Integer, Seller>> batch;
+		List<Integer> deletes;
+		synchronized (this) {
+			if (pending.isEmpty() && pendingDeletes.isEmpty()) {
+				return;
+			}
+			batch = new ArrayList<>(new LinkedHashMap<>(pending).entrySet());
+			deletes = new ArrayList<>(pendingDeletes);
+		}
+		for (Integer id : deletes) {
+			try {
+				flushDelete(id);
+			}
+			catch (DbConnectionException | DbUnavailableException e) {
+				return;
+			}
+			catch (RuntimeException e) {
+				Log.LOGGER.warning("Write-behind delete of seller " + id + " failed: " + e.getMessage());
+				synchronized (this) {
+					pendingDeletes.remove(id);
+					compact();
+				}
+			}
+		}
+		for (Map.Entry<Integer, Seller> item : batch) {
+			try {
+				if (item.getKey() < 0) {
+					flushInsert(item.getKey(), item.getValue());
+				}
+				else {
+					flushUpdate(item.getKey(), item.getValue());
+				}
+			}
+			catch (DbConnectionException | DbUnavailableException e) {
+				// Banco fora do ar: as pendncias continuam no dirio e sero enviadas na prxima rodada
+				break;
+			}
+			catch (RuntimeException e) {
+				discard(item.getKey(), item.getValue(), e);
+			}
+		}
+		synchronized (this) {
+			compact();
+		}
+	}
+
+	public void shutdown() {
+		worker.shutdown();
+		flush();
+	}
+
+	private void flushInsert(int temporaryId, Seller entry) {
+		Seller obj = entry.withSnapshot(null);
+		obj.setId(null);
+		String writeKey;
+		boolean attempted;
+		synchronized (this) {
+			writeKey = writeKeys.get(temporaryId);
+			attempted = writeKey != null;
+			if (!attempted) {
+				// No dirio antes do INSERT: uma queda no meio no deixa a incluso sem como ser conferida
+				writeKey = UUID.randomUUID().toString();
+				appendWriteKey(temporaryId, writeKey);
+				writeKeys.put(temporaryId, writeKey);
+			}
+		}
+		String key = writeKey;
+		Integer applied = attempted ? Resilience.read(() -> dao.findIdByWriteKey(key)) : null;
+		if (applied != null) {
+			// Entrou na tentativa anterior; a auditoria foi feita (ou perdida) com ela
+			obj.setId(applied);
+			obj.markClean();
+		}
+		else {
+			Resilience.write(() -> dao.insert(obj, key));
+			AuditLog.inserted(Seller.class, obj.getId(), JsonMapper.toMap(obj));
+		}
+		boolean deleted;
+		synchronized (this) {
+			// Antes de tudo o id real vai para o dirio: relido depois de uma queda, no insere de novo
+			appendInserted(temporaryId, obj.getId());
+			insertedIds.put(temporaryId, obj.getId());
+			writeKeys.remove(temporaryId);
+			Seller newer = pending.remove(temporaryId);
+			deleted = newer == null;
+			if (deleted) {
+				// Excludo enquanto era inserido: a excluso segue para o id real
+				pendingDeletes.add(obj.getId());
+				appendDelete(obj.getId());
+			}
+			else if (newer != entry) {
+				// Editado de novo enquanto era inserido: vira uma alterao do vendedor j inserido
+				Seller inserted = obj.copy();
+				inserted.markClean();
+				Seller update = newer.withSnapshot(inserted.getSnapshot());
+				update.setId(obj.getId());
+				pending.put(obj.getId(), update);
+			}
+		}
+		EventBus.publish(new DataChangeEvent(Seller.class, Kind.DELETED, temporaryId));
+		if (deleted) {
+			try {
+				flushDelete(obj.getId());
+			}
+			catch (RuntimeException e) {
+				// Continua em pendingDeletes (e no dirio): vai na prxima rodada
+			}
+		}
+		else {
+			EventBus.publish(new DataChangeEvent(Seller.class, Kind.INSERTED, obj.getId()));
+		}
+	}
+
+	// A excluso j foi publicada quando o usurio excluiu o vendedor; aqui s vai ao banco e  auditoria
+	private void flushDelete(int id) {
+		Seller obj = Resilience.read(() -> dao.findById(id));
+		Resilience.write(() -> dao.deleteById(id));
+		if (obj != null) {
+			AuditLog.deleted(Seller.class, id, JsonMapper.toMap(obj));
+		}
+		synchronized (this) {
+			pendingDeletes.remove(id);
+		}
+	}
+
+	private void flushUpdate(int id, Seller entry) {
+		if (!entry.getDirtyFields().isEmpty()) {
+			Map<String, Object> before = entry.isTracked() ? JsonMapper.toMap(entry.getSnapshot()) : null;
+			// O banco s muda agora; o evento da hora em que foi enfileirado no trazia valores anteriores.
+			// Vm do prprio update, lidos na transao: o snapshot  de quando a tela carregou o vendedor
+			Map<Integer, SellerRow> previous = new HashMap<>();
+			SellerRow row = Resilience.write(() -> dao.update(entry));
+			if (row != null) {
+				previous.put(id, row);
+			}
+			AuditLog.updated(Seller.class, id, before, JsonMapper.toMap(entry));
+			EventBus.publish(new DataChangeEvent(Seller.class, Kind.UPDATED, List.of(id), previous));
+		}
+		synchronized (this) {
+			pending.remove(id, entry);
+		}
+	}
+
+	private void discard(int key, Seller entry, RuntimeException error) {
+		synchronized (this) {
+			pending.remove(key, entry);
+		}
+		Metrics.counter("write_behind_failures_total", "Seller saves discarded after a database error").increment();
+		// As listas voltam a mostrar o que est no banco
+		EventBus.publish(new DataChangeEvent(Seller.class, key < 0 ? Kind.DELETED : Kind.UPDATED, key));
+		Seller failed = entry.copy();
+		if (key < 0) {
+			failed.setId(null);
+		}
+		for (BiConsumer<Seller, RuntimeException> listener : failureListeners) {
+			listener.accept(failed, error);
+		}
+	}
+
+	// Cada linha do dirio: {"key":..., "seller":{...}, "snapshot":{...}}
+	private static String toLine(int key, Seller entry) {
+		Map<String, Object> line = new LinkedHashMap<>();
+		line.put("key", key);
+		line.put("seller", JsonMapper.toMap(entry));
+		line.put("snapshot", entry.getSnapshot() == null ? null : JsonMapper.toMap(entry.getSnapshot()));
+		return Json.write(line);
+	}
+
+	// Id real recebido por um id temporrio: {"key":..., "insertedAs":...}
+	private void appendInserted(int temporaryId, int id) {
+		Map<String, Object> line = new LinkedHashMap<>();
+		line.put("key", temporaryId);
+		line.put("insertedAs", id);
+		appendLine(Json.write(line));
+	}
+
+	// Chave da incluso de um id temporrio, anotada antes do INSERT: {"key":..., "writeKey":...}
+	private void appendWriteKey(int temporaryId, String writeKey) {
+		appendLine(toWriteKeyLine(temporaryId, writeKey));
+	}
+
+	private static String toWriteKeyLine(int temporaryId, String writeKey) {
+		Map<String, Object> line = new LinkedHashMap<>();
+		line.put("key", temporaryId);
+		line.put("writeKey", writeKey);
+		return Json.write(line);
+	}
+
+	// Excluso ainda no enviada: {"delete":...}
+	private void appendDelete(int id) {
+		appendLine(toDeleteLine(id));
+	}
+
+	private static String toDeleteLine(int id) {
+		Map<String, Object> line = new LinkedHashMap<>();
+		line.put("delete", id);
+		return Json.write(line);
+	}
+
+	private void append(int key, Seller entry) {
+		appendLine(toLine(key, entry));
+	}
+
+	// Grava no disco (force) antes de retornar, para a gravao sobreviver a uma queda do programa
+	private void appendLine(String text) {
+		byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+		try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(bytes));
+			channel.force(false);
+		}
+		catch (IOException e) {
+			throw new DbException("Write-behind journal not written: " + e.getMessage());
+		}
+	}
+
+	// Regrava o dirio s com o que ainda est pendente
+	private void compact() {
+		try {
+			Path tmp = journal.toAbsolutePath().resolveSibling(journal.getFileName() + ".tmp");
+			List<String> lines = new ArrayList<>();
+			for (Integer id : pendingDeletes) {
+				lines.add(toDeleteLine(id));
+			}
+			writeKeys.keySet().retainAll(pending.keySet());
+			for (Map.Entry<Integer, Seller> item : pending.entrySet()) {
+				lines.add(toLine(item.getKey(), item.getValue()));
+				String writeKey = writeKeys.get(item.getKey());
+				if (writeKey != null) {
+					lines.add(toWriteKeyLine(item.getKey(), writeKey));
+				}
+			}
+			Files.write(tmp, lines, StandardCharsets.UTF_8);
+			Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			// O dirio antigo continua no lugar; a prxima rodada tenta compactar de novo
+			Log.LOGGER.warning("Write-behind journal not compacted: " + e.getMessage());
+		}
+	}
+
+	private synchronized void recover() {
+		if (!Files.exists(journal)) {
+			return;
+		}
+		try {
+			for (String text : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+				if (text.isBlank()) {
+					continue;
+				}
+				Map<String, Object> line = Json.parseObject(text);
+				if (line.containsKey("delete")) {
+					int id = JsonMapper.toInteger(line.get("delete"));
+					pending.remove(id);
+					pendingDeletes.add(id);
+					continue;
+				}
+				int key = JsonMapper.toInteger(line.get("key"));
+				if (line.containsKey("insertedAs")) {
+					recoverInserted(key, JsonMapper.toInteger(line.get("insertedAs")));
+					continue;
+				}
+				if (line.containsKey("writeKey")) {
+					writeKeys.put(key, (String) line.get("writeKey"));
+					continue;
+				}
+				// Pendncia anotada com o id temporrio depois do INSERT: pertence ao id real
+				key = resolve(key);
+				Seller snapshot = JsonMapper.toSeller(line.get("snapshot"));
+				Seller previous = pending.get(key);
+				Seller entry = JsonMapper.toSeller(line.get("seller"))
+						.withSnapshot(previous != null ? previous.getSnapshot() : snapshot);
+				pending.put(key, entry);
+				nextTemporaryId = Math.min(nextTemporaryId, key - 1);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			Log.LOGGER.warning("Write-behind journal not recovered: " + e.getMessage());
+		}
+	}
+
+	// O INSERT j foi feito: o que estiver pendente no id temporrio vira um UPDATE completo do id real
+	// (sem snapshot), que no pior caso regrava os mesmos valores
+	private void recoverInserted(int temporaryId, int id) {
+		insertedIds.put(temporaryId, id);
+		writeKeys.remove(temporaryId);
+		nextTemporaryId = Math.min(nextTemporaryId, temporaryId - 1);
+		Seller entry = pending.remove(temporaryId);
+		if (entry != null && !pending.containsKey(id)) {
+			Seller update = entry.withSnapshot(null);
+			update.setId(id);
+			pending.put(id, update);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+public class ReplicaRouterTest {
+
+	// Rplicas H2 em memria; cada teste usa nomes prprios para no compartilhar conexes
+	private static ReplicaRouter router(String balance, String... names) {
+		StringBuilder urls = new StringBuilder();
+		for (String name : names) {
+			urls.append(urls.length() == 0 ? "" : ",").append("jdbc:h2:mem:").append(name).append(";DB_CLOSE_DELAY=-1");
+		}
+		Properties props = new Properties();
+		props.setProperty("replica.urls", urls.toString());
+		props.setProperty("replica.balance", balance);
+		props.setProperty("replica.retryMillis", "60000");
+		return new ReplicaRouter(props);
+	}
+
+	@Test
+	public void releaseNeverMakesInFlightNegative() {
+		ReplicaRouter router = router("least_loaded", "release1");
+		Connection conn = router.acquire();
+		assertEquals(1, router.inFlight(conn));
+		router.release(conn);
+		router.release(conn);
+		assertEquals(0, router.inFlight(conn));
+	}
+
+	@Test
+	public void releasedConnectionIsReusedUnlessClosed() throws SQLException {
+		ReplicaRouter router = router("least_loaded", "release2");
+		Connection first = router.acquire();
+		router.release(first);
+		assertSame(first, router.acquire());
+		first.close();
+		router.release(first);
+		Connection current = router.acquire();
+		assertNotSame(first, current);
+		assertEquals(1, router.inFlight(current));
+		router.release(first);
+		assertEquals(1, router.inFlight(current));
+	}
+
+	@Test
+	public void concurrentReadsGetTheirOwnConnections() {
+		ReplicaRouter router = router("least_loaded", "pool1");
+		Connection first = router.acquire();
+		Connection second = router.acquire();
+		assertNotSame(first, second);
+		assertEquals(2, router.inFlight(first));
+	}
+
+	@Test
+	public void discardDoesNotCloseConnectionsInUseByOtherThreads() throws SQLException {
+		ReplicaRouter router = router("least_loaded", "discard3");
+		Connection failed = router.acquire();
+		Connection other = router.acquire();
+		router.discard(failed);
+
+		assertTrue(failed.isClosed());
+		assertFalse(other.isClosed());
+		assertTrue(other.isValid(2));
+		router.release(other);
+		assertFalse(other.isClosed());
+	}
+
+	@Test
+	public void validateChecksOnlyTheReplicaThatFailed() throws SQLException {
+		ReplicaRouter router = router("round_robin", "validate1", "validate2");
+		Connection broken = router.acquire();
+		Connection healthy = router.acquire();
+		assertNotSame(broken, healthy);
+		broken.close();
+
+		assertFalse(router.validate(broken));
+		assertTrue(router.validate(healthy));
+		// A rplica quebrada sai do rodzio
+		router.release(healthy);
+		assertSame(healthy, router.acquire());
+		router.release(healthy);
+		assertSame(healthy, router.acquire());
+	}
+
+	@Test
+	public void discardTakesReplicaOutOfRotation() {
+		ReplicaRouter router = router("round_robin", "discard1", "discard2");
+		Connection failed = router.acquire();
+		Connection other = router.acquire();
+		router.discard(failed);
+
+		assertTrue(router.validate(failed));
+		router.release(other);
+		assertSame(other, router.acquire());
+		router.release(other);
+		assertSame(other, router.acquire());
+	}
+}
@@ -0,0 +1,162 @@
+package model.dao.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import db.ConnectionSource;
+import db.DbIntegrityException;
+import db.IdSequence;
+import db.Migrations;
+import db.ShardMap;
+import model.dao.SellerDao;
+import model.dto.SellerRow;
+import model.entities.Department;
+import model.entities.Seller;
+
+public class ShardedSellerDaoTest {
+
+	private static final int SHARDS = 3;
+
+	// Trs bancos H2 em memria com o esquema migrado e os mesmos departamentos; nomes prprios por teste
+	private static ShardMap shards(String name) throws SQLException {
+		StringBuilder urls = new StringBuilder();
+		for (int i = 0; i < SHARDS; i++) {
+			urls.append(i == 0 ? "" : ",").append("jdbc:h2:mem:").append(name).append(i)
+					.append(";MODE=MySQL;DB_CLOSE_DELAY=-1");
+		}
+		Properties props = new Properties();
+		props.setProperty("shard.urls", urls.toString());
+		props.setProperty("shard.key", "id");
+		ShardMap map = new ShardMap(props);
+		for (int i = 0; i < SHARDS; i++) {
+			ConnectionSource source = map.getSource(i);
+			Connection conn = source.getConnection();
+			try (Statement st = conn.createStatement()) {
+				Migrations.migrate(conn);
+				st.executeUpdate("INSERT INTO department (Id, Name) VALUES (1, 'Computers'), (2, 'Books')");
+			}
+			finally {
+				source.release(conn);
+			}
+		}
+		return map;
+	}
+
+	private static ShardedSellerDao dao(ShardMap map, int blockSize) {
+		List<SellerDao> list = new ArrayList<>();
+		for (int i = 0; i < map.size(); i++) {
+			list.add(new SellerDaoJDBC(map.getSource(i)));
+		}
+		return new ShardedSellerDao(map, list, new IdSequence(map.getSource(0), "seller"), blockSize,
+				Comparator.naturalOrder());
+	}
+
+	private static Seller seller(String name) {
+		return new Seller(null, name, name.toLowerCase() + "@example.com", new Date(), 1000.0,
+				new Department(1, "Computers"));
+	}
+
+	private static List<Integer> idsIn(ShardMap map, int shard) throws SQLException {
+		ConnectionSource source = map.getSource(shard);
+		Connection conn = source.getConnection();
+		List<Integer> ids = new ArrayList<>();
+		try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT Id FROM seller")) {
+			while (rs.next()) {
+				ids.add(rs.getInt("Id"));
+			}
+		}
+		finally {
+			source.release(conn);
+		}
+		return ids;
+	}
+
+	@Test
+	public void idsAreUniqueAndStoredInTheirShard() throws SQLException {
+		ShardMap map = shards("ids");
+		ShardedSellerDao dao = dao(map, 4);
+		for (int i = 0; i < 20; i++) {
+			dao.insert(seller("Seller" + i));
+		}
+
+		Set<Integer> all = new HashSet<>();
+		for (int shard = 0; shard < SHARDS; shard++) {
+			for (Integer id : idsIn(map, shard)) {
+				assertEquals(shard, map.byId(id));
+				assertTrue(all.add(id));
+			}
+		}
+		assertEquals(20, all.size());
+		map.close();
+	}
+
+	@Test
+	public void twoInstancesNeverReuseIds() throws SQLException {
+		ShardMap map = shards("instances");
+		// Dois programas sobre os mesmos shards, cada um com o seu bloco de ids reservado
+		ShardedSellerDao first = dao(map, 3);
+		ShardedSellerDao second = dao(map, 3);
+		Set<Integer> ids = new HashSet<>();
+		for (int i = 0; i < 10; i++) {
+			Seller a = seller("First" + i);
+			Seller b = seller("Second" + i);
+			first.insert(a);
+			second.insert(b);
+			assertTrue(ids.add(a.getId()));
+			assertTrue(ids.add(b.getId()));
+		}
+		assertEquals(20, first.findAllRows().size());
+		map.close();
+	}
+
+	@Test
+	public void emailIsUniqueAcrossShards() throws SQLException {
+		ShardMap map = shards("email");
+		ShardedSellerDao dao = dao(map, 3);
+		dao.insert(seller("Ana"));
+		// Novos vendedores vo para os shards em rodzio: o segundo cairia em outro banco
+		Seller copy = new Seller(null, "Ana Maria", "ana@example.com", new Date(), 1000.0, new Department(2, "Books"));
+		assertThrows(DbIntegrityException.class, () -> dao.insert(copy));
+
+		Seller other = seller("Bia");
+		dao.insert(other);
+		Seller changed = dao.findById(other.getId());
+		changed.markClean();
+		changed.setEmail("ana@example.com");
+		assertThrows(DbIntegrityException.class, () -> dao.update(changed));
+		assertEquals(2, dao.findAllRows().size());
+		map.close();
+	}
+
+	@Test
+	public void listsAreMergedInNameOrder() throws SQLException {
+		ShardMap map = shards("merge");
+		ShardedSellerDao dao = dao(map, 3);
+		String[] names = { "Olga", "Bruno", "Xavier", "Carla", "Ana", "Mario", "Davi" };
+		for (String name : names) {
+			dao.insert(seller(name));
+		}
+
+		List<SellerRow> rows = dao.findAllRows();
+		assertEquals(names.length, rows.size());
+		for (int i = 1; i < rows.size(); i++) {
+			assertTrue(rows.get(i - 1).getName().compareTo(rows.get(i).getName()) <= 0);
+		}
+		map.close();
+	}
+}